@@ -0,0 +1,54 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.ClaudePlatformBackendApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * 基准测试用的应用上下文
+ * 使用内嵌H2数据库（MySQL兼容模式）启动完整应用，关闭启动迁移、用量回填和后台批量写入，避免干扰测量
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() throws IOException {
+        Path uploadDir = Files.createTempDirectory("benchmark-uploads");
+        String databaseUrl = "jdbc:h2:mem:benchmark-" + UUID.randomUUID()
+            + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ClaudePlatformBackendApplication.class)
+            .bannerMode(Banner.Mode.OFF)
+            .logStartupInfo(false)
+            .run("--server.port=0",
+                "--spring.datasource.url=" + databaseUrl,
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.sql.init.mode=never",
+                "--app.conversation.migrate-on-startup=false",
+                "--app.statistics.rollup-backfill-on-startup=false",
+                "--app.token.flush-interval-ms=3600000",
+                "--app.file.upload-dir=" + uploadDir,
+                "--logging.level.root=WARN",
+                "--logging.level.com.proshine.claudeplatformbackend=WARN",
+                // 同名索引在H2中建立失败，启动后另行建立
+                "--logging.level.org.hibernate.tool.schema=ERROR");
+
+        // H2的索引名在整个schema内唯一，多个表上的idx_user_time只有第一个能建立
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_conversations_user_time ON conversations (user_id, created_time)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_files_user_time ON files (user_id, created_time)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_token_usage_user_time ON token_usage (user_id, usage_time)");
+        return context;
+    }
+}
@@ -0,0 +1,20 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+/**
+ * 生成中英文混合的测试文本
+ */
+final class BenchmarkText {
+
+    private static final String SAMPLE = "The quick brown fox 快速的棕色狐狸 jumps over 懒惰的狗 the lazy dog 123. ";
+
+    private BenchmarkText() {
+    }
+
+    static String of(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append(SAMPLE, 0, Math.min(SAMPLE.length(), length - builder.length()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.websocket.ChatMessage;
+import com.proshine.claudeplatformbackend.websocket.ChatMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatMessage按两种连接格式（JSON文本和Smile二进制）的编码和解码，与ConnectionManager、ChatWebSocketHandler使用相同的ChatMessageCodec
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatMessageSerializationBenchmark {
+
+    @Param({"64", "4096", "65536"})
+    private int contentLength;
+
+    @Param({"JSON", "SMILE"})
+    private ChatMessageCodec.Format format;
+
+    private final ChatMessageCodec codec = new ChatMessageCodec();
+
+    private ChatMessage message;
+
+    private String json;
+
+    private byte[] smile;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("conversationId", "benchmark-conversation");
+        data.put("tokensUsed", 1024);
+        data.put("streaming", true);
+        message = ChatMessage.chatResponse("benchmark-request", BenchmarkText.of(contentLength), data);
+        json = codec.toJson(message);
+        smile = codec.toSmile(message);
+    }
+
+    @Benchmark
+    public Object serialize() throws Exception {
+        return format == ChatMessageCodec.Format.SMILE ? codec.toSmile(message) : codec.toJson(message);
+    }
+
+    @Benchmark
+    public ChatMessage deserialize() throws Exception {
+        return format == ChatMessageCodec.Format.SMILE ? codec.fromSmile(smile) : codec.fromJson(json);
+    }
+}
@@ -0,0 +1,85 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.websocket.ChatMessage;
+import com.proshine.claudeplatformbackend.websocket.ConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket消息分发：序列化一次后放入每个会话的发送队列，发送线程池把消息写入不经过网络的会话
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionManagerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int sessions;
+
+    @Param({"256", "4096"})
+    private int contentLength;
+
+    private ConfigurableApplicationContext context;
+
+    private ConnectionManager connectionManager;
+
+    private final List<BlackholeSession> openSessions = new ArrayList<>();
+
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start();
+        connectionManager = context.getBean(ConnectionManager.class);
+        for (int i = 0; i < sessions; i++) {
+            BlackholeSession session = new BlackholeSession("session-" + i);
+            connectionManager.addUserSession("user-" + i, session);
+            openSessions.add(session);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("conversationId", "benchmark-conversation");
+        message = ChatMessage.chatChunk("benchmark-request", BenchmarkText.of(contentLength), data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (BlackholeSession session : openSessions) {
+            session.close();
+            connectionManager.removeSession(session);
+        }
+        openSessions.clear();
+        context.close();
+    }
+
+    @Benchmark
+    public void broadcastToAllUsers() {
+        connectionManager.broadcastToAllUsers(message);
+    }
+
+    @Benchmark
+    public void sendMessageToUser() {
+        connectionManager.sendMessageToUser("user-0", message);
+    }
+}
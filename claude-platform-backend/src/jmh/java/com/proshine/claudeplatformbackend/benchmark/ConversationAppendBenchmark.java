@@ -0,0 +1,100 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.entity.Conversation;
+import com.proshine.claudeplatformbackend.entity.ConversationMessage;
+import com.proshine.claudeplatformbackend.service.ConversationService;
+import com.proshine.claudeplatformbackend.service.SearchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向已有不同长度历史的对话追加一轮消息（一问一答），可选同时更新已建立的全文搜索索引；
+ * 每轮迭代使用一个新建的对话，历史长度只在一轮迭代内随追加增长
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversationAppendBenchmark {
+
+    private static final String USER_ID = "benchmark-user";
+
+    @Param({"0", "1000", "10000"})
+    private int historySize;
+
+    @Param({"false", "true"})
+    private boolean searchIndexed;
+
+    private ConfigurableApplicationContext context;
+
+    private ConversationService conversationService;
+
+    private String conversationId;
+
+    private String question;
+
+    private String answer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start();
+        conversationService = context.getBean(ConversationService.class);
+        question = BenchmarkText.of(200);
+        answer = BenchmarkText.of(2000);
+
+        if (searchIndexed) {
+            context.getBean(SearchService.class).searchConversations(USER_ID, "狐狸", PageRequest.of(0, 10));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startConversation() {
+        // 消息保存后成为持久化实体，每个对话使用新的消息对象
+        List<ConversationMessage> history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            history.add(message(i % 2 == 0 ? ConversationMessage.ROLE_USER : ConversationMessage.ROLE_ASSISTANT,
+                i % 2 == 0 ? question : answer));
+        }
+        Conversation conversation = conversationService.startConversation(USER_ID, "基准测试对话", history, 0);
+        conversationId = conversation.getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Conversation appendMessages() {
+        return conversationService.appendMessages(USER_ID, conversationId,
+            Arrays.asList(message(ConversationMessage.ROLE_USER, question),
+                message(ConversationMessage.ROLE_ASSISTANT, answer)), 100);
+    }
+
+    private ConversationMessage message(String role, String content) {
+        ConversationMessage message = new ConversationMessage();
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+}
@@ -0,0 +1,80 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.entity.User;
+import com.proshine.claudeplatformbackend.security.CustomUserDetails;
+import com.proshine.claudeplatformbackend.security.JwtAuthenticationCache;
+import com.proshine.claudeplatformbackend.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.DirectFieldAccessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT签发、验签解析，以及已验证Token缓存命中时的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtTokenProviderBenchmark {
+
+    private static final String JWT_SECRET = "claude-platform-secret-key-for-jwt-token-generation-and-validation";
+
+    private static final long JWT_EXPIRATION_MS = 86400000L;
+
+    private JwtTokenProvider jwtTokenProvider;
+
+    private JwtAuthenticationCache jwtAuthenticationCache;
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtTokenProvider = new JwtTokenProvider();
+        DirectFieldAccessor provider = new DirectFieldAccessor(jwtTokenProvider);
+        provider.setPropertyValue("jwtSecret", JWT_SECRET);
+        provider.setPropertyValue("jwtExpirationMs", JWT_EXPIRATION_MS);
+        jwtTokenProvider.init();
+
+        jwtAuthenticationCache = new JwtAuthenticationCache();
+        DirectFieldAccessor cache = new DirectFieldAccessor(jwtAuthenticationCache);
+        cache.setPropertyValue("maxSize", 10000);
+        cache.setPropertyValue("ttlMs", 300000L);
+
+        User user = new User();
+        user.setId("benchmark-user");
+        user.setUsername("benchmark");
+        user.setUserPassword("password");
+        user.setUserRole("USER");
+        token = jwtTokenProvider.generateToken(user.getUsername());
+        Claims claims = jwtTokenProvider.parseClaims(token);
+        jwtAuthenticationCache.put(token, new CustomUserDetails(user), claims.getExpiration());
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtTokenProvider.generateToken("benchmark");
+    }
+
+    @Benchmark
+    public Claims parseClaims() {
+        return jwtTokenProvider.parseClaims(token);
+    }
+
+    @Benchmark
+    public CustomUserDetails cachedAuthentication() {
+        return jwtAuthenticationCache.get(token);
+    }
+}
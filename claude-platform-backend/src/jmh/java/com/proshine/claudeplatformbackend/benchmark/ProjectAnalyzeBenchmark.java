@@ -0,0 +1,126 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.dto.request.ProjectAnalyzeRequest;
+import com.proshine.claudeplatformbackend.dto.response.ProjectInfoResponse;
+import com.proshine.claudeplatformbackend.service.ProjectService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分析合成的项目目录树
+ * SCAN每次完整并行扫描，CACHED目录未变化时命中扫描结果缓存，WATCHED从实时索引读取统计
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectAnalyzeBenchmark {
+
+    public enum AnalyzeMode {
+        SCAN,
+        CACHED,
+        WATCHED
+    }
+
+    // 每个目录的子目录数
+    private static final int DIRECTORY_FAN_OUT = 8;
+
+    // 每个目录的文件数
+    private static final int FILES_PER_DIRECTORY = 16;
+
+    private static final String[] EXTENSIONS = {".java", ".ts", ".vue", ".py", ".md", ".json"};
+
+    @Param({"1000", "20000"})
+    private int files;
+
+    @Param({"SCAN", "CACHED", "WATCHED"})
+    private AnalyzeMode mode;
+
+    private Path projectRoot;
+
+    private ProjectService projectService;
+
+    private ProjectAnalyzeRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        projectRoot = Files.createTempDirectory("benchmark-project");
+        createTree();
+
+        projectService = new ProjectService();
+        DirectFieldAccessor accessor = new DirectFieldAccessor(projectService);
+        accessor.setPropertyValue("scanParallelism", 0);
+        accessor.setPropertyValue("cacheSize", mode == AnalyzeMode.SCAN ? 0 : 32);
+        accessor.setPropertyValue("cacheTtlMs", 300000L);
+        accessor.setPropertyValue("watchEnabled", mode == AnalyzeMode.WATCHED);
+        accessor.setPropertyValue("watchMaxProjects", 8);
+        accessor.setPropertyValue("watchIdleMs", 1800000L);
+        projectService.init();
+
+        request = new ProjectAnalyzeRequest();
+        request.setProjectName("benchmark-project");
+        request.setProjectPath(projectRoot.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        projectService.shutdown();
+        FileSystemUtils.deleteRecursively(projectRoot);
+    }
+
+    @Benchmark
+    public ProjectInfoResponse analyzeProject() {
+        return projectService.analyzeProject(request);
+    }
+
+    /**
+     * 按广度优先生成目录树，每个目录放固定数量的文件，并包含配置文件、Git目录和应排除的依赖目录
+     */
+    private void createTree() throws IOException {
+        Files.write(projectRoot.resolve("pom.xml"), "<project></project>\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(projectRoot.resolve("package.json"), "{\"dependencies\":{\"vue\":\"^3.0.0\"}}\n"
+            .getBytes(StandardCharsets.UTF_8));
+        Path gitDir = Files.createDirectories(projectRoot.resolve(".git"));
+        Files.write(gitDir.resolve("HEAD"), "ref: refs/heads/main\n".getBytes(StandardCharsets.UTF_8));
+        Path excluded = Files.createDirectories(projectRoot.resolve("node_modules").resolve("dependency"));
+        Files.write(excluded.resolve("index.js"), "module.exports = {};\n".getBytes(StandardCharsets.UTF_8));
+
+        byte[] content = String.join("\n", Collections.nCopies(40, "    int value = compute(input, 42);"))
+            .getBytes(StandardCharsets.UTF_8);
+        ArrayDeque<Path> directories = new ArrayDeque<>();
+        directories.add(projectRoot.resolve("src"));
+        int created = 0;
+        while (created < files) {
+            Path dir = Files.createDirectories(directories.poll());
+            for (int i = 0; i < FILES_PER_DIRECTORY && created < files; i++, created++) {
+                Files.write(dir.resolve("File" + created + EXTENSIONS[created % EXTENSIONS.length]), content);
+            }
+            for (int i = 0; i < DIRECTORY_FAN_OUT; i++) {
+                directories.add(dir.resolve("module" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.proshine.claudeplatformbackend.benchmark;
+
+import com.proshine.claudeplatformbackend.entity.TokenUsage;
+import com.proshine.claudeplatformbackend.entity.User;
+import com.proshine.claudeplatformbackend.repository.TokenUsageRepository;
+import com.proshine.claudeplatformbackend.repository.UserRepository;
+import com.proshine.claudeplatformbackend.service.TokenQuotaLedger;
+import com.proshine.claudeplatformbackend.service.TokenService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token额度检查：账本已加载时的预占和释放、批量读取本月用量，以及账本淘汰后从数据库重新加载
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenQuotaBenchmark {
+
+    // 批量读取用量的用户数，与用户列表的分页大小相当
+    private static final int PAGE_SIZE = 20;
+
+    // 每个用户本月已有的使用记录数
+    @Param({"0", "1000"})
+    private int usageRecords;
+
+    private ConfigurableApplicationContext context;
+
+    private TokenService tokenService;
+
+    private final List<User> users = new ArrayList<>();
+
+    private String userId;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start();
+        tokenService = context.getBean(TokenService.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        TokenUsageRepository tokenUsageRepository = context.getBean(TokenUsageRepository.class);
+
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            User user = new User();
+            user.setUsername("benchmark" + i);
+            user.setUserPassword("password");
+            user.setUserRole("USER");
+            user.setTokenLimit(Integer.MAX_VALUE);
+            users.add(userRepository.save(user));
+
+            List<TokenUsage> records = new ArrayList<>(usageRecords);
+            for (int j = 0; j < usageRecords; j++) {
+                TokenUsage record = new TokenUsage();
+                record.setUserId(user.getId());
+                record.setTokensCount(10);
+                record.setUsageType("CHAT");
+                records.add(record);
+            }
+            tokenUsageRepository.saveAll(records);
+        }
+        userId = users.get(0).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean reserveAndRelease() {
+        TokenQuotaLedger.Reservation reservation = tokenService.reserveTokens(userId, 100);
+        if (reservation != null) {
+            tokenService.releaseTokens(reservation);
+        }
+        return reservation != null;
+    }
+
+    @Benchmark
+    public boolean checkTokenAvailable() {
+        return tokenService.checkTokenAvailable(userId, 100);
+    }
+
+    @Benchmark
+    public Map<String, Integer> monthlyUsedForPage() {
+        return tokenService.getMonthlyUsedTokens(users);
+    }
+
+    @Benchmark
+    public Integer monthlyUsedAfterEviction() {
+        tokenService.evictUser(userId);
+        return tokenService.getMonthlyUsedTokens(userId);
+    }
+}
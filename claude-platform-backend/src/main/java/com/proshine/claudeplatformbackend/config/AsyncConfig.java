@@ -0,0 +1,66 @@
+package com.proshine.claudeplatformbackend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 异步任务线程池配置
+ */
+@Configuration
+public class AsyncConfig {
+
+    @Value("${app.chat.executor.core-size:4}")
+    private int chatCorePoolSize;
+
+    @Value("${app.chat.executor.max-size:16}")
+    private int chatMaxPoolSize;
+
+    @Value("${app.chat.executor.queue-capacity:500}")
+    private int chatQueueCapacity;
+
+    @Value("${app.websocket.send-threads:8}")
+    private int websocketSendThreads;
+
+    @Value("${app.chat.sse.send-threads:4}")
+    private int sseSendThreads;
+
+    /**
+     * 处理本地客户端响应后的持久化工作，避免占用WebSocket接收线程
+     */
+    @Bean(name = "chatExecutor")
+    public ThreadPoolTaskExecutor chatExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(chatCorePoolSize);
+        executor.setMaxPoolSize(chatMaxPoolSize);
+        executor.setQueueCapacity(chatQueueCapacity);
+        executor.setThreadNamePrefix("chat-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * WebSocket消息发送线程池，每个会话同一时间最多占用一个线程
+     */
+    @Bean(name = "websocketSendExecutor")
+    public ThreadPoolTaskExecutor websocketSendExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(websocketSendThreads);
+        executor.setMaxPoolSize(websocketSendThreads);
+        executor.setThreadNamePrefix("ws-send-");
+        return executor;
+    }
+
+    /**
+     * SSE事件写出线程池，每个连接同一时间最多占用一个线程
+     */
+    @Bean(name = "sseSendExecutor")
+    public ThreadPoolTaskExecutor sseSendExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(sseSendThreads);
+        executor.setMaxPoolSize(sseSendThreads);
+        executor.setThreadNamePrefix("sse-send-");
+        return executor;
+    }
+}
@@ -1,11 +1,13 @@
 package com.proshine.claudeplatformbackend.config;
 
+import com.proshine.claudeplatformbackend.security.CustomUserDetails;
 import com.proshine.claudeplatformbackend.security.CustomUserDetailsService;
+import com.proshine.claudeplatformbackend.security.JwtAuthenticationCache;
 import com.proshine.claudeplatformbackend.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -26,16 +28,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private CustomUserDetailsService userDetailsService;
     
+    @Autowired
+    private JwtAuthenticationCache authenticationCache;
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                   FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = getJwtFromRequest(request);
             
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromToken(jwt);
-                
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            CustomUserDetails userDetails = StringUtils.hasText(jwt) ? loadUserDetails(jwt) : null;
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication = 
                     new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -49,6 +52,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
     
+    /**
+     * 已验证过的Token直接使用缓存的用户信息，否则验证签名并查询用户
+     */
+    private CustomUserDetails loadUserDetails(String jwt) {
+        CustomUserDetails userDetails = authenticationCache.get(jwt);
+        if (userDetails != null) {
+            return userDetails;
+        }
+        
+        Claims claims = tokenProvider.parseClaims(jwt);
+        if (claims == null) {
+            return null;
+        }
+        userDetails = (CustomUserDetails) userDetailsService.loadUserByUsername(claims.getSubject());
+        authenticationCache.put(jwt, userDetails, claims.getExpiration());
+        return userDetails;
+    }
+    
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
@@ -2,6 +2,7 @@ package com.proshine.claudeplatformbackend.config;
 
 import com.proshine.claudeplatformbackend.security.CustomUserDetailsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -15,6 +16,10 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import javax.servlet.http.HttpServletRequest;
 
 @Configuration
 @EnableWebSecurity
@@ -27,6 +32,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
     
+    // 独立的管理端口，未配置时为-1
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+    
+    private static final RequestMatcher PROMETHEUS_MATCHER = new AntPathRequestMatcher("/actuator/prometheus");
+    
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -57,10 +68,14 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                     .antMatchers("/api/download/detect").permitAll()
                     .antMatchers("/api/download/client/**").permitAll()
                     .antMatchers(HttpMethod.GET, "/api/download/check-connection").permitAll()
+                    // 健康检查不带Token；Prometheus只允许从管理端口免Token抓取，业务端口上与其他actuator接口一样需要管理员
+                    .antMatchers("/actuator/health").permitAll()
+                    .requestMatchers(this::isManagementScrape).permitAll()
                     
                     // 管理员接口
                     .antMatchers("/api/users/**").hasAuthority("ROLE_ADMIN")
                     .antMatchers("/api/system/**").hasAuthority("ROLE_ADMIN")
+                    .antMatchers("/actuator/**").hasAuthority("ROLE_ADMIN")
                     
                     // 需要认证的接口
                     .antMatchers("/api/profile/**").authenticated()
@@ -72,4 +87,11 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         
         http.addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
     }
-}
\ No newline at end of file
+    
+    /**
+     * 请求是否从管理端口访问Prometheus指标，管理端口应通过management.server.address绑定内网地址
+     */
+    private boolean isManagementScrape(HttpServletRequest request) {
+        return managementPort > 0 && request.getLocalPort() == managementPort && PROMETHEUS_MATCHER.matches(request);
+    }
+}
@@ -1,22 +1,70 @@
 package com.proshine.claudeplatformbackend.config;
 
+import com.proshine.claudeplatformbackend.websocket.ChatMessageCodec;
 import com.proshine.claudeplatformbackend.websocket.ChatWebSocketHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
     
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    
     @Autowired
     private ChatWebSocketHandler chatWebSocketHandler;
     
+    // 客户端请求时启用permessage-deflate压缩
+    @Value("${app.websocket.permessage-deflate:true}")
+    private boolean perMessageDeflate;
+    
+    // 容器的接收缓冲区大小，超过该大小的消息按分片交给ChatWebSocketHandler
+    @Value("${app.websocket.buffer-size:65536}")
+    private int bufferSize;
+    
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .setHandshakeHandler(chatHandshakeHandler())
                 .setAllowedOrigins("*"); // 生产环境应该配置具体的域名
     }
+    
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(bufferSize);
+        container.setMaxBinaryMessageBufferSize(bufferSize);
+        return container;
+    }
+    
+    /**
+     * 按客户端请求的顺序选择第一个支持的子协议（chat.smile或chat.json），未请求时使用JSON文本帧
+     */
+    private DefaultHandshakeHandler chatHandshakeHandler() {
+        DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler() {
+            @Override
+            protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                    List<WebSocketExtension> requestedExtensions, List<WebSocketExtension> supportedExtensions) {
+                List<WebSocketExtension> extensions =
+                    super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+                if (!perMessageDeflate) {
+                    extensions.removeIf(extension -> PERMESSAGE_DEFLATE.equals(extension.getName()));
+                }
+                return extensions;
+            }
+        };
+        handshakeHandler.setSupportedProtocols(ChatMessageCodec.PROTOCOL_SMILE, ChatMessageCodec.PROTOCOL_JSON);
+        return handshakeHandler;
+    }
 }
\ No newline at end of file
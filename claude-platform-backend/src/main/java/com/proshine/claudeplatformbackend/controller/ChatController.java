@@ -3,16 +3,22 @@ package com.proshine.claudeplatformbackend.controller;
 import com.proshine.claudeplatformbackend.dto.request.ChatRequest;
 import com.proshine.claudeplatformbackend.dto.response.ApiResponse;
 import com.proshine.claudeplatformbackend.dto.response.ChatResponse;
+import com.proshine.claudeplatformbackend.dto.response.ConversationSummary;
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.entity.Conversation;
+import com.proshine.claudeplatformbackend.entity.ConversationMessage;
 import com.proshine.claudeplatformbackend.service.ChatService;
 import com.proshine.claudeplatformbackend.service.ConversationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -26,28 +32,37 @@ public class ChatController {
     private ConversationService conversationService;
     
     @PostMapping("/send")
-    public ApiResponse<ChatResponse> sendMessage(@Valid @RequestBody ChatRequest request) {
+    public CompletableFuture<ApiResponse<ChatResponse>> sendMessage(@Valid @RequestBody ChatRequest request) {
         try {
-            ChatResponse response = chatService.processChat(request);
-            if (response.isSuccess()) {
-                return ApiResponse.success("消息发送成功", response);
-            } else {
-                return ApiResponse.error(response.getError(), response);
-            }
+            return chatService.processChat(request).thenApply(response -> {
+                if (response.isSuccess()) {
+                    return ApiResponse.success("消息发送成功", response);
+                } else {
+                    return ApiResponse.error(response.getError(), response);
+                }
+            });
         } catch (Exception e) {
             ChatResponse errorResponse = ChatResponse.error(request.getConversationId(), e.getMessage());
-            return ApiResponse.error(e.getMessage(), errorResponse);
+            return CompletableFuture.completedFuture(ApiResponse.error(e.getMessage(), errorResponse));
         }
     }
     
+    /**
+     * 以Server-Sent-Events流式返回对话响应
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(@Valid @RequestBody ChatRequest request) {
+        return chatService.streamChat(request);
+    }
+    
     @GetMapping("/conversations")
-    public ApiResponse<Page<Conversation>> getConversations(
+    public ApiResponse<Page<ConversationSummary>> getConversations(
             @RequestParam(required = false) String keyword,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
         try {
             Pageable pageable = PageRequest.of(page, size);
-            Page<Conversation> conversations;
+            Page<ConversationSummary> conversations;
             
             if (keyword != null && !keyword.trim().isEmpty()) {
                 conversations = conversationService.searchUserConversations(keyword.trim(), pageable);
@@ -61,10 +76,24 @@ public class ChatController {
         }
     }
     
+    /**
+     * 游标分页读取对话列表，cursor为上一页返回的nextCursor，第一页不传
+     */
+    @GetMapping("/conversations/cursor")
+    public ApiResponse<CursorPage<ConversationSummary>> getConversationsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ApiResponse.success(conversationService.getUserConversations(cursor, size));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
     @PostMapping("/conversations")
     public ApiResponse<Conversation> createConversation(@RequestParam String title) {
         try {
-            Conversation conversation = conversationService.createConversation(title, "{\"messages\":[]}", 0);
+            Conversation conversation = conversationService.createConversation(title, null, 0);
             return ApiResponse.success("对话创建成功", conversation);
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
@@ -81,6 +110,20 @@ public class ChatController {
         }
     }
     
+    @GetMapping("/conversations/{id}/messages")
+    public ApiResponse<Page<ConversationMessage>> getConversationMessages(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            Pageable pageable = PageRequest.of(page, size);
+            Page<ConversationMessage> messages = conversationService.getConversationMessages(id, pageable);
+            return ApiResponse.success(messages);
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
     @PutMapping("/conversations/{id}")
     public ApiResponse<Conversation> updateConversation(
             @PathVariable String id,
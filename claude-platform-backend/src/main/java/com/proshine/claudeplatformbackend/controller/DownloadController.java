@@ -1,9 +1,13 @@
 package com.proshine.claudeplatformbackend.controller;
 
 import com.proshine.claudeplatformbackend.dto.response.ApiResponse;
+import com.proshine.claudeplatformbackend.utils.FileDownloadUtil;
+import com.proshine.claudeplatformbackend.websocket.SessionReaper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,6 +26,12 @@ public class DownloadController {
     
     private static final String CLIENT_FILES_DIR = "./client-files";
     
+    @Autowired
+    private SessionReaper sessionReaper;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
     @GetMapping("/detect")
     public ApiResponse<Map<String, String>> detectSystem(HttpServletRequest request) {
         try {
@@ -67,7 +77,7 @@ public class DownloadController {
     }
     
     @GetMapping("/client/{platform}")
-    public ResponseEntity<byte[]> downloadClient(@PathVariable String platform) {
+    public ResponseEntity<Resource> downloadClient(@PathVariable String platform, HttpServletRequest request) {
         try {
             String filename = getClientFilename(platform);
             if (filename == null) {
@@ -75,18 +85,13 @@ public class DownloadController {
             }
             
             Path filePath = Paths.get(CLIENT_FILES_DIR, filename);
-            if (!Files.exists(filePath)) {
+            if (!Files.isRegularFile(filePath)) {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
             
-            byte[] fileContent = Files.readAllBytes(filePath);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(fileContent.length);
-            
-            return new ResponseEntity<>(fileContent, headers, HttpStatus.OK);
+            // 客户端安装包较大，支持断点续传
+            return FileDownloadUtil.buildDownloadResponse(filePath, filename, request.getHeader(HttpHeaders.IF_RANGE),
+                meterRegistry);
         } catch (IOException e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -95,15 +100,7 @@ public class DownloadController {
     @GetMapping("/check-connection")
     public ApiResponse<Map<String, Object>> checkConnection() {
         try {
-            // 这里应该检查是否有本地客户端连接到WebSocket
-            // 目前先返回模拟数据
-            Map<String, Object> result = new HashMap<>();
-            result.put("connected", false);
-            result.put("clientCount", 0);
-            result.put("lastHeartbeat", null);
-            result.put("message", "暂无客户端连接");
-            
-            return ApiResponse.success(result);
+            return ApiResponse.success(sessionReaper.getClientLiveness());
         } catch (Exception e) {
             return ApiResponse.error(e.getMessage());
         }
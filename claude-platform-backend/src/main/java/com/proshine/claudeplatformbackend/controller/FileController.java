@@ -1,21 +1,25 @@
 package com.proshine.claudeplatformbackend.controller;
 
 import com.proshine.claudeplatformbackend.dto.response.ApiResponse;
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.entity.FileRecord;
 import com.proshine.claudeplatformbackend.service.FileService;
+import com.proshine.claudeplatformbackend.utils.FileDownloadUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
 import java.net.URLEncoder;
+import java.nio.file.Path;
 
 @RestController
 @RequestMapping("/api/files")
@@ -25,6 +29,9 @@ public class FileController {
     @Autowired
     private FileService fileService;
     
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
     @PostMapping("/upload")
     public ApiResponse<FileRecord> uploadFile(@RequestParam("file") MultipartFile file) {
         try {
@@ -56,6 +63,20 @@ public class FileController {
         }
     }
     
+    /**
+     * 游标分页读取文件列表，cursor为上一页返回的nextCursor，第一页不传
+     */
+    @GetMapping("/cursor")
+    public ApiResponse<CursorPage<FileRecord>> getFilesByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ApiResponse.success(fileService.getUserFiles(cursor, size));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
     @GetMapping("/{id}")
     public ApiResponse<FileRecord> getFileById(@PathVariable String id) {
         try {
@@ -67,18 +88,13 @@ public class FileController {
     }
     
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable String id) {
+    public ResponseEntity<Resource> downloadFile(@PathVariable String id, HttpServletRequest request) {
         try {
             FileRecord fileRecord = fileService.getFileById(id);
-            byte[] fileContent = fileService.downloadFile(id);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", 
-                URLEncoder.encode(fileRecord.getFileName(), "UTF-8"));
-            headers.setContentLength(fileContent.length);
+            Path filePath = fileService.getDownloadPath(fileRecord);
             
-            return new ResponseEntity<>(fileContent, headers, HttpStatus.OK);
+            return FileDownloadUtil.buildDownloadResponse(filePath,
+                URLEncoder.encode(fileRecord.getFileName(), "UTF-8"), request.getHeader(HttpHeaders.IF_RANGE), meterRegistry);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
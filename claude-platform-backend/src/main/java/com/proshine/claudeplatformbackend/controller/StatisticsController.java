@@ -1,6 +1,7 @@
 package com.proshine.claudeplatformbackend.controller;
 
 import com.proshine.claudeplatformbackend.dto.response.ApiResponse;
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.dto.response.StatisticsData;
 import com.proshine.claudeplatformbackend.entity.TokenUsage;
 import com.proshine.claudeplatformbackend.service.StatisticsService;
@@ -55,6 +56,24 @@ public class StatisticsController {
         }
     }
     
+    /**
+     * 游标分页读取使用记录，cursor为上一页返回的nextCursor，第一页不传
+     */
+    @GetMapping("/my/detail/cursor")
+    public ApiResponse<CursorPage<TokenUsage>> getMyStatisticsDetailByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            String userId = com.proshine.claudeplatformbackend.security.SecurityUtils.getCurrentUserId();
+            if (userId == null) {
+                return ApiResponse.error("用户未登录");
+            }
+            return ApiResponse.success(tokenService.getUserTokenUsage(userId, cursor, size));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
     @GetMapping("/my/trend")
     public ApiResponse<List<TokenUsage>> getMyUsageTrend(
             @RequestParam(defaultValue = "30") int days) {
@@ -3,6 +3,7 @@ package com.proshine.claudeplatformbackend.controller;
 import com.proshine.claudeplatformbackend.dto.response.ApiResponse;
 import com.proshine.claudeplatformbackend.entity.SystemConfig;
 import com.proshine.claudeplatformbackend.service.SystemService;
+import com.proshine.claudeplatformbackend.websocket.MessageHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +20,9 @@ public class SystemController {
     @Autowired
     private SystemService systemService;
     
+    @Autowired
+    private MessageHandler messageHandler;
+    
     @GetMapping("/settings")
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
     public ApiResponse<List<SystemConfig>> getSystemSettings() {
@@ -108,4 +112,17 @@ public class SystemController {
             return ApiResponse.error(e.getMessage());
         }
     }
+    
+    /**
+     * WebSocket连接和发送队列状态
+     */
+    @GetMapping("/websocket")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ApiResponse<Map<String, Object>> getWebSocketStatus() {
+        try {
+            return ApiResponse.success(messageHandler.getConnectionStatus());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import com.proshine.claudeplatformbackend.dto.request.ChangePasswordRequest;
 import com.proshine.claudeplatformbackend.dto.request.CreateUserRequest;
 import com.proshine.claudeplatformbackend.dto.request.UpdateUserRequest;
 import com.proshine.claudeplatformbackend.dto.response.ApiResponse;
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.dto.response.UserInfo;
 import com.proshine.claudeplatformbackend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,6 +51,21 @@ public class UserController {
         }
     }
     
+    /**
+     * 游标分页读取用户列表，cursor为上一页返回的nextCursor，第一页不传
+     */
+    @GetMapping("/users/cursor")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ApiResponse<CursorPage<UserInfo>> getUsersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ApiResponse.success(userService.getUsers(cursor, size));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
     @GetMapping("/users/{id}")
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
     public ApiResponse<UserInfo> getUserById(@PathVariable String id) {
@@ -0,0 +1,21 @@
+package com.proshine.claudeplatformbackend.dto.response;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * 对话列表项，不包含对话内容，由仓库查询直接投影生成
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummary {
+    
+    private String id;
+    private String title;
+    private Integer tokensUsed;
+    private Integer messageCount;
+    private Long createdTime;
+    private Long updatedTime;
+}
@@ -0,0 +1,39 @@
+package com.proshine.claudeplatformbackend.dto.response;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果，nextCursor为下一页的游标，没有下一页时为空
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    
+    private List<T> content;
+    private String nextCursor;
+    private boolean hasNext;
+    private int size;
+    
+    public static <T> CursorPage<T> of(Slice<T> slice, Function<T, String> cursorOf) {
+        List<T> content = slice.getContent();
+        String nextCursor = slice.hasNext() && !content.isEmpty()
+            ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        return new CursorPage<>(content, nextCursor, nextCursor != null, slice.getSize());
+    }
+    
+    public <R> CursorPage<R> map(Function<T, R> converter) {
+        List<R> converted = new ArrayList<>(content.size());
+        for (T item : content) {
+            converted.add(converter.apply(item));
+        }
+        return new CursorPage<>(converted, nextCursor, hasNext, size);
+    }
+}
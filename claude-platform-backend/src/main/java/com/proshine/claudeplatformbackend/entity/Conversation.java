@@ -34,6 +34,10 @@ public class Conversation {
     @Column(name = "tokens_used")
     private Integer tokensUsed = 0;
     
+    // 消息条数，消息保存在conversation_messages表中；为空表示content中仍是未迁移的旧版JSON
+    @Column(name = "message_count")
+    private Integer messageCount;
+    
     @Column(name = "created_time", nullable = false)
     private Long createdTime;
     
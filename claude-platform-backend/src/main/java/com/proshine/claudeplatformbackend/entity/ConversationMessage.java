@@ -0,0 +1,60 @@
+package com.proshine.claudeplatformbackend.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "conversation_messages", 
+       indexes = {@Index(name = "idx_conversation_seq", columnList = "conversation_id,seq", unique = true)})
+public class ConversationMessage {
+    
+    public static final String ROLE_USER = "user";
+    public static final String ROLE_ASSISTANT = "assistant";
+    
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+    
+    @NotBlank(message = "对话ID不能为空")
+    @Column(name = "conversation_id", length = 36, nullable = false)
+    private String conversationId;
+    
+    // 对话内的消息序号，从0开始递增
+    @NotNull(message = "消息序号不能为空")
+    @Column(name = "seq", nullable = false)
+    private Integer seq;
+    
+    @NotBlank(message = "消息角色不能为空")
+    @Size(max = 20, message = "消息角色长度不能超过20个字符")
+    @Column(name = "role", length = 20, nullable = false)
+    private String role;
+    
+    @Column(name = "content", columnDefinition = "TEXT")
+    private String content;
+    
+    // 附件内容，JSON数组
+    @Column(name = "files", columnDefinition = "TEXT")
+    private String files;
+    
+    @Column(name = "created_time", nullable = false)
+    private Long createdTime;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (id == null) {
+            id = java.util.UUID.randomUUID().toString();
+        }
+        if (createdTime == null) {
+            createdTime = System.currentTimeMillis();
+        }
+    }
+}
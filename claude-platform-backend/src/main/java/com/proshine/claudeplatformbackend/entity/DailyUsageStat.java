@@ -0,0 +1,63 @@
+package com.proshine.claudeplatformbackend.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
+
+/**
+ * 用户每日用量汇总，按用户、日期、使用类型各一行，随使用记录增量更新
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "daily_usage_stats", 
+       indexes = {@Index(name = "uk_user_date_type", columnList = "user_id,stat_date,usage_type", unique = true)})
+public class DailyUsageStat {
+    
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+    
+    @NotBlank(message = "用户ID不能为空")
+    @Column(name = "user_id", length = 36, nullable = false)
+    private String userId;
+    
+    // 统计日期 yyyy-MM-dd
+    @NotBlank(message = "统计日期不能为空")
+    @Column(name = "stat_date", length = 10, nullable = false)
+    private String statDate;
+    
+    @Size(max = 20, message = "使用类型长度不能超过20个字符")
+    @Column(name = "usage_type", length = 20, nullable = false)
+    private String usageType;
+    
+    @Column(name = "tokens_used", nullable = false)
+    private Long tokensUsed = 0L;
+    
+    @Column(name = "usage_count", nullable = false)
+    private Long usageCount = 0L;
+    
+    @Column(name = "conversations", nullable = false)
+    private Long conversations = 0L;
+    
+    @Column(name = "updated_time")
+    private Long updatedTime;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (id == null) {
+            id = java.util.UUID.randomUUID().toString();
+        }
+        updatedTime = System.currentTimeMillis();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedTime = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,34 @@
+package com.proshine.claudeplatformbackend.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * 上传文件的内容，按SHA-256去重保存，ref_count为引用该内容的文件记录数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "file_blobs")
+public class FileBlob {
+    
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    @Column(name = "file_path", length = 500, nullable = false)
+    private String filePath;
+    
+    @Column(name = "file_size")
+    private Long fileSize;
+    
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 0;
+    
+    @Column(name = "created_time", nullable = false)
+    private Long createdTime;
+}
@@ -41,6 +41,10 @@ public class FileRecord {
     @Column(name = "file_type", length = 50)
     private String fileType;
     
+    // 文件内容的SHA-256，对应file_blobs中的一行；去重存储之前上传的文件为空
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
     @Column(name = "created_time", nullable = false)
     private Long createdTime;
     
@@ -13,7 +13,8 @@ import javax.validation.constraints.Size;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "users")
+@Table(name = "users",
+       indexes = {@Index(name = "idx_created_time", columnList = "created_time")})
 public class User {
     
     @Id
@@ -0,0 +1,32 @@
+package com.proshine.claudeplatformbackend.repository;
+
+import com.proshine.claudeplatformbackend.entity.ConversationMessage;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ConversationMessageRepository extends JpaRepository<ConversationMessage, String> {
+    
+    Page<ConversationMessage> findByConversationIdOrderBySeqAsc(String conversationId, Pageable pageable);
+    
+    @Query("SELECT COUNT(m) FROM ConversationMessage m WHERE m.conversationId = :conversationId")
+    long countByConversationId(@Param("conversationId") String conversationId);
+    
+    /**
+     * 读取多个对话的消息内容，返回[对话ID, 内容]，供建立搜索索引使用
+     */
+    @Query("SELECT m.conversationId, m.content FROM ConversationMessage m WHERE m.conversationId IN :conversationIds")
+    List<Object[]> findContentsByConversationIds(@Param("conversationIds") Collection<String> conversationIds);
+    
+    @Modifying
+    @Query("DELETE FROM ConversationMessage m WHERE m.conversationId = :conversationId")
+    int deleteByConversationId(@Param("conversationId") String conversationId);
+}
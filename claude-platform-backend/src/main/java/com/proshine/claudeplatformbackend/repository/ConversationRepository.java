@@ -1,31 +1,83 @@
 package com.proshine.claudeplatformbackend.repository;
 
+import com.proshine.claudeplatformbackend.dto.response.ConversationSummary;
 import com.proshine.claudeplatformbackend.entity.Conversation;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ConversationRepository extends JpaRepository<Conversation, String> {
     
-    Page<Conversation> findByUserIdOrderByCreatedTimeDesc(String userId, Pageable pageable);
+    String SUMMARY_FIELDS = "new com.proshine.claudeplatformbackend.dto.response.ConversationSummary(" +
+                            "c.id, c.title, c.tokensUsed, c.messageCount, c.createdTime, c.updatedTime)";
+    
+    /**
+     * 对话列表只投影摘要字段，不读取content
+     */
+    @Query(value = "SELECT " + SUMMARY_FIELDS + " FROM Conversation c WHERE c.userId = :userId " +
+                   "ORDER BY c.createdTime DESC",
+           countQuery = "SELECT COUNT(c) FROM Conversation c WHERE c.userId = :userId")
+    Page<ConversationSummary> findSummariesByUserId(@Param("userId") String userId, Pageable pageable);
+    
+    @Query("SELECT " + SUMMARY_FIELDS + " FROM Conversation c WHERE c.userId = :userId " +
+           "ORDER BY c.createdTime DESC, c.id DESC")
+    Slice<ConversationSummary> findSummarySliceByUserId(@Param("userId") String userId, Pageable pageable);
+    
+    /**
+     * 游标分页，从游标位置之后继续读取，沿(user_id, created_time)索引定位
+     */
+    @Query("SELECT " + SUMMARY_FIELDS + " FROM Conversation c WHERE c.userId = :userId AND " +
+           "(c.createdTime < :createdTime OR (c.createdTime = :createdTime AND c.id < :id)) " +
+           "ORDER BY c.createdTime DESC, c.id DESC")
+    Slice<ConversationSummary> findSummariesAfterCursor(@Param("userId") String userId,
+                                               @Param("createdTime") Long createdTime,
+                                               @Param("id") String id,
+                                               Pageable pageable);
     
     Optional<Conversation> findByIdAndUserId(String id, String userId);
     
-    @Query("SELECT c FROM Conversation c WHERE c.userId = :userId AND " +
-           "(:keyword IS NULL OR :keyword = '' OR " +
-           "c.title LIKE %:keyword% OR " +
-           "c.content LIKE %:keyword%) " +
-           "ORDER BY c.createdTime DESC")
-    Page<Conversation> findByUserIdAndKeyword(@Param("userId") String userId, 
-                                            @Param("keyword") String keyword, 
-                                            Pageable pageable);
+    boolean existsByIdAndUserId(String id, String userId);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Conversation c WHERE c.id = :id AND c.userId = :userId")
+    Optional<Conversation> findByIdAndUserIdForUpdate(@Param("id") String id, @Param("userId") String userId);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Conversation c WHERE c.id = :id")
+    Optional<Conversation> findByIdForUpdate(@Param("id") String id);
+    
+    @Query("SELECT c.id FROM Conversation c WHERE c.messageCount IS NULL AND c.id > :afterId ORDER BY c.id")
+    List<String> findLegacyConversationIds(@Param("afterId") String afterId, Pageable pageable);
+    
+    List<Conversation> findByUserId(String userId);
+    
+    @Query("SELECT " + SUMMARY_FIELDS + " FROM Conversation c WHERE c.id IN :ids")
+    List<ConversationSummary> findSummariesByIds(@Param("ids") Collection<String> ids);
+    
+    /**
+     * 按关键字模糊查询对话摘要，对话过多、无法建立搜索索引时使用
+     */
+    @Query(value = "SELECT " + SUMMARY_FIELDS + " FROM Conversation c WHERE c.userId = :userId AND " +
+                   "(c.title LIKE %:keyword% OR c.content LIKE %:keyword% OR " +
+                   "EXISTS (SELECT m.id FROM ConversationMessage m WHERE m.conversationId = c.id AND m.content LIKE %:keyword%)) " +
+                   "ORDER BY c.createdTime DESC",
+           countQuery = "SELECT COUNT(c) FROM Conversation c WHERE c.userId = :userId AND " +
+                        "(c.title LIKE %:keyword% OR c.content LIKE %:keyword% OR " +
+                        "EXISTS (SELECT m.id FROM ConversationMessage m WHERE m.conversationId = c.id AND m.content LIKE %:keyword%))")
+    Page<ConversationSummary> findSummariesByUserIdAndKeyword(@Param("userId") String userId,
+                                                              @Param("keyword") String keyword,
+                                                              Pageable pageable);
     
     @Query("SELECT COUNT(c) FROM Conversation c WHERE c.userId = :userId")
     long countByUserId(@Param("userId") String userId);
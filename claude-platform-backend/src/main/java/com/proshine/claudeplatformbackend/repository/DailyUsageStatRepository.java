@@ -0,0 +1,64 @@
+package com.proshine.claudeplatformbackend.repository;
+
+import com.proshine.claudeplatformbackend.entity.DailyUsageStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DailyUsageStatRepository extends JpaRepository<DailyUsageStat, String> {
+    
+    @Query("SELECT d FROM DailyUsageStat d WHERE d.userId = :userId AND " +
+           "d.statDate >= :startDate AND d.statDate <= :endDate " +
+           "ORDER BY d.statDate DESC")
+    List<DailyUsageStat> findByUserIdAndDateRange(@Param("userId") String userId,
+                                                 @Param("startDate") String startDate,
+                                                 @Param("endDate") String endDate);
+    
+    @Query("SELECT d.usageType, SUM(d.tokensUsed) FROM DailyUsageStat d WHERE d.userId = :userId " +
+           "GROUP BY d.usageType")
+    List<Object[]> sumTokensByUsageType(@Param("userId") String userId);
+    
+    /**
+     * 累加某用户某天某类型的用量，不存在时插入
+     */
+    @Modifying
+    @Query(value = "INSERT INTO daily_usage_stats " +
+                   "(id, user_id, stat_date, usage_type, tokens_used, usage_count, conversations, updated_time) " +
+                   "VALUES (UUID(), :userId, :statDate, :usageType, :tokens, :usageCount, :conversations, :now) " +
+                   "ON DUPLICATE KEY UPDATE tokens_used = tokens_used + VALUES(tokens_used), " +
+                   "usage_count = usage_count + VALUES(usage_count), " +
+                   "conversations = conversations + VALUES(conversations), " +
+                   "updated_time = VALUES(updated_time)",
+           nativeQuery = true)
+    int upsertUsage(@Param("userId") String userId,
+                    @Param("statDate") String statDate,
+                    @Param("usageType") String usageType,
+                    @Param("tokens") long tokens,
+                    @Param("usageCount") long usageCount,
+                    @Param("conversations") long conversations,
+                    @Param("now") long now);
+    
+    /**
+     * 按用户、15分钟时段和类型汇总token_usage，供回填使用；时段换算为日期在Java中完成，与实时累加使用同一时区
+     */
+    @Query(value = "SELECT t.user_id, FLOOR(t.usage_time / 900000), COALESCE(t.usage_type, 'CHAT'), " +
+                   "SUM(t.tokens_count), COUNT(*) " +
+                   "FROM token_usage t " +
+                   "GROUP BY t.user_id, FLOOR(t.usage_time / 900000), COALESCE(t.usage_type, 'CHAT')",
+           nativeQuery = true)
+    List<Object[]> sumTokenUsageByQuarterHour();
+    
+    /**
+     * 按用户和15分钟时段统计conversations，供回填使用
+     */
+    @Query(value = "SELECT c.user_id, FLOOR(c.created_time / 900000), COUNT(*) " +
+                   "FROM conversations c " +
+                   "GROUP BY c.user_id, FLOOR(c.created_time / 900000)",
+           nativeQuery = true)
+    List<Object[]> countConversationsByQuarterHour();
+}
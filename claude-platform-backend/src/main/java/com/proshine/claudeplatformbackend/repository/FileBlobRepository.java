@@ -0,0 +1,36 @@
+package com.proshine.claudeplatformbackend.repository;
+
+import com.proshine.claudeplatformbackend.entity.FileBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+    
+    /**
+     * 增加一次引用，内容不存在时插入
+     */
+    @Modifying
+    @Query(value = "INSERT INTO file_blobs (content_hash, file_path, file_size, ref_count, created_time) " +
+                   "VALUES (:contentHash, :filePath, :fileSize, 1, :now) " +
+                   "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1",
+           nativeQuery = true)
+    int addReference(@Param("contentHash") String contentHash,
+                     @Param("filePath") String filePath,
+                     @Param("fileSize") long fileSize,
+                     @Param("now") long now);
+    
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - :count WHERE b.contentHash = :contentHash")
+    int releaseReferences(@Param("contentHash") String contentHash, @Param("count") int count);
+    
+    /**
+     * 删除已没有引用的内容记录，返回是否删除
+     */
+    @Modifying
+    @Query("DELETE FROM FileBlob b WHERE b.contentHash = :contentHash AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("contentHash") String contentHash);
+}
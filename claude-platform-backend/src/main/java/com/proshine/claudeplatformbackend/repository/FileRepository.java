@@ -3,6 +3,7 @@ package com.proshine.claudeplatformbackend.repository;
 import com.proshine.claudeplatformbackend.entity.FileRecord;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -17,15 +18,31 @@ public interface FileRepository extends JpaRepository<FileRecord, String> {
     
     Page<FileRecord> findByUserIdOrderByCreatedTimeDesc(String userId, Pageable pageable);
     
+    Slice<FileRecord> findByUserIdOrderByCreatedTimeDescIdDesc(String userId, Pageable pageable);
+    
+    /**
+     * 游标分页，从游标位置之后继续读取，沿(user_id, created_time)索引定位
+     */
+    @Query("SELECT f FROM FileRecord f WHERE f.userId = :userId AND " +
+           "(f.createdTime < :createdTime OR (f.createdTime = :createdTime AND f.id < :id)) " +
+           "ORDER BY f.createdTime DESC, f.id DESC")
+    Slice<FileRecord> findByUserIdAfterCursor(@Param("userId") String userId,
+                                             @Param("createdTime") Long createdTime,
+                                             @Param("id") String id,
+                                             Pageable pageable);
+    
     Optional<FileRecord> findByIdAndUserId(String id, String userId);
     
+    List<FileRecord> findByUserId(String userId);
+    
+    /**
+     * 按关键字模糊查询文件，文件过多、无法建立搜索索引时使用
+     */
     @Query("SELECT f FROM FileRecord f WHERE f.userId = :userId AND " +
-           "(:keyword IS NULL OR :keyword = '' OR " +
-           "f.fileName LIKE %:keyword% OR " +
-           "f.fileType LIKE %:keyword%) " +
+           "(f.fileName LIKE %:keyword% OR f.fileType LIKE %:keyword%) " +
            "ORDER BY f.createdTime DESC")
-    Page<FileRecord> findByUserIdAndKeyword(@Param("userId") String userId, 
-                                          @Param("keyword") String keyword, 
+    Page<FileRecord> findByUserIdAndKeyword(@Param("userId") String userId,
+                                          @Param("keyword") String keyword,
                                           Pageable pageable);
     
     @Query("SELECT f FROM FileRecord f WHERE f.expireTime < :currentTime")
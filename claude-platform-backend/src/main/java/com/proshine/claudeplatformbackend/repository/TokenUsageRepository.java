@@ -3,11 +3,13 @@ package com.proshine.claudeplatformbackend.repository;
 import com.proshine.claudeplatformbackend.entity.TokenUsage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -15,6 +17,19 @@ public interface TokenUsageRepository extends JpaRepository<TokenUsage, String>
     
     Page<TokenUsage> findByUserIdOrderByUsageTimeDesc(String userId, Pageable pageable);
     
+    Slice<TokenUsage> findByUserIdOrderByUsageTimeDescIdDesc(String userId, Pageable pageable);
+    
+    /**
+     * 游标分页，从游标位置之后继续读取，沿(user_id, usage_time)索引定位
+     */
+    @Query("SELECT t FROM TokenUsage t WHERE t.userId = :userId AND " +
+           "(t.usageTime < :usageTime OR (t.usageTime = :usageTime AND t.id < :id)) " +
+           "ORDER BY t.usageTime DESC, t.id DESC")
+    Slice<TokenUsage> findByUserIdAfterCursor(@Param("userId") String userId,
+                                             @Param("usageTime") Long usageTime,
+                                             @Param("id") String id,
+                                             Pageable pageable);
+    
     @Query("SELECT SUM(t.tokensCount) FROM TokenUsage t WHERE t.userId = :userId")
     Long sumTokensCountByUserId(@Param("userId") String userId);
     
@@ -24,6 +39,15 @@ public interface TokenUsageRepository extends JpaRepository<TokenUsage, String>
                                           @Param("startTime") Long startTime,
                                           @Param("endTime") Long endTime);
     
+    /**
+     * 按用户汇总时间范围内的用量，返回[用户ID, 用量]，没有记录的用户不返回
+     */
+    @Query("SELECT t.userId, SUM(t.tokensCount) FROM TokenUsage t WHERE t.userId IN :userIds AND " +
+           "t.usageTime >= :startTime AND t.usageTime <= :endTime GROUP BY t.userId")
+    List<Object[]> sumTokensCountByUserIdsAndTimeRange(@Param("userIds") Collection<String> userIds,
+                                                      @Param("startTime") Long startTime,
+                                                      @Param("endTime") Long endTime);
+    
     @Query("SELECT t FROM TokenUsage t WHERE t.userId = :userId AND " +
            "t.usageTime >= :startTime AND t.usageTime <= :endTime " +
            "ORDER BY t.usageTime DESC")
@@ -3,6 +3,7 @@ package com.proshine.claudeplatformbackend.repository;
 import com.proshine.claudeplatformbackend.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -26,6 +27,18 @@ public interface UserRepository extends JpaRepository<User, String> {
            "u.email LIKE %:keyword%)")
     Page<User> findByKeyword(@Param("keyword") String keyword, Pageable pageable);
     
+    Slice<User> findAllByOrderByCreatedTimeDescIdDesc(Pageable pageable);
+    
+    /**
+     * 游标分页，从游标位置之后继续读取，沿created_time索引定位
+     */
+    @Query("SELECT u FROM User u WHERE " +
+           "u.createdTime < :createdTime OR (u.createdTime = :createdTime AND u.id < :id) " +
+           "ORDER BY u.createdTime DESC, u.id DESC")
+    Slice<User> findAfterCursor(@Param("createdTime") Long createdTime,
+                                @Param("id") String id,
+                                Pageable pageable);
+    
     @Query("SELECT COUNT(u) FROM User u WHERE u.userStatus = 'ACTIVE'")
     long countActiveUsers();
     
@@ -0,0 +1,141 @@
+package com.proshine.claudeplatformbackend.security;
+
+import com.proshine.claudeplatformbackend.websocket.ClusterBus;
+import com.proshine.claudeplatformbackend.websocket.ClusterMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 已验证Token的缓存
+ * 缓存Token对应的用户信息，同一Token再次请求时不再验证签名和查询数据库；
+ * 条目在Token过期或缓存有效期到达时失效，用户状态、角色等变更时由UserService主动清除，并通过集群总线通知其他节点；
+ * 读取不加锁，过期在读取时检查，超出容量时先清除过期条目，仍超出时任意淘汰一批
+ */
+@Component
+public class JwtAuthenticationCache {
+    
+    @Autowired
+    private ClusterBus clusterBus;
+    
+    @Value("${app.jwt.cache.max-size:10000}")
+    private int maxSize;
+    
+    // 缓存有效期，兜底不经过UserService的用户变更
+    @Value("${app.jwt.cache.ttl-ms:300000}")
+    private long ttlMs;
+    
+    // Token -> 用户信息
+    private final Map<String, CachedPrincipal> cache = new ConcurrentHashMap<>(256);
+    
+    // 同一时间只由一个线程执行淘汰
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    
+    @PostConstruct
+    public void init() {
+        clusterBus.subscribe(message -> {
+            if (ClusterMessage.TYPE_USER_INVALIDATED.equals(message.getType())) {
+                removeUser(message.getUserId());
+            }
+        });
+    }
+    
+    public CustomUserDetails get(String token) {
+        CachedPrincipal cached = cache.get(token);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt <= System.currentTimeMillis()) {
+            cache.remove(token, cached);
+            return null;
+        }
+        return cached.userDetails;
+    }
+    
+    public void put(String token, CustomUserDetails userDetails, Date tokenExpiration) {
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        if (tokenExpiration != null) {
+            expiresAt = Math.min(expiresAt, tokenExpiration.getTime());
+        }
+        cache.put(token, new CachedPrincipal(userDetails, expiresAt));
+        if (cache.size() > maxSize) {
+            evict();
+        }
+    }
+    
+    /**
+     * 清除用户的所有缓存Token，在事务中调用时提交后再清除一次，避免并发请求缓存了提交前的数据；
+     * 提交后通知其他节点清除
+     */
+    public void invalidateUser(String userId) {
+        removeUser(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeUser(userId);
+                    publishInvalidation(userId);
+                }
+            });
+        } else {
+            publishInvalidation(userId);
+        }
+    }
+    
+    public void clear() {
+        cache.clear();
+    }
+    
+    private void publishInvalidation(String userId) {
+        ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_USER_INVALIDATED);
+        message.setUserId(userId);
+        clusterBus.broadcast(message);
+    }
+    
+    private void removeUser(String userId) {
+        cache.values().removeIf(cached -> userId.equals(cached.userDetails.getId()));
+    }
+    
+    /**
+     * 清除过期条目，仍超出容量时淘汰到容量的90%，避免容量满时每次写入都遍历整个缓存
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            cache.values().removeIf(cached -> cached.expiresAt <= now);
+            if (cache.size() <= maxSize) {
+                return;
+            }
+            int target = maxSize - maxSize / 10;
+            Iterator<CachedPrincipal> iterator = cache.values().iterator();
+            while (cache.size() > target && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+    
+    private static class CachedPrincipal {
+        final CustomUserDetails userDetails;
+        final long expiresAt;
+        
+        CachedPrincipal(CustomUserDetails userDetails, long expiresAt) {
+            this.userDetails = userDetails;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.proshine.claudeplatformbackend.service;
+
+import com.proshine.claudeplatformbackend.entity.FileRecord;
+import com.proshine.claudeplatformbackend.repository.FileRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话附件内容服务
+ * 缓存解码后的文件文本，按文件路径和修改时间、大小判断是否失效，同一附件在多轮对话中不再重复读盘和解码；
+ * 缓存按字符总数限制大小，超过上限时淘汰最久未使用的条目
+ */
+@Service
+public class AttachmentContentService {
+    
+    @Autowired
+    private FileRepository fileRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    // 缓存文本的字符总数上限
+    @Value("${app.file.content-cache-max-chars:16777216}")
+    private long maxCachedChars;
+    
+    // 文件路径 -> 解码后的文本，上传文件按内容去重存储，相同内容的记录共用一个条目
+    private final LinkedHashMap<String, CachedContent> cache = new LinkedHashMap<>(64, 0.75f, true);
+    
+    private long cachedChars = 0;
+    
+    /**
+     * 批量获取用户附件的文本，按fileIds的顺序返回可直接拼入提示词的内容；不存在或无权限的文件跳过
+     */
+    public List<String> getAttachmentTexts(String userId, List<String> fileIds) {
+        List<String> result = new ArrayList<>();
+        if (fileIds == null || fileIds.isEmpty()) {
+            return result;
+        }
+        
+        Map<String, FileRecord> records = new HashMap<>();
+        for (FileRecord fileRecord : fileRepository.findAllById(new LinkedHashSet<>(fileIds))) {
+            if (fileRecord.getUserId().equals(userId)) {
+                records.put(fileRecord.getId(), fileRecord);
+            }
+        }
+        
+        for (String fileId : fileIds) {
+            FileRecord fileRecord = records.get(fileId);
+            if (fileRecord == null) {
+                continue;
+            }
+            try {
+                result.add("文件: " + fileRecord.getFileName() + "\n内容:\n" + getContent(fileRecord));
+            } catch (Exception e) {
+                System.err.println("读取文件失败: " + fileId + ", " + e.getMessage());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 获取文件的文本内容，优先使用缓存
+     */
+    public String getContent(FileRecord fileRecord) throws IOException {
+        String key = fileRecord.getFilePath();
+        Path filePath = Paths.get(key);
+        
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (IOException e) {
+            invalidate(key);
+            throw new RuntimeException("文件不存在");
+        }
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        
+        synchronized (cache) {
+            CachedContent cached = cache.get(key);
+            if (cached != null && cached.lastModified == lastModified && cached.size == attrs.size()) {
+                meterRegistry.counter("app.file.content-cache", "result", "hit").increment();
+                return cached.text;
+            }
+        }
+        meterRegistry.counter("app.file.content-cache", "result", "miss").increment();
+        
+        // 在锁外读取文件，避免大文件阻塞其他附件的读取
+        byte[] bytes = Files.readAllBytes(filePath);
+        meterRegistry.counter("app.file.bytes", "operation", "attachment_read").increment(bytes.length);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        put(key, new CachedContent(lastModified, attrs.size(), text));
+        return text;
+    }
+    
+    public void invalidate(String filePath) {
+        synchronized (cache) {
+            CachedContent removed = cache.remove(filePath);
+            if (removed != null) {
+                cachedChars -= removed.text.length();
+            }
+        }
+    }
+    
+    private void put(String key, CachedContent content) {
+        // 单个文件超过上限的四分之一时不缓存，避免挤掉其他条目
+        if (content.text.length() > maxCachedChars / 4) {
+            invalidate(key);
+            return;
+        }
+        synchronized (cache) {
+            CachedContent previous = cache.put(key, content);
+            if (previous != null) {
+                cachedChars -= previous.text.length();
+            }
+            cachedChars += content.text.length();
+            
+            Iterator<CachedContent> iterator = cache.values().iterator();
+            while (cachedChars > maxCachedChars && iterator.hasNext()) {
+                cachedChars -= iterator.next().text.length();
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * 缓存的文件文本
+     */
+    private static class CachedContent {
+        final long lastModified;
+        final long size;
+        final String text;
+        
+        CachedContent(long lastModified, long size, String text) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.text = text;
+        }
+    }
+}
@@ -14,6 +14,8 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
+
 @Service
 public class AuthService {
     
@@ -79,8 +81,8 @@ public class AuthService {
         userInfo.setCreatedTime(user.getCreatedTime());
         userInfo.setLastLoginTime(user.getLastLoginTime());
         
-        // 获取Token使用情况
-        Integer usedTokens = tokenService.getMonthlyUsedTokens(user.getId());
+        // 获取Token使用情况，已加载的用户对象直接用于汇总，不再按ID重新查询
+        Integer usedTokens = tokenService.getMonthlyUsedTokens(Collections.singletonList(user)).get(user.getId());
         userInfo.setUsedTokens(usedTokens != null ? usedTokens : 0);
         userInfo.setRemainingTokens(user.getTokenLimit() - userInfo.getUsedTokens());
         
@@ -3,19 +3,32 @@ package com.proshine.claudeplatformbackend.service;
 import com.proshine.claudeplatformbackend.dto.request.ChatRequest;
 import com.proshine.claudeplatformbackend.dto.response.ChatResponse;
 import com.proshine.claudeplatformbackend.entity.Conversation;
-import com.proshine.claudeplatformbackend.entity.FileRecord;
+import com.proshine.claudeplatformbackend.entity.ConversationMessage;
 import com.proshine.claudeplatformbackend.security.SecurityUtils;
+import com.proshine.claudeplatformbackend.websocket.ChatMessage;
+import com.proshine.claudeplatformbackend.websocket.MessageHandler;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class ChatService {
@@ -24,7 +37,7 @@ public class ChatService {
     private ConversationService conversationService;
     
     @Autowired
-    private FileService fileService;
+    private AttachmentContentService attachmentContentService;
     
     @Autowired
     private TokenService tokenService;
@@ -32,37 +45,144 @@ public class ChatService {
     @Autowired
     private SystemService systemService;
     
+    @Autowired
+    private MessageHandler messageHandler;
+    
+    @Autowired
+    @Qualifier("chatExecutor")
+    private Executor chatExecutor;
+    
+    @Autowired
+    @Qualifier("sseSendExecutor")
+    private Executor sseSendExecutor;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.chat.stream-timeout-ms:180000}")
+    private long streamTimeoutMs;
+    
+    // 每个SSE连接最多排队的事件数，超出时结束连接并取消请求
+    @Value("${app.chat.sse.queue-capacity:1024}")
+    private int sseQueueCapacity;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
     
-    @Transactional
-    public ChatResponse processChat(ChatRequest request) {
+    // 对话请求各阶段耗时：额度检查、附件读取、等待本地客户端响应、保存对话
+    private Timer quotaTimer;
+    private Timer attachmentTimer;
+    private Timer dispatchTimer;
+    private Timer persistenceTimer;
+    
+    // SSE事件名称
+    private static final String STREAM_EVENT_CHUNK = "chunk";
+    private static final String STREAM_EVENT_END = "end";
+    private static final String STREAM_EVENT_ERROR = "error";
+    
+    @PostConstruct
+    public void initMetrics() {
+        quotaTimer = stageTimer("quota");
+        attachmentTimer = stageTimer("attachments");
+        dispatchTimer = stageTimer("dispatch");
+        persistenceTimer = stageTimer("persistence");
+    }
+    
+    /**
+     * 处理对话请求
+     * 请求转发给本地客户端后立即返回Future，收到响应后在chatExecutor上完成持久化，
+     * 等待期间不占用Servlet线程和数据库连接
+     */
+    public CompletableFuture<ChatResponse> processChat(ChatRequest request) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            return CompletableFuture.completedFuture(ChatResponse.error(null, "用户未登录"));
+        }
+        
+        return dispatchChat(userId, request, UUID.randomUUID().toString(), null);
+    }
+    
+    /**
+     * 流式处理对话请求
+     * 本地客户端的响应片段到达后立即以SSE事件推送，结束时只推送对话ID和Token用量，不再重复完整内容；
+     * 事件由SseStream在发送线程池上写出，不占用WebSocket接收线程
+     */
+    public SseEmitter streamChat(ChatRequest request) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
         String userId = SecurityUtils.getCurrentUserId();
         if (userId == null) {
-            return ChatResponse.error(null, "用户未登录");
+            sendStreamEvent(emitter, STREAM_EVENT_ERROR, ChatResponse.error(null, "用户未登录"));
+            emitter.complete();
+            return emitter;
         }
         
+        String requestId = UUID.randomUUID().toString();
+        // 客户端断开或超时时取消等待中的请求
+        emitter.onTimeout(() -> messageHandler.cancelChatRequest(requestId));
+        emitter.onError(e -> messageHandler.cancelChatRequest(requestId));
+        SseStream stream = new SseStream(emitter, sseSendExecutor, sseQueueCapacity,
+            () -> messageHandler.cancelChatRequest(requestId));
+        
+        dispatchChat(userId, request, requestId, chunk -> {
+            if (chunk.getContent() != null) {
+                stream.send(STREAM_EVENT_CHUNK, chunk.getContent());
+            }
+        }).thenAccept(response -> {
+            if (response.isSuccess()) {
+                response.setResponse(null);
+            }
+            stream.send(response.isSuccess() ? STREAM_EVENT_END : STREAM_EVENT_ERROR, response);
+            stream.complete();
+        });
+        return emitter;
+    }
+    
+    private boolean sendStreamEvent(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+            return true;
+        } catch (Exception e) {
+            System.err.println("推送SSE事件失败: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 分发对话请求并按结果记录整个请求的耗时
+     */
+    private CompletableFuture<ChatResponse> dispatchChat(String userId, ChatRequest request, String requestId,
+                                                       Consumer<ChatMessage> chunkListener) {
+        long startTime = System.nanoTime();
+        return doDispatchChat(userId, request, requestId, chunkListener).whenComplete((response, error) ->
+            Timer.builder("app.chat.requests")
+                .description("对话请求总耗时")
+                .tag("outcome", response != null && response.isSuccess() ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS));
+    }
+    
+    private CompletableFuture<ChatResponse> doDispatchChat(String userId, ChatRequest request, String requestId,
+                                                         Consumer<ChatMessage> chunkListener) {
+        // 预占单次请求的最大Token额度，完成后按实际用量提交
+        Integer maxTokensPerRequest = systemService.getMaxTokensPerRequest();
+        TokenQuotaLedger.Reservation reservation;
         try {
-            // 检查Token额度
-            Integer maxTokensPerRequest = systemService.getMaxTokensPerRequest();
-            if (!tokenService.checkTokenAvailable(userId, maxTokensPerRequest)) {
-                return ChatResponse.error(request.getConversationId(), "Token额度不足");
+            reservation = quotaTimer.record(() -> tokenService.reserveTokens(userId, maxTokensPerRequest));
+            if (reservation == null) {
+                return CompletableFuture.completedFuture(
+                    ChatResponse.error(request.getConversationId(), "Token额度不足"));
             }
+        } catch (Exception e) {
+            System.err.println("处理对话请求失败: " + e.getMessage());
+            return CompletableFuture.completedFuture(
+                ChatResponse.error(request.getConversationId(), "处理请求失败: " + e.getMessage()));
+        }
+        
+        try {
             
             // 处理文件内容
-            List<String> fileContents = new ArrayList<>();
-            if (request.getFileIds() != null && !request.getFileIds().isEmpty()) {
-                for (String fileId : request.getFileIds()) {
-                    try {
-                        if (fileService.fileExists(fileId)) {
-                            String content = fileService.getFileContent(fileId);
-                            FileRecord fileRecord = fileService.getFileById(fileId);
-                            fileContents.add("文件: " + fileRecord.getFileName() + "\n内容:\n" + content);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("读取文件失败: " + fileId + ", " + e.getMessage());
-                    }
-                }
-            }
+            List<String> fileContents = attachmentTimer.record(
+                () -> attachmentContentService.getAttachmentTexts(userId, request.getFileIds()));
             
             // 构建完整的消息内容
             StringBuilder fullMessage = new StringBuilder();
@@ -74,14 +194,66 @@ public class ChatService {
                     fullMessage.append(fileContent).append("\n\n");
                 }
             }
+            String prompt = fullMessage.toString();
             
-            // 这里应该通过WebSocket发送给本地客户端
-            // 目前先模拟响应
-            String response = simulateClaudeResponse(fullMessage.toString());
-            Integer tokensUsed = estimateTokenUsage(fullMessage.toString(), response);
+            // 通过WebSocket发送给本地客户端
+            Map<String, Object> data = new HashMap<>();
+            data.put("conversationId", request.getConversationId());
+            
+            ChatMessage chatRequest = ChatMessage.chatRequest(userId, prompt, data);
+            chatRequest.setId(requestId);
+            long dispatchStart = System.nanoTime();
+            return messageHandler.sendChatRequestToClient(chatRequest, chunkListener)
+                .handleAsync((reply, error) -> {
+                    dispatchTimer.record(System.nanoTime() - dispatchStart, TimeUnit.NANOSECONDS);
+                    if (error == null) {
+                        return persistenceTimer.record(() -> saveChatResult(userId, request, prompt,
+                            reply.getContent(), fileContents, reservation));
+                    }
+                    tokenService.releaseTokens(reservation);
+                    return buildErrorResponse(request, error);
+                }, chatExecutor);
             
-            // 创建或更新对话
-            String conversationId = request.getConversationId();
+        } catch (Exception e) {
+            tokenService.releaseTokens(reservation);
+            System.err.println("处理对话请求失败: " + e.getMessage());
+            return CompletableFuture.completedFuture(
+                ChatResponse.error(request.getConversationId(), "处理请求失败: " + e.getMessage()));
+        }
+    }
+    
+    private Timer stageTimer(String stage) {
+        return Timer.builder("app.chat.stage")
+            .description("对话请求各阶段耗时")
+            .tag("stage", stage)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+    
+    private ChatResponse buildErrorResponse(ChatRequest request, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        System.err.println("处理对话请求失败: " + cause.getMessage());
+        if (cause instanceof CancellationException) {
+            return ChatResponse.error(request.getConversationId(), "请求已取消");
+        }
+        return ChatResponse.error(request.getConversationId(), "处理请求失败: " + cause.getMessage());
+    }
+    
+    /**
+     * 保存本地客户端返回的结果，创建或更新对话
+     */
+    private ChatResponse saveChatResult(String userId, ChatRequest request, String prompt,
+                                        String response, List<String> fileContents,
+                                        TokenQuotaLedger.Reservation reservation) {
+        if (response == null) {
+            response = "";
+        }
+        Integer tokensUsed = estimateTokenUsage(prompt, response);
+        
+        // 创建对话或向已有对话追加本轮消息
+        List<ConversationMessage> messages = buildTurnMessages(request.getMessage(), response, fileContents);
+        String conversationId = request.getConversationId();
+        try {
             if (conversationId == null || conversationId.isEmpty()) {
                 // 创建新对话
                 String title = request.getTitle();
@@ -89,29 +261,20 @@ public class ChatService {
                     title = generateConversationTitle(request.getMessage());
                 }
                 
-                String conversationContent = buildConversationContent(request.getMessage(), response, fileContents);
-                Conversation conversation = conversationService.createConversation(title, conversationContent, tokensUsed);
+                Conversation conversation = conversationService.startConversation(userId, title, messages, tokensUsed);
                 conversationId = conversation.getId();
             } else {
-                // 更新现有对话
-                Conversation existingConversation = conversationService.getConversationById(conversationId);
-                String updatedContent = appendToConversationContent(existingConversation.getContent(), 
-                    request.getMessage(), response, fileContents);
-                conversationService.updateConversation(conversationId, null, updatedContent, tokensUsed);
+                conversationService.appendMessages(userId, conversationId, messages, tokensUsed);
             }
-            
-            return ChatResponse.success(conversationId, response, tokensUsed);
-            
         } catch (Exception e) {
-            System.err.println("处理对话请求失败: " + e.getMessage());
-            return ChatResponse.error(request.getConversationId(), "处理请求失败: " + e.getMessage());
+            tokenService.releaseTokens(reservation);
+            return buildErrorResponse(request, e);
         }
-    }
-    
-    private String simulateClaudeResponse(String message) {
-        // 这是一个模拟响应，实际应该通过WebSocket与本地客户端通信
-        return "这是Claude的模拟响应。您的消息是: " + message.substring(0, Math.min(100, message.length())) + 
-               (message.length() > 100 ? "..." : "");
+        
+        // 对话保存成功后按实际用量提交预占的额度
+        tokenService.commitTokens(reservation, conversationId, tokensUsed, "CHAT");
+        
+        return ChatResponse.success(conversationId, response, tokensUsed);
     }
     
     private Integer estimateTokenUsage(String input, String output) {
@@ -127,70 +290,29 @@ public class ChatService {
         return title.replaceAll("\\s+", " ").trim();
     }
     
-    private String buildConversationContent(String userMessage, String assistantResponse, List<String> fileContents) {
-        try {
-            Map<String, Object> conversation = new HashMap<>();
-            List<Map<String, Object>> messages = new ArrayList<>();
-            
-            // 用户消息
-            Map<String, Object> userMsg = new HashMap<>();
-            userMsg.put("role", "user");
-            userMsg.put("content", userMessage);
-            userMsg.put("timestamp", System.currentTimeMillis());
-            if (!fileContents.isEmpty()) {
-                userMsg.put("files", fileContents);
-            }
-            messages.add(userMsg);
-            
-            // 助手响应
-            Map<String, Object> assistantMsg = new HashMap<>();
-            assistantMsg.put("role", "assistant");
-            assistantMsg.put("content", assistantResponse);
-            assistantMsg.put("timestamp", System.currentTimeMillis());
-            messages.add(assistantMsg);
-            
-            conversation.put("messages", messages);
-            return objectMapper.writeValueAsString(conversation);
-            
-        } catch (JsonProcessingException e) {
-            System.err.println("构建对话内容失败: " + e.getMessage());
-            return "{\"messages\":[]}";
-        }
-    }
-    
-    private String appendToConversationContent(String existingContent, String userMessage, 
-                                             String assistantResponse, List<String> fileContents) {
-        try {
-            Map<String, Object> conversation = objectMapper.readValue(existingContent, Map.class);
-            List<Map<String, Object>> messages = (List<Map<String, Object>>) conversation.get("messages");
-            
-            if (messages == null) {
-                messages = new ArrayList<>();
-            }
-            
-            // 添加用户消息
-            Map<String, Object> userMsg = new HashMap<>();
-            userMsg.put("role", "user");
-            userMsg.put("content", userMessage);
-            userMsg.put("timestamp", System.currentTimeMillis());
-            if (!fileContents.isEmpty()) {
-                userMsg.put("files", fileContents);
+    private List<ConversationMessage> buildTurnMessages(String userMessage, String assistantResponse,
+                                                        List<String> fileContents) {
+        List<ConversationMessage> messages = new ArrayList<>();
+        
+        // 用户消息
+        ConversationMessage userMsg = new ConversationMessage();
+        userMsg.setRole(ConversationMessage.ROLE_USER);
+        userMsg.setContent(userMessage);
+        if (!fileContents.isEmpty()) {
+            try {
+                userMsg.setFiles(objectMapper.writeValueAsString(fileContents));
+            } catch (JsonProcessingException e) {
+                System.err.println("序列化附件内容失败: " + e.getMessage());
             }
-            messages.add(userMsg);
-            
-            // 添加助手响应
-            Map<String, Object> assistantMsg = new HashMap<>();
-            assistantMsg.put("role", "assistant");
-            assistantMsg.put("content", assistantResponse);
-            assistantMsg.put("timestamp", System.currentTimeMillis());
-            messages.add(assistantMsg);
-            
-            conversation.put("messages", messages);
-            return objectMapper.writeValueAsString(conversation);
-            
-        } catch (Exception e) {
-            System.err.println("更新对话内容失败: " + e.getMessage());
-            return buildConversationContent(userMessage, assistantResponse, fileContents);
         }
+        messages.add(userMsg);
+        
+        // 助手响应
+        ConversationMessage assistantMsg = new ConversationMessage();
+        assistantMsg.setRole(ConversationMessage.ROLE_ASSISTANT);
+        assistantMsg.setContent(assistantResponse);
+        messages.add(assistantMsg);
+        
+        return messages;
     }
 }
\ No newline at end of file
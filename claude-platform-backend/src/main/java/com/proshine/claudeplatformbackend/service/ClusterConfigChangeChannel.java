@@ -0,0 +1,37 @@
+package com.proshine.claudeplatformbackend.service;
+
+import com.proshine.claudeplatformbackend.websocket.ClusterBus;
+import com.proshine.claudeplatformbackend.websocket.ClusterMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * 通过集群总线通知其他实例的配置变更通道
+ * 总线断开期间的通知会丢失，此时仍依靠SystemService的定时刷新获取变更
+ */
+@Component
+@ConditionalOnProperty(name = "app.system.config-channel", havingValue = "cluster")
+public class ClusterConfigChangeChannel implements ConfigChangeChannel {
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Override
+    public void publish(String key) {
+        ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_CONFIG_CHANGED);
+        message.setConfigKey(key);
+        clusterBus.broadcast(message);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        clusterBus.subscribe(message -> {
+            if (ClusterMessage.TYPE_CONFIG_CHANGED.equals(message.getType())) {
+                listener.accept(message.getConfigKey());
+            }
+        });
+    }
+}
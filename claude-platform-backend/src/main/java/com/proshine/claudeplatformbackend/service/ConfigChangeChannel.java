@@ -0,0 +1,21 @@
+package com.proshine.claudeplatformbackend.service;
+
+import java.util.function.Consumer;
+
+/**
+ * 系统配置变更通知通道
+ * 某个实例修改配置并提交后通过通道通知其他实例重新加载配置快照；
+ * 实现可以基于消息队列、Redis发布订阅或集群总线等
+ */
+public interface ConfigChangeChannel {
+    
+    /**
+     * 通知其他实例配置已变更，key为空表示全部配置
+     */
+    void publish(String key);
+    
+    /**
+     * 注册收到其他实例变更通知时的回调
+     */
+    void subscribe(Consumer<String> listener);
+}
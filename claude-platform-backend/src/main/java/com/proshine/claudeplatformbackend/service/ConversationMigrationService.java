@@ -0,0 +1,67 @@
+package com.proshine.claudeplatformbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 对话内容迁移服务
+ * 启动时把conversations.content中的旧版JSON拆分到conversation_messages表，
+ * 每个对话单独提交，单个对话失败时记录日志并跳过，下次启动再重试；未迁移的对话在首次访问时也会按需迁移
+ */
+@Service
+@Order(100)
+public class ConversationMigrationService implements CommandLineRunner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ConversationMigrationService.class);
+    
+    @Autowired
+    private ConversationService conversationService;
+    
+    @Value("${app.conversation.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+    
+    @Value("${app.conversation.migrate-batch-size:100}")
+    private int batchSize;
+    
+    @Override
+    public void run(String... args) {
+        if (!migrateOnStartup) {
+            return;
+        }
+        
+        int migrated = 0;
+        int failed = 0;
+        // 按ID顺序向后读取，失败的对话留在原处，不会在下一批中重复出现
+        String lastId = "";
+        try {
+            List<String> conversationIds = conversationService.getLegacyConversationIds(lastId, PageRequest.of(0, batchSize));
+            while (!conversationIds.isEmpty()) {
+                for (String conversationId : conversationIds) {
+                    try {
+                        conversationService.migrateLegacyConversation(conversationId);
+                        migrated++;
+                    } catch (Exception e) {
+                        failed++;
+                        logger.error("迁移旧版对话内容失败，已跳过: {}, {}", conversationId, e.getMessage(), e);
+                    }
+                    lastId = conversationId;
+                }
+                conversationIds = conversationService.getLegacyConversationIds(lastId, PageRequest.of(0, batchSize));
+            }
+        } catch (Exception e) {
+            logger.error("读取旧版对话失败: {}", e.getMessage(), e);
+        }
+        
+        if (migrated > 0 || failed > 0) {
+            logger.info("旧版对话内容迁移完成，共迁移 {} 个对话，失败 {} 个", migrated, failed);
+        }
+    }
+}
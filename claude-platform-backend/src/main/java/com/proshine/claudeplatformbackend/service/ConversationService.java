@@ -1,15 +1,25 @@
 package com.proshine.claudeplatformbackend.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proshine.claudeplatformbackend.dto.response.ConversationSummary;
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.entity.Conversation;
+import com.proshine.claudeplatformbackend.entity.ConversationMessage;
+import com.proshine.claudeplatformbackend.repository.ConversationMessageRepository;
 import com.proshine.claudeplatformbackend.repository.ConversationRepository;
 import com.proshine.claudeplatformbackend.security.SecurityUtils;
+import com.proshine.claudeplatformbackend.utils.CursorUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ConversationService {
@@ -17,9 +27,20 @@ public class ConversationService {
     @Autowired
     private ConversationRepository conversationRepository;
     
+    @Autowired
+    private ConversationMessageRepository conversationMessageRepository;
+    
     @Autowired
     private TokenService tokenService;
     
+    @Autowired
+    private UsageRollupService usageRollupService;
+    
+    @Autowired
+    private SearchService searchService;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
     @Transactional
     public Conversation createConversation(String title, String content, Integer tokensUsed) {
         String userId = SecurityUtils.getCurrentUserId();
@@ -27,13 +48,25 @@ public class ConversationService {
             throw new RuntimeException("用户未登录");
         }
         
+        return createConversation(userId, title, content, tokensUsed);
+    }
+    
+    /**
+     * 为指定用户创建对话，供不在请求线程上的异步流程使用
+     */
+    @Transactional
+    public Conversation createConversation(String userId, String title, String content, Integer tokensUsed) {
         Conversation conversation = new Conversation();
         conversation.setUserId(userId);
         conversation.setTitle(title);
         conversation.setContent(content);
+        // 传入旧版JSON内容时保留为待迁移状态，首次读取或追加时再拆分为消息
+        conversation.setMessageCount(content == null ? 0 : null);
         conversation.setTokensUsed(tokensUsed != null ? tokensUsed : 0);
         
         conversation = conversationRepository.save(conversation);
+        usageRollupService.recordConversation(userId, conversation.getCreatedTime());
+        searchService.conversationChanged(userId, conversation.getId());
         
         // 记录Token使用
         if (tokensUsed != null && tokensUsed > 0) {
@@ -51,6 +84,15 @@ public class ConversationService {
             throw new RuntimeException("用户未登录");
         }
         
+        return updateConversation(userId, conversationId, title, content, additionalTokens);
+    }
+    
+    /**
+     * 更新指定用户的对话，供不在请求线程上的异步流程使用
+     */
+    @Transactional
+    public Conversation updateConversation(String userId, String conversationId, String title, 
+                                         String content, Integer additionalTokens) {
         Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId)
             .orElseThrow(() -> new RuntimeException("对话不存在或无权限访问"));
         
@@ -58,33 +100,203 @@ public class ConversationService {
             conversation.setTitle(title);
         }
         if (content != null) {
+            // 整体替换历史内容，重新标记为待迁移
             conversation.setContent(content);
+            conversation.setMessageCount(null);
         }
         if (additionalTokens != null && additionalTokens > 0) {
             conversation.setTokensUsed(conversation.getTokensUsed() + additionalTokens);
             // 记录Token使用
             tokenService.recordTokenUsage(userId, conversationId, additionalTokens, "CHAT");
         }
+        if (title != null || content != null) {
+            searchService.conversationChanged(userId, conversationId);
+        }
+        
+        return conversationRepository.save(conversation);
+    }
+    
+    /**
+     * 创建对话并写入第一轮消息，Token使用记录由调用方提交
+     */
+    @Transactional
+    public Conversation startConversation(String userId, String title, List<ConversationMessage> messages,
+                                          Integer tokensUsed) {
+        Conversation conversation = new Conversation();
+        conversation.setUserId(userId);
+        conversation.setTitle(title);
+        conversation.setMessageCount(0);
+        conversation.setTokensUsed(0);
+        conversation = conversationRepository.save(conversation);
+        usageRollupService.recordConversation(userId, conversation.getCreatedTime());
+        
+        return appendToConversation(conversation, messages, tokensUsed);
+    }
+    
+    /**
+     * 向对话追加消息，只插入新消息行，不重写历史内容
+     */
+    @Transactional
+    public Conversation appendMessages(String userId, String conversationId, List<ConversationMessage> messages,
+                                       Integer additionalTokens) {
+        // 锁定对话行，保证并发追加时消息序号不冲突
+        Conversation conversation = conversationRepository.findByIdAndUserIdForUpdate(conversationId, userId)
+            .orElseThrow(() -> new RuntimeException("对话不存在或无权限访问"));
+        
+        if (conversation.getMessageCount() == null) {
+            migrateLegacyContent(conversation);
+        }
+        return appendToConversation(conversation, messages, additionalTokens);
+    }
+    
+    private Conversation appendToConversation(Conversation conversation, List<ConversationMessage> messages,
+                                              Integer additionalTokens) {
+        int seq = conversation.getMessageCount();
+        for (ConversationMessage message : messages) {
+            message.setConversationId(conversation.getId());
+            message.setSeq(seq++);
+        }
+        conversationMessageRepository.saveAll(messages);
+        conversation.setMessageCount(seq);
+        searchService.messagesAppended(conversation, messages);
+        
+        // Token使用记录由调用方在提交预占额度时写入
+        if (additionalTokens != null && additionalTokens > 0) {
+            conversation.setTokensUsed(conversation.getTokensUsed() + additionalTokens);
+        }
         
         return conversationRepository.save(conversation);
     }
     
-    public Page<Conversation> getUserConversations(Pageable pageable) {
+    /**
+     * 分页读取对话消息，按序号升序
+     * 与追加消息一样锁定对话行后再判断是否需要迁移，避免与并发追加写入相同的序号
+     */
+    @Transactional
+    public Page<ConversationMessage> getConversationMessages(String conversationId, Pageable pageable) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+        
+        Conversation conversation = conversationRepository.findByIdAndUserIdForUpdate(conversationId, userId)
+            .orElseThrow(() -> new RuntimeException("对话不存在或无权限访问"));
+        if (conversation.getMessageCount() == null) {
+            migrateLegacyContent(conversation);
+            conversationRepository.save(conversation);
+        }
+        
+        return conversationMessageRepository.findByConversationIdOrderBySeqAsc(conversationId, pageable);
+    }
+    
+    /**
+     * 迁移单个旧版对话，供启动时的批量迁移使用
+     */
+    @Transactional
+    public void migrateLegacyConversation(String conversationId) {
+        // 锁定对话行后再判断，用户可能已经在首次访问时迁移并追加了消息
+        conversationRepository.findByIdForUpdate(conversationId).ifPresent(conversation -> {
+            if (conversation.getMessageCount() == null) {
+                migrateLegacyContent(conversation);
+                conversationRepository.save(conversation);
+            }
+        });
+    }
+    
+    /**
+     * 按ID顺序读取afterId之后的旧版对话，迁移失败的对话不会阻塞后面的对话
+     */
+    public List<String> getLegacyConversationIds(String afterId, Pageable pageable) {
+        return conversationRepository.findLegacyConversationIds(afterId, pageable);
+    }
+    
+    /**
+     * 将content中的旧版JSON拆分为消息行
+     * 解析失败时保留原内容，并把原内容作为一条消息写入，历史记录仍可查看，也不会反复重试
+     */
+    @SuppressWarnings("unchecked")
+    private void migrateLegacyContent(Conversation conversation) {
+        conversationMessageRepository.deleteByConversationId(conversation.getId());
+        
+        String content = conversation.getContent();
+        if (content == null || content.trim().isEmpty()) {
+            conversation.setMessageCount(0);
+            return;
+        }
+        
+        try {
+            Map<String, Object> legacy = objectMapper.readValue(content, Map.class);
+            List<Map<String, Object>> legacyMessages = (List<Map<String, Object>>) legacy.get("messages");
+            
+            List<ConversationMessage> messages = new ArrayList<>();
+            int seq = 0;
+            if (legacyMessages != null) {
+                for (Map<String, Object> legacyMessage : legacyMessages) {
+                    ConversationMessage message = new ConversationMessage();
+                    message.setConversationId(conversation.getId());
+                    message.setSeq(seq++);
+                    message.setRole(legacyMessage.get("role") != null ? legacyMessage.get("role").toString()
+                        : ConversationMessage.ROLE_USER);
+                    message.setContent(legacyMessage.get("content") != null ? legacyMessage.get("content").toString() : null);
+                    if (legacyMessage.get("files") != null) {
+                        message.setFiles(objectMapper.writeValueAsString(legacyMessage.get("files")));
+                    }
+                    if (legacyMessage.get("timestamp") instanceof Number) {
+                        message.setCreatedTime(((Number) legacyMessage.get("timestamp")).longValue());
+                    }
+                    messages.add(message);
+                }
+            }
+            conversationMessageRepository.saveAll(messages);
+            
+            conversation.setMessageCount(seq);
+            conversation.setContent(null);
+        } catch (Exception e) {
+            System.err.println("迁移对话内容失败，按原文保存为一条消息: " + conversation.getId() + ", " + e.getMessage());
+            ConversationMessage message = new ConversationMessage();
+            message.setConversationId(conversation.getId());
+            message.setSeq(0);
+            message.setRole(ConversationMessage.ROLE_ASSISTANT);
+            message.setContent(content);
+            message.setCreatedTime(conversation.getCreatedTime());
+            conversationMessageRepository.save(message);
+            conversation.setMessageCount(1);
+        }
+    }
+    
+    public Page<ConversationSummary> getUserConversations(Pageable pageable) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+        
+        return conversationRepository.findSummariesByUserId(userId, pageable);
+    }
+    
+    /**
+     * 游标分页读取对话列表，不执行总数查询
+     */
+    public CursorPage<ConversationSummary> getUserConversations(String cursor, int size) {
         String userId = SecurityUtils.getCurrentUserId();
         if (userId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        return conversationRepository.findByUserIdOrderByCreatedTimeDesc(userId, pageable);
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<ConversationSummary> conversations = position == null
+            ? conversationRepository.findSummarySliceByUserId(userId, pageable)
+            : conversationRepository.findSummariesAfterCursor(userId, position.getTime(), position.getId(), pageable);
+        return CursorPage.of(conversations, c -> CursorUtil.encode(c.getCreatedTime(), c.getId()));
     }
     
-    public Page<Conversation> searchUserConversations(String keyword, Pageable pageable) {
+    public Page<ConversationSummary> searchUserConversations(String keyword, Pageable pageable) {
         String userId = SecurityUtils.getCurrentUserId();
         if (userId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        return conversationRepository.findByUserIdAndKeyword(userId, keyword, pageable);
+        return searchService.searchConversations(userId, keyword, pageable);
     }
     
     public Conversation getConversationById(String conversationId) {
@@ -93,6 +305,10 @@ public class ConversationService {
             throw new RuntimeException("用户未登录");
         }
         
+        return getConversationById(userId, conversationId);
+    }
+    
+    public Conversation getConversationById(String userId, String conversationId) {
         return conversationRepository.findByIdAndUserId(conversationId, userId)
             .orElseThrow(() -> new RuntimeException("对话不存在或无权限访问"));
     }
@@ -105,11 +321,13 @@ public class ConversationService {
         }
         
         // 检查对话是否存在且属于当前用户
-        if (!conversationRepository.findByIdAndUserId(conversationId, userId).isPresent()) {
-            throw new RuntimeException("对话不存在或无权限访问");
-        }
+        Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId)
+            .orElseThrow(() -> new RuntimeException("对话不存在或无权限访问"));
         
+        conversationMessageRepository.deleteByConversationId(conversationId);
         conversationRepository.deleteByUserIdAndId(userId, conversationId);
+        usageRollupService.recordConversationDeleted(userId, conversation.getCreatedTime());
+        searchService.conversationChanged(userId, conversationId);
     }
     
     public long getUserConversationCount(String userId) {
@@ -32,6 +32,9 @@ public class DataInitService implements CommandLineRunner {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private SystemService systemService;
+    
     @Override
     @Transactional
     public void run(String... args) throws Exception {
@@ -42,6 +45,7 @@ public class DataInitService implements CommandLineRunner {
         
         // 初始化系统配置
         initSystemConfig();
+        systemService.refreshSnapshot();
         
         logger.info("数据初始化检查完成");
     }
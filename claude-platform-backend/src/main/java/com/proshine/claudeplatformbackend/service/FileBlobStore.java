@@ -0,0 +1,215 @@
+package com.proshine.claudeplatformbackend.service;
+
+import com.proshine.claudeplatformbackend.repository.FileBlobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 按内容寻址的文件存储
+ * 上传内容先写入临时文件并同时计算SHA-256，事务提交后移动到blobs/前两位/哈希值，相同内容只保留一份；
+ * 引用计数保存在file_blobs表中，最后一个引用删除后才删除物理文件。
+ * 同一内容的放入和删除在同一把锁内，并且都在事务提交之后执行，删除前重新确认没有新的引用
+ */
+@Component
+public class FileBlobStore {
+    
+    private static final int LOCK_STRIPES = 64;
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+    
+    @Value("${app.file.upload-dir:./uploads}")
+    private String uploadDir;
+    
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    
+    private Path blobDir;
+    
+    private Path tempDir;
+    
+    public FileBlobStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+    
+    @PostConstruct
+    public void init() throws IOException {
+        blobDir = Paths.get(uploadDir, "blobs");
+        tempDir = Paths.get(uploadDir, "tmp");
+        Files.createDirectories(blobDir);
+        Files.createDirectories(tempDir);
+        
+        // 清理上次异常退出时遗留的临时文件
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempDir)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("清理上传临时文件失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 把上传内容写入临时文件，同时计算SHA-256
+     */
+    public StagedBlob stage(InputStream inputStream) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        
+        Path tempFile = Files.createTempFile(tempDir, "upload-", ".tmp");
+        try (InputStream in = new DigestInputStream(inputStream, digest)) {
+            long size = Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return new StagedBlob(toHex(digest.digest()), tempFile, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+    
+    public Path getBlobPath(String contentHash) {
+        return blobDir.resolve(contentHash.substring(0, 2)).resolve(contentHash);
+    }
+    
+    /**
+     * 当前事务提交后放入内容，回滚时删除临时文件
+     */
+    public void storeAfterCommit(StagedBlob staged) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            store(staged);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    store(staged);
+                } else {
+                    discard(staged);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 当前事务提交后删除没有引用的内容
+     */
+    public void deleteAfterCommit(String contentHash) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteIfUnreferenced(contentHash);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteIfUnreferenced(contentHash);
+            }
+        });
+    }
+    
+    private void store(StagedBlob staged) {
+        Path target = getBlobPath(staged.getContentHash());
+        synchronized (lockFor(staged.getContentHash())) {
+            try {
+                if (Files.exists(target)) {
+                    // 相同内容已存在，丢弃本次写入的临时文件
+                    Files.deleteIfExists(staged.getTempFile());
+                    return;
+                }
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(staged.getTempFile(), target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(staged.getTempFile(), target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                System.err.println("保存上传文件失败: " + staged.getContentHash() + ", " + e.getMessage());
+                discard(staged);
+            }
+        }
+    }
+    
+    private void discard(StagedBlob staged) {
+        try {
+            Files.deleteIfExists(staged.getTempFile());
+        } catch (IOException e) {
+            System.err.println("删除上传临时文件失败: " + staged.getTempFile() + ", " + e.getMessage());
+        }
+    }
+    
+    private void deleteIfUnreferenced(String contentHash) {
+        synchronized (lockFor(contentHash)) {
+            try {
+                // 删除记录提交后可能又有相同内容上传，此时保留文件
+                if (fileBlobRepository.existsById(contentHash)) {
+                    return;
+                }
+                Files.deleteIfExists(getBlobPath(contentHash));
+            } catch (Exception e) {
+                System.err.println("删除文件内容失败: " + contentHash + ", " + e.getMessage());
+            }
+        }
+    }
+    
+    private Object lockFor(String contentHash) {
+        return locks[(contentHash.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+    
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * 已写入临时文件、尚未放入存储的上传内容
+     */
+    public static class StagedBlob {
+        private final String contentHash;
+        private final Path tempFile;
+        private final long size;
+        
+        StagedBlob(String contentHash, Path tempFile, long size) {
+            this.contentHash = contentHash;
+            this.tempFile = tempFile;
+            this.size = size;
+        }
+        
+        public String getContentHash() {
+            return contentHash;
+        }
+        
+        public Path getTempFile() {
+            return tempFile;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+    }
+}
@@ -1,24 +1,30 @@
 package com.proshine.claudeplatformbackend.service;
 
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.entity.FileRecord;
+import com.proshine.claudeplatformbackend.repository.FileBlobRepository;
 import com.proshine.claudeplatformbackend.repository.FileRepository;
 import com.proshine.claudeplatformbackend.security.SecurityUtils;
+import com.proshine.claudeplatformbackend.utils.CursorUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 @Service
 public class FileService {
@@ -26,8 +32,20 @@ public class FileService {
     @Autowired
     private FileRepository fileRepository;
     
-    @Value("${app.file.upload-dir:./uploads}")
-    private String uploadDir;
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+    
+    @Autowired
+    private FileBlobStore fileBlobStore;
+    
+    @Autowired
+    private AttachmentContentService attachmentContentService;
+    
+    @Autowired
+    private SearchService searchService;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
     
     @Transactional
     public FileRecord uploadFile(MultipartFile file) throws IOException {
@@ -40,33 +58,30 @@ public class FileService {
             throw new RuntimeException("文件不能为空");
         }
         
-        // 创建上传目录
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
-        
-        // 生成唯一文件名
+        // 写入临时文件并计算内容哈希，相同内容共用一份存储
         String originalFilename = file.getOriginalFilename();
-        String extension = "";
-        if (originalFilename != null && originalFilename.contains(".")) {
-            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        FileBlobStore.StagedBlob staged;
+        try (InputStream inputStream = file.getInputStream()) {
+            staged = fileBlobStore.stage(inputStream);
         }
-        String uniqueFilename = UUID.randomUUID().toString() + extension;
-        
-        // 保存文件
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        meterRegistry.counter("app.file.bytes", "operation", "upload").increment(staged.getSize());
+        fileBlobStore.storeAfterCommit(staged);
+        Path filePath = fileBlobStore.getBlobPath(staged.getContentHash());
+        fileBlobRepository.addReference(staged.getContentHash(), filePath.toString(), staged.getSize(),
+            System.currentTimeMillis());
         
         // 保存文件记录
         FileRecord fileRecord = new FileRecord();
         fileRecord.setUserId(userId);
         fileRecord.setFileName(originalFilename);
         fileRecord.setFilePath(filePath.toString());
-        fileRecord.setFileSize(file.getSize());
+        fileRecord.setContentHash(staged.getContentHash());
+        fileRecord.setFileSize(staged.getSize());
         fileRecord.setFileType(file.getContentType());
         
-        return fileRepository.save(fileRecord);
+        fileRecord = fileRepository.save(fileRecord);
+        searchService.fileSaved(fileRecord);
+        return fileRecord;
     }
     
     public Page<FileRecord> getUserFiles(Pageable pageable) {
@@ -78,13 +93,30 @@ public class FileService {
         return fileRepository.findByUserIdOrderByCreatedTimeDesc(userId, pageable);
     }
     
+    /**
+     * 游标分页读取文件列表，不执行总数查询
+     */
+    public CursorPage<FileRecord> getUserFiles(String cursor, int size) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+        
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<FileRecord> files = position == null
+            ? fileRepository.findByUserIdOrderByCreatedTimeDescIdDesc(userId, pageable)
+            : fileRepository.findByUserIdAfterCursor(userId, position.getTime(), position.getId(), pageable);
+        return CursorPage.of(files, f -> CursorUtil.encode(f.getCreatedTime(), f.getId()));
+    }
+    
     public Page<FileRecord> searchUserFiles(String keyword, Pageable pageable) {
         String userId = SecurityUtils.getCurrentUserId();
         if (userId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        return fileRepository.findByUserIdAndKeyword(userId, keyword, pageable);
+        return searchService.searchFiles(userId, keyword, pageable);
     }
     
     public FileRecord getFileById(String fileId) {
@@ -97,15 +129,17 @@ public class FileService {
             .orElseThrow(() -> new RuntimeException("文件不存在或无权限访问"));
     }
     
-    public byte[] downloadFile(String fileId) throws IOException {
-        FileRecord fileRecord = getFileById(fileId);
+    /**
+     * 获取可下载文件的路径，校验访问权限和物理文件是否存在
+     */
+    public Path getDownloadPath(FileRecord fileRecord) {
         Path filePath = Paths.get(fileRecord.getFilePath());
         
-        if (!Files.exists(filePath)) {
+        if (!Files.isRegularFile(filePath)) {
             throw new RuntimeException("文件不存在");
         }
         
-        return Files.readAllBytes(filePath);
+        return filePath;
     }
     
     @Transactional
@@ -118,36 +152,69 @@ public class FileService {
         FileRecord fileRecord = fileRepository.findByIdAndUserId(fileId, userId)
             .orElseThrow(() -> new RuntimeException("文件不存在或无权限访问"));
         
-        // 删除物理文件
-        Path filePath = Paths.get(fileRecord.getFilePath());
-        if (Files.exists(filePath)) {
-            Files.delete(filePath);
-        }
-        
         // 删除数据库记录
         fileRepository.deleteByUserIdAndId(userId, fileId);
+        searchService.filesDeleted(Collections.singletonList(fileRecord));
+        
+        // 释放文件内容的引用，最后一个引用删除后才删除物理文件
+        if (fileRecord.getContentHash() != null) {
+            releaseBlobs(Collections.singletonMap(fileRecord.getContentHash(), 1));
+        } else {
+            deleteLegacyFile(fileRecord);
+        }
     }
     
     @Transactional
     public int cleanupExpiredFiles() {
         long currentTime = System.currentTimeMillis();
         List<FileRecord> expiredFiles = fileRepository.findExpiredFiles(currentTime);
+        if (expiredFiles.isEmpty()) {
+            return 0;
+        }
         
-        // 删除物理文件
+        Map<String, Integer> releasedBlobs = new HashMap<>();
         for (FileRecord fileRecord : expiredFiles) {
-            try {
-                Path filePath = Paths.get(fileRecord.getFilePath());
-                if (Files.exists(filePath)) {
-                    Files.delete(filePath);
-                }
-            } catch (IOException e) {
-                // 记录日志但不抛出异常
-                System.err.println("删除过期文件失败: " + fileRecord.getFilePath() + ", " + e.getMessage());
+            if (fileRecord.getContentHash() != null) {
+                releasedBlobs.merge(fileRecord.getContentHash(), 1, Integer::sum);
+            } else {
+                deleteLegacyFile(fileRecord);
             }
         }
         
         // 删除数据库记录
-        return fileRepository.deleteExpiredFiles(currentTime);
+        fileRepository.deleteAllInBatch(expiredFiles);
+        searchService.filesDeleted(expiredFiles);
+        releaseBlobs(releasedBlobs);
+        return expiredFiles.size();
+    }
+    
+    /**
+     * 减少文件内容的引用数，没有引用的内容在事务提交后删除
+     */
+    private void releaseBlobs(Map<String, Integer> releasedBlobs) {
+        for (Map.Entry<String, Integer> entry : releasedBlobs.entrySet()) {
+            fileBlobRepository.releaseReferences(entry.getKey(), entry.getValue());
+            if (fileBlobRepository.deleteIfUnreferenced(entry.getKey()) > 0) {
+                fileBlobStore.deleteAfterCommit(entry.getKey());
+                attachmentContentService.invalidate(fileBlobStore.getBlobPath(entry.getKey()).toString());
+            }
+        }
+    }
+    
+    /**
+     * 删除去重存储之前上传的文件，这些文件只属于一条记录
+     */
+    private void deleteLegacyFile(FileRecord fileRecord) {
+        try {
+            Path filePath = Paths.get(fileRecord.getFilePath());
+            if (Files.exists(filePath)) {
+                Files.delete(filePath);
+            }
+            attachmentContentService.invalidate(fileRecord.getFilePath());
+        } catch (IOException e) {
+            // 记录日志但不抛出异常
+            System.err.println("删除文件失败: " + fileRecord.getFilePath() + ", " + e.getMessage());
+        }
     }
     
     public long getUserFileCount(String userId) {
@@ -168,13 +235,6 @@ public class FileService {
     }
     
     public String getFileContent(String fileId) throws IOException {
-        FileRecord fileRecord = getFileById(fileId);
-        Path filePath = Paths.get(fileRecord.getFilePath());
-        
-        if (!Files.exists(filePath)) {
-            throw new RuntimeException("文件不存在");
-        }
-        
-        return new String(Files.readAllBytes(filePath), "UTF-8");
+        return attachmentContentService.getContent(getFileById(fileId));
     }
 }
\ No newline at end of file
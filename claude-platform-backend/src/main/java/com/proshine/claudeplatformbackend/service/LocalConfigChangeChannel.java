@@ -0,0 +1,23 @@
+package com.proshine.claudeplatformbackend.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * 单实例部署使用的配置变更通道，不需要通知其他实例
+ * 多实例部署时其他实例依靠SystemService的定时刷新获取变更
+ */
+@Component
+@ConditionalOnProperty(name = "app.system.config-channel", havingValue = "local", matchIfMissing = true)
+public class LocalConfigChangeChannel implements ConfigChangeChannel {
+    
+    @Override
+    public void publish(String key) {
+    }
+    
+    @Override
+    public void subscribe(Consumer<String> listener) {
+    }
+}
@@ -0,0 +1,419 @@
+package com.proshine.claudeplatformbackend.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 项目实时索引
+ * 以完整扫描的结果建立，保留每个文件的大小、行数和语言，之后只按WatchService推送的变更更新受影响的文件；
+ * 事件溢出或目录监听注册失败（如达到inotify监听数上限）时标记为失效，由ProjectService重新建立或退回一次性扫描。
+ * 索引只由监听线程修改，文件和新目录的扫描在锁外进行，结果在锁内合并，读取统计不会等待磁盘IO
+ */
+@Slf4j
+class ProjectIndex implements ProjectStats, Closeable {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Path root;
+    private final Set<String> excludeDirs;
+    private final ProjectScanner scanner;
+    private final WatchService watchService;
+    private final Thread watchThread;
+
+    private final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+
+    // 以下状态都在this锁内访问
+    // 已监听目录 -> 相对根目录的深度
+    private final Map<Path, Integer> directories = new HashMap<>();
+    private final Map<Path, ProjectScanner.FileEntry> files = new HashMap<>();
+    // 语言 -> 根目录和第一层子目录中对应的文件数
+    private final Map<String, Integer> languageCounts = new HashMap<>();
+    private long totalFiles = 0;
+    private long totalLines = 0;
+    private long totalSize = 0;
+
+    private volatile boolean stale = false;
+    private volatile boolean closed = false;
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    private ProjectIndex(Path root, Set<String> excludeDirs, ProjectScanner scanner) throws IOException {
+        this.root = root;
+        this.excludeDirs = excludeDirs;
+        this.scanner = scanner;
+        this.watchService = root.getFileSystem().newWatchService();
+        this.watchThread = new Thread(this::processEvents, "project-index-" + THREAD_COUNTER.incrementAndGet());
+        this.watchThread.setDaemon(true);
+    }
+
+    /**
+     * 按项目的扫描结果建立索引并开始监听变更，snapshot需以trackFiles方式扫描
+     */
+    static ProjectIndex build(Path root, Set<String> excludeDirs, ProjectScanner scanner,
+                              ProjectScanner.Snapshot snapshot) throws IOException {
+        ProjectIndex index = new ProjectIndex(root, excludeDirs, scanner);
+        synchronized (index) {
+            index.addSnapshot(snapshot);
+        }
+        index.resyncModified(snapshot);
+        index.watchThread.start();
+        return index;
+    }
+
+    boolean isUsable() {
+        return !stale && !closed;
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized long getTotalFiles() {
+        return totalFiles;
+    }
+
+    @Override
+    public synchronized long getTotalLines() {
+        return totalLines;
+    }
+
+    @Override
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    @Override
+    public synchronized Set<String> getLanguages() {
+        return new HashSet<>(languageCounts.keySet());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("关闭项目监听失败: {}", root);
+        }
+        watchThread.interrupt();
+    }
+
+    private void processEvents() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            Path dir = watchKeys.get(key);
+            List<WatchEvent<?>> events = key.pollEvents();
+            try {
+                if (dir != null) {
+                    applyEvents(dir, events);
+                }
+                if (!key.reset()) {
+                    watchKeys.remove(key);
+                    if (dir != null) {
+                        directoryInvalidated(dir);
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("更新项目索引失败: {}, {}", root, e.getMessage());
+                stale = true;
+            }
+        }
+    }
+
+    private void applyEvents(Path dir, List<WatchEvent<?>> events) {
+        // 同一批事件中重复的路径只处理一次
+        Set<Path> changed = new LinkedHashSet<>();
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.info("项目变更事件溢出，索引需要重建: {}", root);
+                stale = true;
+                return;
+            }
+            changed.add(dir.resolve((Path) event.context()));
+        }
+
+        int depth;
+        Set<Path> watched = new HashSet<>();
+        synchronized (this) {
+            Integer dirDepth = directories.get(dir);
+            if (dirDepth == null) {
+                return;
+            }
+            depth = dirDepth;
+            for (Path path : changed) {
+                if (directories.containsKey(path)) {
+                    watched.add(path);
+                }
+            }
+        }
+
+        List<Change> scanned = new ArrayList<>(changed.size());
+        for (Path path : changed) {
+            Change change = scanChange(path, depth, watched.contains(path));
+            if (change != null) {
+                scanned.add(change);
+            }
+        }
+
+        synchronized (this) {
+            for (Change change : scanned) {
+                removePath(change.path);
+                if (change.subtree != null) {
+                    addSnapshot(change.subtree);
+                } else if (change.file != null) {
+                    addFile(change.path, change.file);
+                }
+            }
+        }
+        for (Change change : scanned) {
+            if (change.subtree != null) {
+                resyncModified(change.subtree);
+            }
+        }
+    }
+
+    /**
+     * 重新统计发生变化的路径，depth为所在目录的深度；无需更新索引时返回null
+     */
+    private Change scanChange(Path path, int depth, boolean watched) {
+        boolean isDirectory = Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+        // 已监听子目录自身的属性变化不影响统计，其中的文件变化由它自己的监听处理
+        if (isDirectory && watched) {
+            return null;
+        }
+
+        Change change = new Change(path);
+        if (isDirectory) {
+            if (!excludeDirs.contains(path.getFileName().toString())) {
+                change.subtree = scanner.scan(path, excludeDirs, depth + 1, true);
+            }
+        } else {
+            change.file = scanner.scanFile(path, depth);
+        }
+        return change;
+    }
+
+    /**
+     * 目录被删除或替换后监听失效
+     */
+    private void directoryInvalidated(Path dir) {
+        Integer depth;
+        synchronized (this) {
+            depth = directories.get(dir);
+        }
+        ProjectScanner.Snapshot subtree = depth != null && Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+            ? scanner.scan(dir, excludeDirs, depth, true)
+            : null;
+
+        synchronized (this) {
+            removePath(dir);
+            if (subtree != null) {
+                addSnapshot(subtree);
+            }
+        }
+        if (subtree != null) {
+            resyncModified(subtree);
+        }
+    }
+
+    /**
+     * 把子目录树的扫描结果加入索引并注册监听，需在锁内调用；之后由调用方在锁外调用resyncModified
+     */
+    private void addSnapshot(ProjectScanner.Snapshot snapshot) {
+        for (Map.Entry<Path, ProjectScanner.DirectoryStats> entry : snapshot.directories.entrySet()) {
+            register(entry.getKey(), entry.getValue().depth);
+        }
+        for (Map.Entry<Path, ProjectScanner.FileEntry> entry : snapshot.files.entrySet()) {
+            addFile(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 扫描之后、注册监听之前发生变化的目录重新同步一次，在锁外调用
+     */
+    private void resyncModified(ProjectScanner.Snapshot snapshot) {
+        for (Map.Entry<Path, ProjectScanner.DirectoryStats> entry : snapshot.directories.entrySet()) {
+            long lastModified;
+            try {
+                lastModified = Files.getLastModifiedTime(entry.getKey()).toMillis();
+            } catch (IOException e) {
+                synchronized (this) {
+                    removePath(entry.getKey());
+                }
+                continue;
+            }
+            if (lastModified != entry.getValue().lastModified) {
+                resyncDirectory(entry.getKey(), entry.getValue().depth);
+            }
+        }
+    }
+
+    private void register(Path dir, int depth) {
+        if (stale) {
+            return;
+        }
+        try {
+            WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            watchKeys.put(key, dir);
+            directories.put(dir, depth);
+        } catch (IOException e) {
+            log.warn("注册目录监听失败，项目索引不可用: {}, {}", dir, e.getMessage());
+            stale = true;
+        }
+    }
+
+    /**
+     * 按目录当前内容重新统计其中的文件，新出现的子目录加入索引；在锁外扫描，结果在锁内合并
+     */
+    private void resyncDirectory(Path dir, int depth) {
+        Map<Path, ProjectScanner.FileEntry> scannedFiles = new HashMap<>();
+        List<ProjectScanner.Snapshot> subtrees = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    boolean known;
+                    synchronized (this) {
+                        known = directories.containsKey(child);
+                    }
+                    if (!known && !excludeDirs.contains(child.getFileName().toString())) {
+                        subtrees.add(scanner.scan(child, excludeDirs, depth + 1, true));
+                    }
+                } else {
+                    ProjectScanner.FileEntry entry = scanner.scanFile(child, depth);
+                    if (entry != null) {
+                        scannedFiles.put(child, entry);
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            log.debug("同步目录失败: {}", dir);
+        }
+
+        synchronized (this) {
+            List<Path> existing = new ArrayList<>();
+            for (Path file : files.keySet()) {
+                if (dir.equals(file.getParent())) {
+                    existing.add(file);
+                }
+            }
+            for (Path file : existing) {
+                removeFile(file);
+            }
+            for (Map.Entry<Path, ProjectScanner.FileEntry> entry : scannedFiles.entrySet()) {
+                addFile(entry.getKey(), entry.getValue());
+            }
+            for (ProjectScanner.Snapshot subtree : subtrees) {
+                addSnapshot(subtree);
+            }
+        }
+        for (ProjectScanner.Snapshot subtree : subtrees) {
+            resyncModified(subtree);
+        }
+    }
+
+    /**
+     * 移除文件，或移除目录及其下所有文件和监听
+     */
+    private void removePath(Path path) {
+        if (removeFile(path) || !directories.containsKey(path)) {
+            return;
+        }
+
+        directories.keySet().removeIf(dir -> dir.startsWith(path));
+        watchKeys.entrySet().removeIf(entry -> {
+            if (entry.getValue().startsWith(path)) {
+                entry.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+
+        List<Path> removed = new ArrayList<>();
+        for (Path file : files.keySet()) {
+            if (file.startsWith(path)) {
+                removed.add(file);
+            }
+        }
+        for (Path file : removed) {
+            removeFile(file);
+        }
+    }
+
+    private void addFile(Path path, ProjectScanner.FileEntry entry) {
+        ProjectScanner.FileEntry previous = files.put(path, entry);
+        if (previous != null) {
+            subtract(previous);
+        }
+        totalFiles++;
+        totalLines += entry.lines;
+        totalSize += entry.size;
+        if (entry.language != null && entry.depth <= ProjectScanner.LANGUAGE_SCAN_DEPTH) {
+            languageCounts.merge(entry.language, 1, Integer::sum);
+        }
+    }
+
+    private boolean removeFile(Path path) {
+        ProjectScanner.FileEntry entry = files.remove(path);
+        if (entry == null) {
+            return false;
+        }
+        subtract(entry);
+        return true;
+    }
+
+    private void subtract(ProjectScanner.FileEntry entry) {
+        totalFiles--;
+        totalLines -= entry.lines;
+        totalSize -= entry.size;
+        if (entry.language != null && entry.depth <= ProjectScanner.LANGUAGE_SCAN_DEPTH) {
+            languageCounts.computeIfPresent(entry.language, (language, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * 在锁外扫描得到的一个路径的最新状态，subtree和file都为null表示路径已删除或被排除
+     */
+    private static class Change {
+        final Path path;
+        ProjectScanner.Snapshot subtree;
+        ProjectScanner.FileEntry file;
+
+        Change(Path path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.proshine.claudeplatformbackend.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 项目目录扫描器
+ * 每个目录一个ForkJoin任务，一次遍历同时统计文件数、大小、行数和语言；
+ * 结果按目录保存，并记录目录修改时间用于判断缓存是否失效
+ */
+@Slf4j
+class ProjectScanner {
+
+    // 只根据根目录和第一层子目录中的文件判断语言，与原来的Files.walk(path, 2)一致
+    static final int LANGUAGE_SCAN_DEPTH = 1;
+
+    // 每个行数统计任务处理的文件数
+    private static final int LINE_COUNT_BATCH_SIZE = 32;
+
+    private static final int LINE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> LINE_BUFFER = ThreadLocal.withInitial(() -> new byte[LINE_BUFFER_SIZE]);
+
+    private static final String[] TEXT_EXTENSIONS = {
+        ".java", ".js", ".ts", ".vue", ".py", ".cpp", ".c", ".h",
+        ".css", ".html", ".xml", ".json", ".yml", ".yaml", ".md",
+        ".txt", ".properties", ".sql", ".sh", ".bat"
+    };
+
+    private final ForkJoinPool pool;
+
+    private final Map<String, String> languageExtensions;
+
+    ProjectScanner(ForkJoinPool pool, Map<String, String> languageExtensions) {
+        this.pool = pool;
+        this.languageExtensions = languageExtensions;
+    }
+
+    /**
+     * 扫描整个项目目录，跳过名称在排除列表中的子目录
+     */
+    Snapshot scan(Path root, Set<String> excludeDirs) {
+        return scan(root, excludeDirs, 0, false);
+    }
+
+    /**
+     * 扫描目录，rootDepth为该目录相对项目根目录的深度；trackFiles为true时保留每个文件的统计，供实时索引使用
+     */
+    Snapshot scan(Path root, Set<String> excludeDirs, int rootDepth, boolean trackFiles) {
+        Snapshot snapshot = new Snapshot(root, excludeDirs, trackFiles);
+        pool.invoke(new DirectoryTask(snapshot, root, rootDepth));
+        return snapshot;
+    }
+
+    /**
+     * 统计单个文件，depth为所在目录的深度；路径是目录或无法读取时返回null
+     */
+    FileEntry scanFile(Path file, int depth) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+        if (attrs.isDirectory()) {
+            return null;
+        }
+        String name = file.getFileName().toString();
+        FileEntry entry = new FileEntry(depth, attrs.size(), languageOf(name));
+        if (attrs.isRegularFile() && isTextFile(name)) {
+            entry.lines = countLines(file);
+        }
+        return entry;
+    }
+
+    String languageOf(String fileName) {
+        int lastDot = fileName.lastIndexOf('.');
+        return lastDot > 0 ? languageExtensions.get(fileName.substring(lastDot)) : null;
+    }
+
+    /**
+     * 检查快照中的目录是否都未变化
+     * 新增、删除、重命名文件或子目录都会改变所在目录的修改时间；原地修改文件内容不会，由缓存有效期兜底
+     */
+    boolean isUnchanged(Snapshot snapshot) {
+        return pool.submit(() -> snapshot.directories.entrySet().parallelStream()
+            .allMatch(entry -> {
+                try {
+                    return Files.getLastModifiedTime(entry.getKey()).toMillis() == entry.getValue().lastModified;
+                } catch (IOException e) {
+                    return false;
+                }
+            })).join();
+    }
+
+    /**
+     * 统计文件行数，按块读取并计数换行符，避免逐行解码
+     */
+    static long countLines(Path file) {
+        byte[] bytes = LINE_BUFFER.get();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long lines = 0;
+        boolean empty = true;
+        boolean endsWithNewline = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                if (read == 0) {
+                    continue;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        lines++;
+                    }
+                }
+                empty = false;
+                endsWithNewline = bytes[read - 1] == '\n';
+                // 转为Buffer调用，在JDK 9以上编译时不绑定到Java 8不存在的ByteBuffer.clear()
+                ((Buffer) buffer).clear();
+            }
+        } catch (IOException e) {
+            // 忽略无法读取的文件
+            return 0;
+        }
+
+        // 最后一行没有换行符时也算一行
+        return empty || endsWithNewline ? lines : lines + 1;
+    }
+
+    static boolean isTextFile(String fileName) {
+        String lowerName = fileName.toLowerCase();
+        for (String ext : TEXT_EXTENSIONS) {
+            if (lowerName.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 扫描单个目录自身的文件，子目录和行数统计拆分为子任务
+     */
+    private class DirectoryTask extends RecursiveAction {
+
+        private final Snapshot snapshot;
+        private final Path dir;
+        private final int depth;
+
+        DirectoryTask(Snapshot snapshot, Path dir, int depth) {
+            this.snapshot = snapshot;
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            DirectoryStats stats;
+            try {
+                stats = new DirectoryStats(depth, Files.getLastModifiedTime(dir).toMillis());
+            } catch (IOException e) {
+                log.debug("读取目录信息失败: {}", dir);
+                return;
+            }
+
+            List<ForkJoinTask<?>> subtasks = new ArrayList<>();
+            List<Path> files = new ArrayList<>();
+            List<FileEntry> entries = new ArrayList<>();
+            List<Path> textFiles = new ArrayList<>();
+            List<FileEntry> textEntries = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+
+                    String name = child.getFileName().toString();
+                    if (attrs.isDirectory()) {
+                        if (!snapshot.excludeDirs.contains(name)) {
+                            subtasks.add(new DirectoryTask(snapshot, child, depth + 1));
+                        }
+                        continue;
+                    }
+
+                    FileEntry entry = new FileEntry(depth, attrs.size(), languageOf(name));
+                    files.add(child);
+                    entries.add(entry);
+                    if (attrs.isRegularFile() && isTextFile(name)) {
+                        textFiles.add(child);
+                        textEntries.add(entry);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                log.debug("读取目录失败: {}", dir);
+            }
+
+            for (int i = 0; i < textFiles.size(); i += LINE_COUNT_BATCH_SIZE) {
+                int end = Math.min(i + LINE_COUNT_BATCH_SIZE, textFiles.size());
+                subtasks.add(new LineCountTask(textFiles.subList(i, end), textEntries.subList(i, end)));
+            }
+            invokeAll(subtasks);
+
+            for (int i = 0; i < files.size(); i++) {
+                FileEntry entry = entries.get(i);
+                stats.add(entry);
+                if (snapshot.files != null) {
+                    snapshot.files.put(files.get(i), entry);
+                }
+            }
+            snapshot.directories.put(dir, stats);
+        }
+    }
+
+    /**
+     * 统计一批文件的行数
+     */
+    private static class LineCountTask extends RecursiveAction {
+
+        private final List<Path> files;
+        private final List<FileEntry> entries;
+
+        LineCountTask(List<Path> files, List<FileEntry> entries) {
+            this.files = files;
+            this.entries = entries;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < files.size(); i++) {
+                entries.get(i).lines = countLines(files.get(i));
+            }
+        }
+    }
+
+    /**
+     * 单个文件的统计
+     */
+    static class FileEntry {
+        // 所在目录相对项目根目录的深度
+        final int depth;
+        final long size;
+        final String language;
+        long lines = 0;
+
+        FileEntry(int depth, long size, String language) {
+            this.depth = depth;
+            this.size = size;
+            this.language = language;
+        }
+    }
+
+    /**
+     * 单个目录自身文件的统计（不含子目录）
+     */
+    static class DirectoryStats {
+        final int depth;
+        final long lastModified;
+        final Set<String> languages = new HashSet<>();
+        long files = 0;
+        long lines = 0;
+        long size = 0;
+
+        DirectoryStats(int depth, long lastModified) {
+            this.depth = depth;
+            this.lastModified = lastModified;
+        }
+
+        void add(FileEntry entry) {
+            files++;
+            size += entry.size;
+            lines += entry.lines;
+            if (entry.language != null && entry.depth <= LANGUAGE_SCAN_DEPTH) {
+                languages.add(entry.language);
+            }
+        }
+    }
+
+    /**
+     * 一次扫描的结果
+     */
+    static class Snapshot implements ProjectStats {
+        final Path root;
+        final Set<String> excludeDirs;
+        final long scannedTime = System.currentTimeMillis();
+        final Map<Path, DirectoryStats> directories = new ConcurrentHashMap<>();
+        // 每个文件的统计，只在trackFiles时保留
+        final Map<Path, FileEntry> files;
+
+        Snapshot(Path root, Set<String> excludeDirs, boolean trackFiles) {
+            this.root = root;
+            this.excludeDirs = Collections.unmodifiableSet(new HashSet<>(excludeDirs));
+            this.files = trackFiles ? new ConcurrentHashMap<>() : null;
+        }
+
+        @Override
+        public long getTotalFiles() {
+            return directories.values().stream().mapToLong(stats -> stats.files).sum();
+        }
+
+        @Override
+        public long getTotalLines() {
+            return directories.values().stream().mapToLong(stats -> stats.lines).sum();
+        }
+
+        @Override
+        public long getTotalSize() {
+            return directories.values().stream().mapToLong(stats -> stats.size).sum();
+        }
+
+        @Override
+        public Set<String> getLanguages() {
+            Set<String> languages = new HashSet<>();
+            for (DirectoryStats stats : directories.values()) {
+                languages.addAll(stats.languages);
+            }
+            return languages;
+        }
+
+        /**
+         * 只保留目录统计的副本，供扫描结果缓存使用
+         */
+        Snapshot withoutFiles() {
+            Snapshot copy = new Snapshot(root, excludeDirs, false);
+            copy.directories.putAll(directories);
+            return copy;
+        }
+    }
+}
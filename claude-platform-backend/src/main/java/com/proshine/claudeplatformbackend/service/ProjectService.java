@@ -4,13 +4,18 @@ import com.proshine.claudeplatformbackend.dto.request.ProjectAnalyzeRequest;
 import com.proshine.claudeplatformbackend.dto.response.ProjectInfoResponse;
 import com.proshine.claudeplatformbackend.exception.BusinessException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 @Slf4j
@@ -48,6 +53,101 @@ public class ProjectService {
         LANGUAGE_EXTENSIONS = Collections.unmodifiableMap(extensions);
     }
     
+    // 扫描线程数，0表示使用CPU核数
+    @Value("${app.project.scan-parallelism:0}")
+    private int scanParallelism;
+    
+    @Value("${app.project.cache-size:32}")
+    private int cacheSize;
+    
+    // 缓存有效期，兜底原地修改文件内容不改变目录修改时间的情况
+    @Value("${app.project.cache-ttl-ms:300000}")
+    private long cacheTtlMs;
+    
+    // 为分析过的项目保持实时索引，文件变更时只更新变化部分
+    @Value("${app.project.watch-enabled:true}")
+    private boolean watchEnabled;
+    
+    @Value("${app.project.watch-max-projects:8}")
+    private int watchMaxProjects;
+    
+    // 超过该时间未再分析的项目停止监听
+    @Value("${app.project.watch-idle-ms:1800000}")
+    private long watchIdleMs;
+    
+    // 建立索引失败后等待多久再重试，连续失败时加倍，最长不超过watch-retry-max-ms
+    @Value("${app.project.watch-retry-ms:60000}")
+    private long watchRetryMs;
+    
+    @Value("${app.project.watch-retry-max-ms:1800000}")
+    private long watchRetryMaxMs;
+    
+    private ForkJoinPool scanPool;
+    
+    private ProjectScanner scanner;
+    
+    // 项目路径+排除目录 -> 扫描结果，按访问顺序淘汰
+    private Map<String, ProjectScanner.Snapshot> snapshotCache;
+    
+    // 项目路径+排除目录 -> 实时索引，超出数量时关闭最久未使用的索引
+    private Map<String, ProjectIndex> projectIndexes;
+    
+    // 项目路径+排除目录 -> 建立索引时的锁，不同项目的索引可以同时建立
+    private final Map<String, Object> indexLocks = new ConcurrentHashMap<>();
+    
+    // 项目路径+排除目录 -> 上次建立索引失败的记录，重试时间之前直接使用一次性扫描
+    private final Map<String, IndexFailure> indexFailures = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        int parallelism = scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors();
+        scanPool = new ForkJoinPool(parallelism);
+        scanner = new ProjectScanner(scanPool, LANGUAGE_EXTENSIONS);
+        snapshotCache = Collections.synchronizedMap(new LinkedHashMap<String, ProjectScanner.Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProjectScanner.Snapshot> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        projectIndexes = Collections.synchronizedMap(new LinkedHashMap<String, ProjectIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProjectIndex> eldest) {
+                if (size() > watchMaxProjects) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        synchronized (projectIndexes) {
+            projectIndexes.values().forEach(ProjectIndex::close);
+            projectIndexes.clear();
+        }
+        scanPool.shutdownNow();
+    }
+    
+    /**
+     * 关闭长时间未使用的项目索引
+     */
+    @Scheduled(fixedDelayString = "${app.project.watch-sweep-interval-ms:60000}")
+    public void closeIdleIndexes() {
+        long now = System.currentTimeMillis();
+        synchronized (projectIndexes) {
+            projectIndexes.values().removeIf(index -> {
+                if (!index.isUsable() || now - index.getLastAccessTime() > watchIdleMs) {
+                    index.close();
+                    return true;
+                }
+                return false;
+            });
+        }
+        indexFailures.values().removeIf(failure -> now - failure.retryTime > watchIdleMs);
+    }
+    
     /**
      * 分析项目信息
      */
@@ -65,14 +165,19 @@ public class ProjectService {
             .projectPath(projectPath)
             .absolutePath(path.toAbsolutePath().toString());
         
+        // 优先从实时索引读取语言和文件统计，否则一次并行扫描，目录未变化时直接使用缓存
+        ProjectStats stats = getProjectStats(path, request.getExcludeDirectories());
+        
         // 分析 Git 信息
         analyzeGitInfo(path, builder);
         
         // 分析项目类型和框架
-        analyzeProjectType(path, builder);
+        analyzeProjectType(path, builder, stats);
         
         // 分析文件统计
-        analyzeFileStatistics(path, builder, request.getExcludeDirectories());
+        builder.totalFiles(stats.getTotalFiles())
+               .totalLines(stats.getTotalLines())
+               .totalSize(stats.getTotalSize());
         
         // 分析项目结构
         analyzeProjectStructure(path, builder, request.getExcludeDirectories());
@@ -83,6 +188,111 @@ public class ProjectService {
         return builder.build();
     }
     
+    /**
+     * 获取项目文件统计，启用监听时建立或复用实时索引，索引不可用时退回一次性扫描
+     */
+    private ProjectStats getProjectStats(Path path, String[] excludeDirs) {
+        Path root = path.toAbsolutePath().normalize();
+        Set<String> excludeSet = excludeDirs != null ? new TreeSet<>(Arrays.asList(excludeDirs)) : new TreeSet<>();
+        String cacheKey = root + "|" + String.join(",", excludeSet);
+        
+        if (watchEnabled) {
+            ProjectIndex index = getProjectIndex(cacheKey, root, excludeSet);
+            if (index != null) {
+                return index;
+            }
+        }
+        return getSnapshot(cacheKey, root, excludeSet);
+    }
+    
+    private ProjectIndex getProjectIndex(String cacheKey, Path root, Set<String> excludeSet) {
+        ProjectIndex index = projectIndexes.get(cacheKey);
+        if (index != null && index.isUsable()) {
+            index.touch();
+            return index;
+        }
+        if (isRetryPending(cacheKey)) {
+            return null;
+        }
+        
+        // 同一项目同一时间只建立一个索引，避免被重复扫描
+        Object lock = indexLocks.computeIfAbsent(cacheKey, k -> new Object());
+        try {
+            synchronized (lock) {
+                index = projectIndexes.get(cacheKey);
+                if (index != null && index.isUsable()) {
+                    return index;
+                }
+                if (index != null) {
+                    projectIndexes.remove(cacheKey, index);
+                    index.close();
+                }
+                if (isRetryPending(cacheKey)) {
+                    return null;
+                }
+                return buildProjectIndex(cacheKey, root, excludeSet);
+            }
+        } finally {
+            indexLocks.remove(cacheKey, lock);
+        }
+    }
+    
+    /**
+     * 扫描项目并建立索引；失败时把本次扫描结果放入扫描缓存，并推迟下次建立索引的时间
+     */
+    private ProjectIndex buildProjectIndex(String cacheKey, Path root, Set<String> excludeSet) {
+        long startTime = System.currentTimeMillis();
+        ProjectScanner.Snapshot snapshot = scanner.scan(root, excludeSet, 0, true);
+        ProjectIndex index;
+        try {
+            index = ProjectIndex.build(root, excludeSet, scanner, snapshot);
+        } catch (IOException e) {
+            log.warn("建立项目索引失败: {}, {}", root, e.getMessage());
+            indexFailed(cacheKey, snapshot);
+            return null;
+        }
+        if (!index.isUsable()) {
+            index.close();
+            indexFailed(cacheKey, snapshot);
+            return null;
+        }
+        indexFailures.remove(cacheKey);
+        log.info("建立项目索引完成: {}, 耗时 {}ms", root, System.currentTimeMillis() - startTime);
+        projectIndexes.put(cacheKey, index);
+        return index;
+    }
+    
+    private boolean isRetryPending(String cacheKey) {
+        IndexFailure failure = indexFailures.get(cacheKey);
+        return failure != null && System.currentTimeMillis() < failure.retryTime;
+    }
+    
+    private void indexFailed(String cacheKey, ProjectScanner.Snapshot snapshot) {
+        IndexFailure previous = indexFailures.get(cacheKey);
+        long delay = previous != null ? Math.min(previous.delay * 2, watchRetryMaxMs) : watchRetryMs;
+        indexFailures.put(cacheKey, new IndexFailure(System.currentTimeMillis() + delay, delay));
+        snapshotCache.put(cacheKey, snapshot.withoutFiles());
+        log.info("项目索引不可用，{}ms内使用一次性扫描: {}", delay, snapshot.root);
+    }
+    
+    /**
+     * 获取项目扫描结果，缓存未过期且所有目录修改时间未变化时复用
+     */
+    private ProjectScanner.Snapshot getSnapshot(String cacheKey, Path root, Set<String> excludeSet) {
+        ProjectScanner.Snapshot cached = snapshotCache.get(cacheKey);
+        if (cached != null && System.currentTimeMillis() - cached.scannedTime < cacheTtlMs
+                && scanner.isUnchanged(cached)) {
+            return cached;
+        }
+        
+        long startTime = System.currentTimeMillis();
+        ProjectScanner.Snapshot snapshot = scanner.scan(root, excludeSet);
+        log.info("扫描项目完成: {}, 目录数 {}, 耗时 {}ms", root, snapshot.directories.size(),
+            System.currentTimeMillis() - startTime);
+        snapshotCache.put(cacheKey, snapshot);
+        return snapshot;
+    }
+    
     /**
      * 分析 Git 信息
      */
@@ -131,7 +341,8 @@ public class ProjectService {
     /**
      * 分析项目类型和框架
      */
-    private void analyzeProjectType(Path projectPath, ProjectInfoResponse.ProjectInfoResponseBuilder builder) {
+    private void analyzeProjectType(Path projectPath, ProjectInfoResponse.ProjectInfoResponseBuilder builder,
+                                    ProjectStats stats) {
         Set<String> languages = new HashSet<>();
         String primaryFramework = null;
         String packageManager = null;
@@ -176,24 +387,8 @@ public class ProjectService {
             }
         }
         
-        // 扫描文件扩展名
-        try {
-            Files.walk(projectPath, 2)
-                .filter(Files::isRegularFile)
-                .forEach(file -> {
-                    String fileName = file.getFileName().toString();
-                    int lastDot = fileName.lastIndexOf('.');
-                    if (lastDot > 0) {
-                        String extension = fileName.substring(lastDot);
-                        String language = LANGUAGE_EXTENSIONS.get(extension);
-                        if (language != null) {
-                            languages.add(language);
-                        }
-                    }
-                });
-        } catch (IOException e) {
-            log.warn("扫描文件扩展名失败: {}", e.getMessage());
-        }
+        // 扫描到的文件扩展名
+        languages.addAll(stats.getLanguages());
         
         builder.framework(primaryFramework)
                .packageManager(packageManager)
@@ -215,52 +410,6 @@ public class ProjectService {
         return "npm";
     }
     
-    /**
-     * 分析文件统计
-     */
-    private void analyzeFileStatistics(Path projectPath, ProjectInfoResponse.ProjectInfoResponseBuilder builder, String[] excludeDirs) {
-        FileStatistics stats = new FileStatistics();
-        Set<String> excludeSet = new HashSet<>(Arrays.asList(excludeDirs));
-        
-        try {
-            Files.walkFileTree(projectPath, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                    String dirName = dir.getFileName().toString();
-                    if (excludeSet.contains(dirName)) {
-                        return FileVisitResult.SKIP_SUBTREE;
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-                
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                    stats.totalFiles++;
-                    stats.totalSize += attrs.size();
-                    
-                    // 计算代码行数（简化版本）
-                    String fileName = file.getFileName().toString();
-                    if (isTextFile(fileName)) {
-                        try {
-                            long lines = Files.lines(file).count();
-                            stats.totalLines += lines;
-                        } catch (IOException e) {
-                            // 忽略无法读取的文件
-                        }
-                    }
-                    
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-        } catch (IOException e) {
-            log.warn("统计文件信息失败: {}", e.getMessage());
-        }
-        
-        builder.totalFiles(stats.totalFiles)
-               .totalLines(stats.totalLines)
-               .totalSize(stats.totalSize);
-    }
-    
     /**
      * 分析项目结构（只返回第一层）
      */
@@ -268,8 +417,8 @@ public class ProjectService {
         List<ProjectInfoResponse.FileInfo> structure = new ArrayList<>();
         Set<String> excludeSet = new HashSet<>(Arrays.asList(excludeDirs));
         
-        try {
-            Files.list(projectPath).forEach(path -> {
+        try (Stream<Path> children = Files.list(projectPath)) {
+            children.forEach(path -> {
                 String name = path.getFileName().toString();
                 if (excludeSet.contains(name)) {
                     return;
@@ -339,30 +488,15 @@ public class ProjectService {
     }
     
     /**
-     * 判断是否为文本文件
+     * 建立索引失败的记录
      */
-    private boolean isTextFile(String fileName) {
-        String[] textExtensions = {
-            ".java", ".js", ".ts", ".vue", ".py", ".cpp", ".c", ".h",
-            ".css", ".html", ".xml", ".json", ".yml", ".yaml", ".md",
-            ".txt", ".properties", ".sql", ".sh", ".bat"
-        };
+    private static class IndexFailure {
+        final long retryTime;
+        final long delay;
         
-        String lowerName = fileName.toLowerCase();
-        for (String ext : textExtensions) {
-            if (lowerName.endsWith(ext)) {
-                return true;
-            }
+        IndexFailure(long retryTime, long delay) {
+            this.retryTime = retryTime;
+            this.delay = delay;
         }
-        return false;
-    }
-    
-    /**
-     * 文件统计内部类
-     */
-    private static class FileStatistics {
-        long totalFiles = 0;
-        long totalLines = 0;
-        long totalSize = 0;
     }
-}
\ No newline at end of file
+}
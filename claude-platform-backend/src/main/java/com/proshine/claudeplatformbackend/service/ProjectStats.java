@@ -0,0 +1,20 @@
+package com.proshine.claudeplatformbackend.service;
+
+import java.util.Set;
+
+/**
+ * 项目文件统计，由一次性扫描结果或实时索引提供
+ */
+interface ProjectStats {
+
+    long getTotalFiles();
+
+    long getTotalLines();
+
+    long getTotalSize();
+
+    /**
+     * 根目录和第一层子目录中文件对应的语言
+     */
+    Set<String> getLanguages();
+}
@@ -0,0 +1,365 @@
+package com.proshine.claudeplatformbackend.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存倒排索引
+ * 英文和数字按单词切分并转小写，中日韩文字按相邻两字切分（每段最后一个字单独作为一个词）；
+ * 查询词按前缀匹配词典，所有查询词都命中的文档按TF-IDF打分排序，分数相同时较新的文档在前。
+ * 建立期间的变更只记录文档ID，由建立索引的线程在完成前重新加载；其他节点变更的文档同样只记录ID，在下次搜索前重新加载。
+ * 词条数（词和文档的组合）超出上限时写入抛出TooLargeException，由SearchService丢弃该索引
+ */
+class SearchIndex {
+
+    // 单个英文词的最大长度，超出部分截断
+    private static final int MAX_WORD_LENGTH = 32;
+
+    private final long maxPostings;
+
+    // 词 -> 文档ID -> 词频
+    private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+
+    // 文档ID -> 词 -> 词频，用于删除和替换文档
+    private final Map<String, Map<String, Integer>> documents = new HashMap<>();
+
+    // 文档ID -> 时间，用于同分排序
+    private final Map<String, Long> documentTimes = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 词条数，在写锁内修改
+    private volatile long postingCount = 0;
+
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    // 以下状态在this锁内访问
+    private boolean ready = false;
+    private boolean failed = false;
+    private boolean tooLarge = false;
+    private final Set<String> dirtyDocuments = new HashSet<>();
+    private final Set<String> staleDocuments = new HashSet<>();
+
+    SearchIndex(long maxPostings) {
+        this.maxPostings = maxPostings;
+    }
+
+    /**
+     * 替换文档的全部内容
+     */
+    void put(String docId, long time, Map<String, Integer> terms) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(docId);
+            Map<String, Integer> copy = new HashMap<>(terms);
+            documents.put(docId, copy);
+            documentTimes.put(docId, time);
+            for (Map.Entry<String, Integer> entry : copy.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(docId, entry.getValue());
+            }
+            postingCount += copy.size();
+            checkSize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 向已有文档追加内容，文档不存在时返回false
+     */
+    boolean add(String docId, Map<String, Integer> terms) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Integer> existing = documents.get(docId);
+            if (existing == null) {
+                return false;
+            }
+            for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+                int frequency = existing.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(docId, frequency);
+                // 词频等于本次增量说明是新词
+                if (frequency == entry.getValue()) {
+                    postingCount++;
+                }
+            }
+            checkSize();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String docId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long getPostingCount() {
+        return postingCount;
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询，返回按相关度排序的全部文档ID
+     */
+    List<String> search(String query) {
+        Set<String> queryTerms = tokenizeQuery(query);
+        if (queryTerms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            int totalDocuments = documents.size();
+            Map<String, Double> scores = null;
+            for (String queryTerm : queryTerms) {
+                // 前缀匹配的所有词的词频合并为该查询词在文档中的词频
+                Map<String, Integer> frequencies = new HashMap<>();
+                NavigableMap<String, Map<String, Integer>> matched =
+                    postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false);
+                for (Map<String, Integer> docs : matched.values()) {
+                    for (Map.Entry<String, Integer> entry : docs.entrySet()) {
+                        if (scores == null || scores.containsKey(entry.getKey())) {
+                            frequencies.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                        }
+                    }
+                }
+                if (frequencies.isEmpty()) {
+                    return Collections.emptyList();
+                }
+
+                double idf = Math.log(1.0 + (double) totalDocuments / frequencies.size());
+                Map<String, Double> next = new HashMap<>();
+                for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                    double previous = scores != null ? scores.get(entry.getKey()) : 0;
+                    next.put(entry.getKey(), previous + (1 + Math.log(entry.getValue())) * idf);
+                }
+                scores = next;
+            }
+
+            List<String> result = new ArrayList<>(scores.keySet());
+            Map<String, Double> finalScores = scores;
+            result.sort((a, b) -> {
+                int compare = Double.compare(finalScores.get(b), finalScores.get(a));
+                return compare != 0 ? compare : Long.compare(documentTimes.get(b), documentTimes.get(a));
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引建立期间记录变更的文档，返回true表示已记录、调用方不需要再更新
+     */
+    synchronized boolean deferIfBuilding(String docId) {
+        if (ready) {
+            return false;
+        }
+        dirtyDocuments.add(docId);
+        return true;
+    }
+
+    /**
+     * 取出建立期间变更的文档；没有时标记为可用
+     */
+    synchronized Set<String> drainDirtyOrMarkReady() {
+        if (dirtyDocuments.isEmpty()) {
+            ready = true;
+            notifyAll();
+            return Collections.emptySet();
+        }
+        Set<String> dirty = new HashSet<>(dirtyDocuments);
+        dirtyDocuments.clear();
+        return dirty;
+    }
+
+    /**
+     * 记录其他节点变更的文档，建立期间交给建立线程重新加载
+     */
+    synchronized void markStale(String docId) {
+        if (!deferIfBuilding(docId)) {
+            staleDocuments.add(docId);
+        }
+    }
+
+    /**
+     * 取出需要在搜索前重新加载的文档
+     */
+    synchronized Set<String> drainStale() {
+        if (staleDocuments.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> stale = new HashSet<>(staleDocuments);
+        staleDocuments.clear();
+        return stale;
+    }
+
+    synchronized void markFailed() {
+        failed = true;
+        notifyAll();
+    }
+
+    synchronized void markTooLarge() {
+        tooLarge = true;
+        notifyAll();
+    }
+
+    /**
+     * 等待其他线程建立索引，索引因超出大小限制被放弃时返回false
+     */
+    synchronized boolean awaitReady() {
+        while (!ready && !failed && !tooLarge) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待搜索索引被中断");
+            }
+        }
+        if (failed) {
+            throw new RuntimeException("建立搜索索引失败");
+        }
+        return ready;
+    }
+
+    private void checkSize() {
+        if (postingCount > maxPostings) {
+            throw new TooLargeException();
+        }
+    }
+
+    private void removeDocument(String docId) {
+        Map<String, Integer> terms = documents.remove(docId);
+        documentTimes.remove(docId);
+        if (terms == null) {
+            return;
+        }
+        postingCount -= terms.size();
+        for (String term : terms.keySet()) {
+            Map<String, Integer> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(docId);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * 切分文本，词频乘以weight后累加到terms
+     */
+    static Map<String, Integer> tokenize(String text, int weight, Map<String, Integer> terms) {
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        for (String term : split(text, false)) {
+            terms.merge(term, weight, Integer::sum);
+        }
+        return terms;
+    }
+
+    /**
+     * 切分查询词；多个字的中文查询只用两字词，单字查询按前缀匹配以该字开头的两字词
+     */
+    static Set<String> tokenizeQuery(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new LinkedHashSet<>(split(query, true));
+    }
+
+    private static List<String> split(String text, boolean query) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isIdeographic(c)) {
+                flushWord(word, terms);
+                run.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                flushRun(run, terms, query);
+                if (word.length() < MAX_WORD_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            } else {
+                flushWord(word, terms);
+                flushRun(run, terms, query);
+            }
+        }
+        flushWord(word, terms);
+        flushRun(run, terms, query);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() > 0) {
+            terms.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushRun(StringBuilder run, List<String> terms, boolean query) {
+        int length = run.length();
+        if (length == 0) {
+            return;
+        }
+        for (int i = 0; i + 1 < length; i++) {
+            terms.add(run.substring(i, i + 2));
+        }
+        if (length == 1 || !query) {
+            terms.add(run.substring(length - 1));
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isIdeographic(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+            || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+            || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS
+            || block == Character.UnicodeBlock.HIRAGANA
+            || block == Character.UnicodeBlock.KATAKANA
+            || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+
+    /**
+     * 索引词条数超出上限
+     */
+    static class TooLargeException extends RuntimeException {
+        TooLargeException() {
+            super("搜索索引超出大小限制");
+        }
+    }
+}
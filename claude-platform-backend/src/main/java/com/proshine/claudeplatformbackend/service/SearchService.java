@@ -0,0 +1,531 @@
+package com.proshine.claudeplatformbackend.service;
+
+import com.proshine.claudeplatformbackend.dto.response.ConversationSummary;
+import com.proshine.claudeplatformbackend.entity.Conversation;
+import com.proshine.claudeplatformbackend.entity.ConversationMessage;
+import com.proshine.claudeplatformbackend.entity.FileRecord;
+import com.proshine.claudeplatformbackend.entity.User;
+import com.proshine.claudeplatformbackend.repository.ConversationMessageRepository;
+import com.proshine.claudeplatformbackend.repository.ConversationRepository;
+import com.proshine.claudeplatformbackend.repository.FileRepository;
+import com.proshine.claudeplatformbackend.repository.UserRepository;
+import com.proshine.claudeplatformbackend.websocket.ClusterBus;
+import com.proshine.claudeplatformbackend.websocket.ClusterMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 全文搜索服务
+ * 对话和文件按用户各建一个倒排索引，用户列表共用一个索引；索引在首次搜索时从数据库建立，
+ * 之后随创建、追加、更新和删除在事务提交后增量更新。按用户的索引数量和合计词条数有上限，超出时淘汰最久未搜索的用户；
+ * 单个索引超出词条数上限时放弃该索引，一段时间内改用数据库LIKE查询。
+ * 多实例部署时提交后的变更通过集群总线通知其他节点，其他节点在下次搜索该索引前从数据库重新加载变更的文档
+ */
+@Service
+public class SearchService {
+
+    // 标题的词频权重，标题命中的结果排在只有内容命中的前面
+    private static final int TITLE_WEIGHT = 3;
+
+    // 建立对话索引时每次读取消息的对话数
+    private static final int MESSAGE_LOAD_BATCH_SIZE = 50;
+
+    private static final String USER_INDEX_KEY = "users";
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private ConversationMessageRepository conversationMessageRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Value("${app.search.max-user-indexes:32}")
+    private int maxUserIndexes;
+
+    // 单个索引的词条数（词和文档的组合）上限
+    @Value("${app.search.max-index-postings:2000000}")
+    private long maxIndexPostings;
+
+    // 所有按用户的索引合计的词条数上限
+    @Value("${app.search.max-total-postings:10000000}")
+    private long maxTotalPostings;
+
+    // 索引超出上限后多久再尝试建立
+    @Value("${app.search.too-large-retry-ms:3600000}")
+    private long tooLargeRetryMs;
+
+    // 用户ID -> 对话索引
+    private final IndexGroup conversationIndexes = new IndexGroup("conversations", lruIndexes());
+
+    // 用户ID -> 文件索引
+    private final IndexGroup fileIndexes = new IndexGroup("files", lruIndexes());
+
+    private final IndexGroup userIndexes = new IndexGroup(USER_INDEX_KEY, new HashMap<>());
+
+    @PostConstruct
+    public void init() {
+        clusterBus.subscribe(this::onClusterMessage);
+    }
+
+    public Page<ConversationSummary> searchConversations(String userId, String keyword, Pageable pageable) {
+        SearchIndex index = obtain(conversationIndexes, userId, new IndexLoader() {
+            @Override
+            public void loadAll(SearchIndex target) {
+                indexConversations(target, conversationRepository.findByUserId(userId));
+            }
+
+            @Override
+            public void reload(SearchIndex target, String docId) {
+                reloadConversation(target, userId, docId);
+            }
+        });
+        if (index == null) {
+            return conversationRepository.findSummariesByUserIdAndKeyword(userId, keyword, pageable);
+        }
+        return toPage(index.search(keyword), pageable, conversationRepository::findSummariesByIds,
+            ConversationSummary::getId);
+    }
+
+    public Page<FileRecord> searchFiles(String userId, String keyword, Pageable pageable) {
+        SearchIndex index = obtain(fileIndexes, userId, new IndexLoader() {
+            @Override
+            public void loadAll(SearchIndex target) {
+                for (FileRecord fileRecord : fileRepository.findByUserId(userId)) {
+                    indexFile(target, fileRecord);
+                }
+            }
+
+            @Override
+            public void reload(SearchIndex target, String docId) {
+                FileRecord fileRecord = fileRepository.findByIdAndUserId(docId, userId).orElse(null);
+                if (fileRecord != null) {
+                    indexFile(target, fileRecord);
+                } else {
+                    target.remove(docId);
+                }
+            }
+        });
+        if (index == null) {
+            return fileRepository.findByUserIdAndKeyword(userId, keyword, pageable);
+        }
+        return toPage(index.search(keyword), pageable, fileRepository::findAllById, FileRecord::getId);
+    }
+
+    public Page<User> searchUsers(String keyword, Pageable pageable) {
+        SearchIndex index = obtain(userIndexes, USER_INDEX_KEY, new IndexLoader() {
+            @Override
+            public void loadAll(SearchIndex target) {
+                for (User user : userRepository.findAll()) {
+                    indexUser(target, user);
+                }
+            }
+
+            @Override
+            public void reload(SearchIndex target, String docId) {
+                reloadUser(target, docId);
+            }
+        });
+        if (index == null) {
+            return userRepository.findByKeyword(keyword, pageable);
+        }
+        return toPage(index.search(keyword), pageable, userRepository::findAllById, User::getId);
+    }
+
+    /**
+     * 对话追加消息后更新索引；索引中还没有该对话（新建的对话）时从数据库加载
+     */
+    public void messagesAppended(Conversation conversation, List<ConversationMessage> messages) {
+        String userId = conversation.getUserId();
+        String conversationId = conversation.getId();
+        Map<String, Integer> terms = new HashMap<>();
+        for (ConversationMessage message : messages) {
+            SearchIndex.tokenize(message.getContent(), 1, terms);
+        }
+        afterCommit(conversationIndexes, userId, conversationId, index -> {
+            if (!index.add(conversationId, terms)) {
+                reloadConversation(index, userId, conversationId);
+            }
+        });
+    }
+
+    /**
+     * 对话创建、标题或内容修改、删除后从数据库重新加载
+     */
+    public void conversationChanged(String userId, String conversationId) {
+        afterCommit(conversationIndexes, userId, conversationId,
+            index -> reloadConversation(index, userId, conversationId));
+    }
+
+    public void fileSaved(FileRecord fileRecord) {
+        afterCommit(fileIndexes, fileRecord.getUserId(), fileRecord.getId(), index -> indexFile(index, fileRecord));
+    }
+
+    public void filesDeleted(Collection<FileRecord> fileRecords) {
+        for (FileRecord fileRecord : fileRecords) {
+            afterCommit(fileIndexes, fileRecord.getUserId(), fileRecord.getId(),
+                index -> index.remove(fileRecord.getId()));
+        }
+    }
+
+    /**
+     * 用户创建、修改、删除后从数据库重新加载
+     */
+    public void userChanged(String userId) {
+        afterCommit(userIndexes, USER_INDEX_KEY, userId, index -> reloadUser(index, userId));
+    }
+
+    /**
+     * 获取索引，不存在时由当前线程建立，其他线程等待建立完成；索引超出大小限制时返回null，由调用方查询数据库
+     */
+    private SearchIndex obtain(IndexGroup group, String key, IndexLoader loader) {
+        Long tooLargeTime = group.tooLarge.get(key);
+        if (tooLargeTime != null) {
+            if (System.currentTimeMillis() - tooLargeTime < tooLargeRetryMs) {
+                return null;
+            }
+            group.tooLarge.remove(key, tooLargeTime);
+        }
+
+        Map<String, SearchIndex> indexes = group.indexes;
+        SearchIndex index;
+        boolean build = false;
+        synchronized (indexes) {
+            index = indexes.get(key);
+            if (index == null) {
+                index = new SearchIndex(maxIndexPostings);
+                indexes.put(key, index);
+                build = true;
+            }
+        }
+        index.touch();
+
+        if (!build) {
+            return index.awaitReady() && reloadStale(group, key, index, loader) ? index : null;
+        }
+
+        try {
+            loader.loadAll(index);
+            // 建立期间提交的变更重新加载，直到没有遗漏
+            Set<String> dirty;
+            while (!(dirty = index.drainDirtyOrMarkReady()).isEmpty()) {
+                for (String docId : dirty) {
+                    loader.reload(index, docId);
+                }
+            }
+        } catch (SearchIndex.TooLargeException e) {
+            discardTooLarge(group, key, index);
+            index.markTooLarge();
+            return null;
+        } catch (RuntimeException e) {
+            synchronized (indexes) {
+                indexes.remove(key, index);
+            }
+            index.markFailed();
+            throw e;
+        }
+        trimToBudget();
+        return index;
+    }
+
+    /**
+     * 重新加载其他节点变更过的文档，索引因此超出大小限制时返回false
+     */
+    private boolean reloadStale(IndexGroup group, String key, SearchIndex index, IndexLoader loader) {
+        Set<String> stale = index.drainStale();
+        if (stale.isEmpty()) {
+            return true;
+        }
+        try {
+            for (String docId : stale) {
+                loader.reload(index, docId);
+            }
+        } catch (SearchIndex.TooLargeException e) {
+            discardTooLarge(group, key, index);
+            return false;
+        } catch (RuntimeException e) {
+            // 未能重新加载的文档已取出，丢弃该索引，下次搜索重新建立
+            synchronized (group.indexes) {
+                group.indexes.remove(key, index);
+            }
+            throw e;
+        }
+        trimToBudget();
+        return true;
+    }
+
+    /**
+     * 事务提交后更新已建立的索引并通知其他节点；索引未建立时忽略，正在建立时交给建立线程重新加载
+     */
+    private void afterCommit(IndexGroup group, String key, String docId, Consumer<SearchIndex> update) {
+        Map<String, SearchIndex> indexes = group.indexes;
+        Runnable task = () -> {
+            publishChange(group, key, docId);
+            SearchIndex index;
+            synchronized (indexes) {
+                index = indexes.get(key);
+            }
+            if (index == null || index.deferIfBuilding(docId)) {
+                return;
+            }
+            try {
+                update.accept(index);
+                trimToBudget();
+            } catch (SearchIndex.TooLargeException e) {
+                discardTooLarge(group, key, index);
+            } catch (Exception e) {
+                // 更新失败时丢弃该索引，下次搜索重新建立
+                System.err.println("更新搜索索引失败: " + docId + ", " + e.getMessage());
+                synchronized (indexes) {
+                    indexes.remove(key, index);
+                }
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    private void publishChange(IndexGroup group, String key, String docId) {
+        ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_SEARCH_CHANGED);
+        message.setSearchIndex(group.name);
+        message.setUserId(key);
+        message.setDocumentId(docId);
+        clusterBus.broadcast(message);
+    }
+
+    /**
+     * 其他节点的变更只记录文档ID，在总线的接收线程上不访问数据库
+     */
+    private void onClusterMessage(ClusterMessage message) {
+        if (!ClusterMessage.TYPE_SEARCH_CHANGED.equals(message.getType())) {
+            return;
+        }
+        IndexGroup group;
+        if (conversationIndexes.name.equals(message.getSearchIndex())) {
+            group = conversationIndexes;
+        } else if (fileIndexes.name.equals(message.getSearchIndex())) {
+            group = fileIndexes;
+        } else if (userIndexes.name.equals(message.getSearchIndex())) {
+            group = userIndexes;
+        } else {
+            return;
+        }
+        SearchIndex index;
+        synchronized (group.indexes) {
+            index = group.indexes.get(message.getUserId());
+        }
+        if (index != null) {
+            index.markStale(message.getDocumentId());
+        }
+    }
+
+    private void discardTooLarge(IndexGroup group, String key, SearchIndex index) {
+        synchronized (group.indexes) {
+            group.indexes.remove(key, index);
+        }
+        group.tooLarge.put(key, System.currentTimeMillis());
+        System.out.println("搜索索引超出大小限制，改用数据库查询: " + key);
+    }
+
+    /**
+     * 按用户的索引合计词条数超出上限时，淘汰最久未搜索的索引
+     */
+    private void trimToBudget() {
+        List<IndexRef> refs = new ArrayList<>();
+        collect(conversationIndexes, refs);
+        collect(fileIndexes, refs);
+        long total = 0;
+        for (IndexRef ref : refs) {
+            total += ref.index.getPostingCount();
+        }
+        if (total <= maxTotalPostings) {
+            return;
+        }
+
+        refs.sort(Comparator.comparingLong(ref -> ref.index.getLastAccessTime()));
+        for (IndexRef ref : refs) {
+            if (total <= maxTotalPostings) {
+                break;
+            }
+            synchronized (ref.group.indexes) {
+                if (ref.group.indexes.remove(ref.key, ref.index)) {
+                    total -= ref.index.getPostingCount();
+                }
+            }
+        }
+    }
+
+    private static void collect(IndexGroup group, List<IndexRef> refs) {
+        synchronized (group.indexes) {
+            for (Map.Entry<String, SearchIndex> entry : group.indexes.entrySet()) {
+                refs.add(new IndexRef(group, entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    private Map<String, SearchIndex> lruIndexes() {
+        return new LinkedHashMap<String, SearchIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SearchIndex> eldest) {
+                return size() > maxUserIndexes;
+            }
+        };
+    }
+
+    private void reloadConversation(SearchIndex index, String userId, String conversationId) {
+        Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId).orElse(null);
+        if (conversation == null) {
+            index.remove(conversationId);
+            return;
+        }
+        indexConversations(index, Collections.singletonList(conversation));
+    }
+
+    private void indexConversations(SearchIndex index, List<Conversation> conversations) {
+        for (int i = 0; i < conversations.size(); i += MESSAGE_LOAD_BATCH_SIZE) {
+            List<Conversation> batch = conversations.subList(i, Math.min(i + MESSAGE_LOAD_BATCH_SIZE, conversations.size()));
+
+            Map<String, Map<String, Integer>> terms = new HashMap<>();
+            List<String> ids = new ArrayList<>();
+            for (Conversation conversation : batch) {
+                Map<String, Integer> conversationTerms = new HashMap<>();
+                SearchIndex.tokenize(conversation.getTitle(), TITLE_WEIGHT, conversationTerms);
+                // 未迁移的旧版对话内容仍在content中
+                SearchIndex.tokenize(conversation.getContent(), 1, conversationTerms);
+                terms.put(conversation.getId(), conversationTerms);
+                ids.add(conversation.getId());
+            }
+
+            for (Object[] row : conversationMessageRepository.findContentsByConversationIds(ids)) {
+                SearchIndex.tokenize((String) row[1], 1, terms.get((String) row[0]));
+            }
+            for (Conversation conversation : batch) {
+                index.put(conversation.getId(), conversation.getCreatedTime(), terms.get(conversation.getId()));
+            }
+        }
+    }
+
+    private void indexFile(SearchIndex index, FileRecord fileRecord) {
+        Map<String, Integer> terms = new HashMap<>();
+        SearchIndex.tokenize(fileRecord.getFileName(), 1, terms);
+        SearchIndex.tokenize(fileRecord.getFileType(), 1, terms);
+        index.put(fileRecord.getId(), fileRecord.getCreatedTime(), terms);
+    }
+
+    private void reloadUser(SearchIndex index, String userId) {
+        User user = userRepository.findById(userId).orElse(null);
+        if (user != null) {
+            indexUser(index, user);
+        } else {
+            index.remove(userId);
+        }
+    }
+
+    private void indexUser(SearchIndex index, User user) {
+        Map<String, Integer> terms = new HashMap<>();
+        SearchIndex.tokenize(user.getUsername(), 1, terms);
+        SearchIndex.tokenize(user.getRealName(), 1, terms);
+        SearchIndex.tokenize(user.getEmail(), 1, terms);
+        index.put(user.getId(), user.getCreatedTime() != null ? user.getCreatedTime() : 0L, terms);
+    }
+
+    /**
+     * 按相关度顺序取出当前页的实体，已被删除的跳过
+     */
+    private <T> Page<T> toPage(List<String> rankedIds, Pageable pageable, Function<List<String>, List<T>> loader,
+                               Function<T, String> idGetter) {
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        int to = Math.min(from + pageable.getPageSize(), rankedIds.size());
+        List<String> pageIds = rankedIds.subList(from, to);
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, rankedIds.size());
+        }
+
+        Map<String, T> entities = new HashMap<>();
+        for (T entity : loader.apply(pageIds)) {
+            entities.put(idGetter.apply(entity), entity);
+        }
+        List<T> content = new ArrayList<>(pageIds.size());
+        for (String id : pageIds) {
+            T entity = entities.get(id);
+            if (entity != null) {
+                content.add(entity);
+            }
+        }
+        return new PageImpl<>(content, pageable, rankedIds.size());
+    }
+
+    /**
+     * 从数据库加载索引内容
+     */
+    private interface IndexLoader {
+        void loadAll(SearchIndex index);
+
+        void reload(SearchIndex index, String docId);
+    }
+
+    /**
+     * 同一类索引及其中超出大小限制的键
+     */
+    private static class IndexGroup {
+        // 集群消息中的索引类型
+        final String name;
+        // 在indexes锁内访问
+        final Map<String, SearchIndex> indexes;
+        // 键 -> 超出大小限制的时间
+        final Map<String, Long> tooLarge = new ConcurrentHashMap<>();
+
+        IndexGroup(String name, Map<String, SearchIndex> indexes) {
+            this.name = name;
+            this.indexes = indexes;
+        }
+    }
+
+    private static class IndexRef {
+        final IndexGroup group;
+        final String key;
+        final SearchIndex index;
+
+        IndexRef(IndexGroup group, String key, SearchIndex index) {
+            this.group = group;
+            this.key = key;
+            this.index = index;
+        }
+    }
+}
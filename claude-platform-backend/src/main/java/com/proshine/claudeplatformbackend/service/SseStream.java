@@ -0,0 +1,143 @@
+package com.proshine.claudeplatformbackend.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 单个SSE连接的发送队列
+ * 事件先进入有界队列，由共享线程池按连接串行写出，WebSocket接收线程不会被慢的HTTP客户端阻塞；
+ * 队列满或写出失败时丢弃剩余事件并回调onFailure
+ */
+class SseStream {
+
+    // 每次调度最多连续写出的事件数，避免单个连接长期占用发送线程
+    private static final int DRAIN_BATCH_SIZE = 64;
+
+    // 队列中表示结束连接的标记
+    private static final Object COMPLETE = new Object();
+
+    private final SseEmitter emitter;
+    private final Executor executor;
+    private final int capacity;
+    private final Runnable onFailure;
+
+    // 以下字段在this锁内访问
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private boolean draining = false;
+    private boolean closed = false;
+
+    SseStream(SseEmitter emitter, Executor executor, int capacity, Runnable onFailure) {
+        this.emitter = emitter;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * 加入发送队列，连接已失败或队列已满时返回false
+     */
+    boolean send(String eventName, Object data) {
+        return enqueue(SseEmitter.event().name(eventName).data(data), false);
+    }
+
+    /**
+     * 发送完已排队的事件后结束连接
+     */
+    void complete() {
+        enqueue(COMPLETE, true);
+    }
+
+    private boolean enqueue(Object item, boolean force) {
+        boolean overflow = false;
+        boolean schedule = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (!force && queue.size() >= capacity) {
+                overflow = true;
+                close();
+            } else {
+                queue.addLast(item);
+                // 结束标记之后不再接收事件
+                closed = item == COMPLETE;
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (overflow) {
+            System.err.println("SSE客户端接收过慢，结束连接");
+            fail();
+            return false;
+        }
+        if (schedule) {
+            scheduleDrain();
+        }
+        return true;
+    }
+
+    private void scheduleDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            System.err.println("SSE发送任务被拒绝");
+            synchronized (this) {
+                close();
+            }
+            fail();
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+            Object next;
+            synchronized (this) {
+                next = queue.pollFirst();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                if (next == COMPLETE) {
+                    emitter.complete();
+                } else {
+                    emitter.send((SseEmitter.SseEventBuilder) next);
+                }
+            } catch (Exception e) {
+                System.err.println("推送SSE事件失败: " + e.getMessage());
+                synchronized (this) {
+                    close();
+                }
+                fail();
+                return;
+            }
+        }
+
+        // 本批次写完仍有事件时重新排队，让其他连接也能得到发送线程
+        scheduleDrain();
+    }
+
+    /**
+     * 丢弃未发送的事件，调用方持有this锁
+     */
+    private void close() {
+        closed = true;
+        draining = false;
+        queue.clear();
+    }
+
+    private void fail() {
+        try {
+            onFailure.run();
+        } finally {
+            emitter.complete();
+        }
+    }
+}
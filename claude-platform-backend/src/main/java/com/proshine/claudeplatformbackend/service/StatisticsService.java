@@ -1,15 +1,14 @@
 package com.proshine.claudeplatformbackend.service;
 
 import com.proshine.claudeplatformbackend.dto.response.StatisticsData;
-import com.proshine.claudeplatformbackend.entity.TokenUsage;
+import com.proshine.claudeplatformbackend.entity.DailyUsageStat;
 import com.proshine.claudeplatformbackend.security.SecurityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +24,9 @@ public class StatisticsService {
     @Autowired
     private FileService fileService;
     
+    @Autowired
+    private UsageRollupService usageRollupService;
+    
     public StatisticsData getUserStatistics() {
         String userId = SecurityUtils.getCurrentUserId();
         if (userId == null) {
@@ -37,70 +39,50 @@ public class StatisticsService {
     public StatisticsData getUserStatistics(String userId) {
         StatisticsData statistics = new StatisticsData();
         
+        // 使用类型统计，各类型之和即为累计用量
+        Map<String, Long> usageTypeMap = usageRollupService.getTokensByUsageType(userId);
+        long totalTokensUsed = 0;
+        for (Long tokens : usageTypeMap.values()) {
+            totalTokensUsed += tokens;
+        }
+        
         // 基本统计
         statistics.setTotalConversations(conversationService.getUserConversationCount(userId));
-        statistics.setTotalTokensUsed(tokenService.getTotalUsedTokens(userId).longValue());
+        statistics.setTotalTokensUsed(totalTokensUsed);
         statistics.setRemainingTokens(tokenService.getRemainingTokens(userId));
         statistics.setTotalFiles(fileService.getUserFileCount(userId));
         
-        // 本月统计
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime monthStart = now.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime monthEnd = monthStart.plusMonths(1).minusNanos(1);
+        // 本月、今日和最近30天的数据从同一批每日汇总行计算
+        LocalDate today = LocalDate.now();
+        LocalDate monthStart = today.withDayOfMonth(1);
+        LocalDate thirtyDaysAgo = today.minusDays(30);
+        LocalDate rangeStart = monthStart.isBefore(thirtyDaysAgo) ? monthStart : thirtyDaysAgo;
+        
+        Map<String, StatisticsData.TrendData> dailyData = aggregateByDate(
+            usageRollupService.getDailyStats(userId, rangeStart, today));
         
-        long monthStartTime = monthStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long monthEndTime = monthEnd.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long monthlyConversations = 0;
+        List<StatisticsData.TrendData> trendData = new ArrayList<>();
+        for (StatisticsData.TrendData day : dailyData.values()) {
+            if (day.getDate().compareTo(monthStart.toString()) >= 0) {
+                monthlyConversations += day.getConversations();
+            }
+            if (day.getDate().compareTo(thirtyDaysAgo.toString()) >= 0 && day.getTokensUsed() > 0) {
+                trendData.add(day);
+            }
+        }
         
-        statistics.setMonthlyConversations((long) conversationService.getUserConversationsByTimeRange(
-            userId, monthStartTime, monthEndTime).size());
+        // 本月统计
+        statistics.setMonthlyConversations(monthlyConversations);
         statistics.setMonthlyTokensUsed(tokenService.getMonthlyUsedTokens(userId).longValue());
         
         // 今日统计
-        LocalDateTime todayStart = now.withHour(0).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime todayEnd = todayStart.plusDays(1).minusNanos(1);
-        
-        long todayStartTime = todayStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long todayEndTime = todayEnd.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        
-        List<TokenUsage> todayUsage = tokenService.getUserTokenUsageByTimeRange(userId, todayStartTime, todayEndTime);
-        statistics.setTodayConversations((long) conversationService.getUserConversationsByTimeRange(
-            userId, todayStartTime, todayEndTime).size());
-        statistics.setTodayTokensUsed((long) todayUsage.stream()
-            .mapToInt(TokenUsage::getTokensCount).sum());
+        StatisticsData.TrendData todayData = dailyData.get(today.toString());
+        statistics.setTodayConversations(todayData != null ? todayData.getConversations() : 0L);
+        statistics.setTodayTokensUsed(todayData != null ? todayData.getTokensUsed() : 0L);
         
         // 趋势数据（最近30天）
-        LocalDateTime thirtyDaysAgo = now.minusDays(30);
-        long thirtyDaysAgoTime = thirtyDaysAgo.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        
-        List<Object[]> dailyUsage = tokenService.getDailyUsageByTimeRange(userId, thirtyDaysAgoTime, System.currentTimeMillis());
-        List<StatisticsData.TrendData> trendData = new ArrayList<>();
-        
-        for (Object[] row : dailyUsage) {
-            StatisticsData.TrendData trend = new StatisticsData.TrendData();
-            trend.setDate(row[0].toString());
-            trend.setTokensUsed(((Number) row[1]).longValue());
-            
-            // 获取当天的对话数量
-            LocalDateTime date = LocalDateTime.parse(row[0].toString() + "T00:00:00");
-            LocalDateTime dayStart = date.withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime dayEnd = dayStart.plusDays(1).minusNanos(1);
-            
-            long dayStartTime = dayStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long dayEndTime = dayEnd.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            
-            trend.setConversations((long) conversationService.getUserConversationsByTimeRange(
-                userId, dayStartTime, dayEndTime).size());
-            
-            trendData.add(trend);
-        }
         statistics.setTrendData(trendData);
-        
-        // 使用类型统计
-        List<Object[]> usageTypeStats = tokenService.getUsageTypeStats(userId);
-        Map<String, Long> usageTypeMap = new HashMap<>();
-        for (Object[] row : usageTypeStats) {
-            usageTypeMap.put(row[0].toString(), ((Number) row[1]).longValue());
-        }
         statistics.setUsageTypeStats(usageTypeMap);
         
         return statistics;
@@ -112,23 +94,36 @@ public class StatisticsService {
             throw new RuntimeException("用户未登录");
         }
         
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime todayStart = now.withHour(0).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime todayEnd = todayStart.plusDays(1).minusNanos(1);
-        
-        long todayStartTime = todayStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long todayEndTime = todayEnd.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        
-        List<TokenUsage> todayUsage = tokenService.getUserTokenUsageByTimeRange(userId, todayStartTime, todayEndTime);
-        long todayTokens = todayUsage.stream().mapToInt(TokenUsage::getTokensCount).sum();
-        long todayConversations = conversationService.getUserConversationsByTimeRange(
-            userId, todayStartTime, todayEndTime).size();
-        
-        StatisticsData.TrendData todayData = new StatisticsData.TrendData();
-        todayData.setDate(now.toLocalDate().toString());
-        todayData.setTokensUsed(todayTokens);
-        todayData.setConversations(todayConversations);
+        LocalDate today = LocalDate.now();
+        StatisticsData.TrendData todayData = aggregateByDate(
+            usageRollupService.getDailyStats(userId, today, today)).get(today.toString());
+        if (todayData == null) {
+            todayData = new StatisticsData.TrendData();
+            todayData.setDate(today.toString());
+            todayData.setTokensUsed(0L);
+            todayData.setConversations(0L);
+        }
         
         return todayData;
     }
-}
\ No newline at end of file
+    
+    /**
+     * 把同一天不同使用类型的汇总行合并，按日期倒序
+     */
+    private Map<String, StatisticsData.TrendData> aggregateByDate(List<DailyUsageStat> stats) {
+        Map<String, StatisticsData.TrendData> result = new LinkedHashMap<>();
+        for (DailyUsageStat stat : stats) {
+            StatisticsData.TrendData day = result.get(stat.getStatDate());
+            if (day == null) {
+                day = new StatisticsData.TrendData();
+                day.setDate(stat.getStatDate());
+                day.setTokensUsed(0L);
+                day.setConversations(0L);
+                result.put(stat.getStatDate(), day);
+            }
+            day.setTokensUsed(day.getTokensUsed() + stat.getTokensUsed());
+            day.setConversations(day.getConversations() + stat.getConversations());
+        }
+        return result;
+    }
+}
@@ -3,20 +3,52 @@ package com.proshine.claudeplatformbackend.service;
 import com.proshine.claudeplatformbackend.entity.SystemConfig;
 import com.proshine.claudeplatformbackend.repository.SystemConfigRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 系统配置服务
+ * 所有配置行保存在内存快照中，读取配置不访问数据库；修改配置的事务提交后整体替换快照，
+ * 并通过ConfigChangeChannel通知其他实例，另有定时刷新兜底
+ */
 @Service
 public class SystemService {
     
+    // 标记当前事务已登记提交后刷新，同一事务中多次修改只刷新一次
+    private static final String REFRESH_RESOURCE_KEY = SystemService.class.getName() + ".refresh";
+    
     @Autowired
     private SystemConfigRepository systemConfigRepository;
     
+    @Autowired
+    private ConfigChangeChannel configChangeChannel;
+    
+    private volatile ConfigSnapshot snapshot;
+    
+    // 刷新序号，较早开始的加载不会覆盖较晚开始的加载结果
+    private final AtomicLong refreshSequence = new AtomicLong();
+    
+    private long appliedSequence = 0;
+    
+    private final Object loadLock = new Object();
+    
+    @PostConstruct
+    public void init() {
+        configChangeChannel.subscribe(key -> refreshSnapshot());
+    }
+    
     @Transactional
     public SystemConfig saveConfig(String key, String value, String description) {
         Optional<SystemConfig> existingConfig = systemConfigRepository.findByConfigKey(key);
@@ -35,43 +67,32 @@ public class SystemService {
             config.setConfigDesc(description);
         }
         
-        return systemConfigRepository.save(config);
+        config = systemConfigRepository.save(config);
+        refreshAfterCommit(key);
+        return config;
     }
     
     public String getConfigValue(String key) {
-        return systemConfigRepository.findConfigValueByKey(key).orElse(null);
+        return getSnapshot().values.get(key);
     }
     
     public String getConfigValue(String key, String defaultValue) {
-        return systemConfigRepository.findConfigValueByKey(key).orElse(defaultValue);
+        String value = getSnapshot().values.get(key);
+        return value != null ? value : defaultValue;
     }
     
     public Integer getConfigValueAsInt(String key, Integer defaultValue) {
-        String value = getConfigValue(key);
-        if (value == null) {
-            return defaultValue;
-        }
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        Integer value = getSnapshot().intValues.get(key);
+        return value != null ? value : defaultValue;
     }
     
     public Long getConfigValueAsLong(String key, Long defaultValue) {
-        String value = getConfigValue(key);
-        if (value == null) {
-            return defaultValue;
-        }
-        try {
-            return Long.parseLong(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        Long value = getSnapshot().longValues.get(key);
+        return value != null ? value : defaultValue;
     }
     
     public Boolean getConfigValueAsBoolean(String key, Boolean defaultValue) {
-        String value = getConfigValue(key);
+        String value = getSnapshot().values.get(key);
         if (value == null) {
             return defaultValue;
         }
@@ -87,11 +108,14 @@ public class SystemService {
     }
     
     public Map<String, String> getAllConfigsAsMap() {
-        return systemConfigRepository.findAll().stream()
-            .collect(Collectors.toMap(
-                SystemConfig::getConfigKey,
-                config -> config.getConfigValue() != null ? config.getConfigValue() : ""
-            ));
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : getSnapshot().values.entrySet()) {
+            result.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : "");
+        }
+        for (String key : getSnapshot().nullKeys) {
+            result.put(key, "");
+        }
+        return result;
     }
     
     @Transactional
@@ -104,10 +128,79 @@ public class SystemService {
     @Transactional
     public void deleteConfig(String key) {
         systemConfigRepository.deleteByConfigKey(key);
+        refreshAfterCommit(key);
     }
     
     public boolean configExists(String key) {
-        return systemConfigRepository.existsByConfigKey(key);
+        ConfigSnapshot current = getSnapshot();
+        return current.values.containsKey(key) || current.nullKeys.contains(key);
+    }
+    
+    /**
+     * 从数据库重新加载配置快照
+     */
+    public void refreshSnapshot() {
+        long sequence = refreshSequence.incrementAndGet();
+        ConfigSnapshot loaded = new ConfigSnapshot(systemConfigRepository.findAll());
+        synchronized (loadLock) {
+            if (sequence > appliedSequence) {
+                snapshot = loaded;
+                appliedSequence = sequence;
+            }
+        }
+    }
+    
+    /**
+     * 定时刷新，兜底未通过通知通道同步的变更
+     */
+    @Scheduled(fixedDelayString = "${app.system.config-refresh-ms:60000}")
+    public void scheduledRefresh() {
+        try {
+            refreshSnapshot();
+        } catch (Exception e) {
+            System.err.println("刷新系统配置失败: " + e.getMessage());
+        }
+    }
+    
+    private ConfigSnapshot getSnapshot() {
+        ConfigSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (loadLock) {
+                current = snapshot;
+                if (current == null) {
+                    refreshSnapshot();
+                    current = snapshot;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * 事务提交后刷新快照并通知其他实例，不在事务中时立即刷新
+     */
+    private void refreshAfterCommit(String key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refreshSnapshot();
+            configChangeChannel.publish(key);
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(REFRESH_RESOURCE_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(REFRESH_RESOURCE_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                refreshSnapshot();
+                configChangeChannel.publish(null);
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(REFRESH_RESOURCE_KEY);
+            }
+        });
     }
     
     // 系统默认配置键常量
@@ -142,4 +235,45 @@ public class SystemService {
     public Boolean isAutoCleanupEnabled() {
         return getConfigValueAsBoolean(AUTO_CLEANUP_ENABLED, true);
     }
-}
\ No newline at end of file
+    
+    /**
+     * 配置快照，创建时一次性解析数值类型，创建后不再修改
+     */
+    private static class ConfigSnapshot {
+        final Map<String, String> values;
+        // 值为null的配置键
+        final List<String> nullKeys;
+        final Map<String, Integer> intValues;
+        final Map<String, Long> longValues;
+        
+        ConfigSnapshot(List<SystemConfig> configs) {
+            Map<String, String> values = new HashMap<>();
+            List<String> nullKeys = new ArrayList<>();
+            Map<String, Integer> intValues = new HashMap<>();
+            Map<String, Long> longValues = new HashMap<>();
+            for (SystemConfig config : configs) {
+                String key = config.getConfigKey();
+                String value = config.getConfigValue();
+                if (value == null) {
+                    nullKeys.add(key);
+                    continue;
+                }
+                values.put(key, value);
+                try {
+                    intValues.put(key, Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    // 非整数配置
+                }
+                try {
+                    longValues.put(key, Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    // 非整数配置
+                }
+            }
+            this.values = Collections.unmodifiableMap(values);
+            this.nullKeys = Collections.unmodifiableList(nullKeys);
+            this.intValues = Collections.unmodifiableMap(intValues);
+            this.longValues = Collections.unmodifiableMap(longValues);
+        }
+    }
+}
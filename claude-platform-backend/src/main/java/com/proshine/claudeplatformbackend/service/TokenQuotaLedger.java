@@ -0,0 +1,536 @@
+package com.proshine.claudeplatformbackend.service;
+
+import com.proshine.claudeplatformbackend.entity.TokenUsage;
+import com.proshine.claudeplatformbackend.entity.User;
+import com.proshine.claudeplatformbackend.repository.TokenUsageRepository;
+import com.proshine.claudeplatformbackend.repository.UserRepository;
+import com.proshine.claudeplatformbackend.websocket.ClusterBus;
+import com.proshine.claudeplatformbackend.websocket.ClusterMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Token额度账本
+ * 每个用户的本月用量保存在内存计数器中，首次访问时从token_usage汇总一次，
+ * 之后的额度检查、预占、提交和释放都不访问数据库；TokenUsage记录由后台定时批量写入，并同步累加每日汇总。
+ * 写入失败的一批记录按退避间隔重试，多次失败后逐条写入，被数据库拒绝的记录丢弃；待写入记录超出上限时丢弃新记录。
+ * 每次预占记录它所在的月度计数，跨月后仍在进行的请求按原计数释放，提交的用量计入当前月份。
+ * 多实例部署时提交的用量和额度变更通过集群总线通知其他节点；预占只在本节点可见，
+ * 多个节点同时预占同一用户时合计可能短暂超出额度，其他节点尚未写入数据库的记录在重新汇总时也会漏算
+ */
+@Component
+public class TokenQuotaLedger {
+
+    @Autowired
+    private TokenUsageRepository tokenUsageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UsageRollupService usageRollupService;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.token.flush-batch-size:200}")
+    private int flushBatchSize;
+
+    @Value("${app.token.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    // 一批记录连续写入失败多少次后改为逐条写入
+    @Value("${app.token.flush-max-attempts:3}")
+    private int flushMaxAttempts;
+
+    // 写入失败后重试间隔的上限，从flush-interval-ms开始加倍
+    @Value("${app.token.flush-retry-max-ms:60000}")
+    private long flushRetryMaxMs;
+
+    // 待写入记录数上限，数据库长时间不可用时超出部分丢弃
+    @Value("${app.token.max-pending-usages:100000}")
+    private int maxPendingUsages;
+
+    // 用户ID -> 本月额度计数
+    private final Map<String, QuotaCell> cells = new ConcurrentHashMap<>();
+
+    // 待写入数据库的使用记录
+    private final Queue<TokenUsage> pendingUsages = new ConcurrentLinkedQueue<>();
+
+    // ConcurrentLinkedQueue的size()需要遍历，单独计数
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // 队列已满的日志只在每次写入恢复前输出一次
+    private final AtomicBoolean overflowLogged = new AtomicBoolean();
+
+    // 写入失败、等待重试的一批记录及重试状态，在flushLock内访问
+    private List<TokenUsage> failedBatch;
+    private volatile int failedBatchSize = 0;
+    private int failedAttempts = 0;
+    private long retryDelayMs = 0;
+    private long nextRetryTime = 0;
+
+    private Counter overflowCounter;
+    private Counter rejectedCounter;
+    
+    // 汇总和批量写入互斥，避免汇总时漏算或重复计算正在写入的记录
+    private final Object flushLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        clusterBus.subscribe(this::onClusterMessage);
+        Gauge.builder("app.token.pending-usages", this, TokenQuotaLedger::getPendingCount)
+            .description("尚未写入数据库的Token使用记录数")
+            .register(meterRegistry);
+        overflowCounter = droppedCounter("overflow");
+        rejectedCounter = droppedCounter("rejected");
+    }
+
+    /**
+     * 预占额度，本月已用加上未完成的预占不能超过额度；额度不足时返回null
+     */
+    public Reservation reserve(String userId, long tokens) {
+        QuotaCell cell = getCell(userId);
+        while (true) {
+            long allocated = cell.allocated.get();
+            if (allocated + tokens > cell.tokenLimit) {
+                return null;
+            }
+            if (cell.allocated.compareAndSet(allocated, allocated + tokens)) {
+                return new Reservation(userId, tokens, cell);
+            }
+        }
+    }
+
+    /**
+     * 按实际用量提交预占的额度，并把使用记录加入待写入队列
+     * 预占之后跨月时，预占从原计数中释放，实际用量计入当前月份的计数
+     */
+    public TokenUsage commit(Reservation reservation, String conversationId, int actualTokens, String usageType) {
+        String userId = reservation.userId;
+        if (!reservation.finish()) {
+            throw new IllegalStateException("预占额度已提交或释放");
+        }
+        QuotaCell cell = getCell(userId);
+        if (cell == reservation.cell) {
+            cell.allocated.addAndGet(actualTokens - reservation.tokens);
+        } else {
+            reservation.cell.allocated.addAndGet(-reservation.tokens);
+            cell.allocated.addAndGet(actualTokens);
+        }
+        cell.committed.add(actualTokens);
+
+        ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_QUOTA_USED);
+        message.setUserId(userId);
+        message.setTokens((long) actualTokens);
+        clusterBus.broadcast(message);
+
+        TokenUsage tokenUsage = new TokenUsage();
+        tokenUsage.setUserId(userId);
+        tokenUsage.setConversationId(conversationId);
+        tokenUsage.setTokensCount(actualTokens);
+        tokenUsage.setUsageType(usageType);
+        tokenUsage.setUsageTime(System.currentTimeMillis());
+        if (pendingCount.incrementAndGet() > maxPendingUsages) {
+            pendingCount.decrementAndGet();
+            overflowCounter.increment();
+            if (overflowLogged.compareAndSet(false, true)) {
+                System.err.println("待写入的Token使用记录超出上限 " + maxPendingUsages + "，丢弃新记录直到写入恢复");
+            }
+        } else {
+            pendingUsages.add(tokenUsage);
+        }
+        return tokenUsage;
+    }
+
+    /**
+     * 释放未使用的预占额度，重复调用时忽略
+     */
+    public void release(Reservation reservation) {
+        if (reservation.finish()) {
+            reservation.cell.allocated.addAndGet(-reservation.tokens);
+        }
+    }
+
+    public long getMonthlyUsed(String userId) {
+        return getCell(userId).committed.sum();
+    }
+
+    /**
+     * 批量获取本月已用额度，未加载的用户用一次分组查询汇总
+     */
+    public Map<String, Long> getMonthlyUsed(Collection<User> users) {
+        YearMonth month = currentMonth();
+        Map<String, Long> result = new HashMap<>();
+        List<User> missing = new ArrayList<>();
+        for (User user : users) {
+            QuotaCell cell = cells.get(user.getId());
+            if (cell != null && cell.month.equals(month)) {
+                result.put(user.getId(), cell.committed.sum());
+            } else {
+                missing.add(user);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<String, QuotaCell> seeded = seedCells(missing, month);
+        for (User user : missing) {
+            QuotaCell cell = installCell(user.getId(), seeded.get(user.getId()));
+            result.put(user.getId(), cell.committed.sum());
+        }
+        return result;
+    }
+
+    public long getRemaining(String userId) {
+        QuotaCell cell = getCell(userId);
+        return cell.tokenLimit - cell.allocated.get();
+    }
+
+    /**
+     * 用户额度变更后同步到账本
+     */
+    public void updateLimit(String userId, Integer tokenLimit) {
+        applyLimit(userId, tokenLimit);
+        publishLimit(userId, tokenLimit != null ? tokenLimit.longValue() : null);
+    }
+
+    public void evict(String userId) {
+        cells.remove(userId);
+        publishLimit(userId, null);
+    }
+
+    /**
+     * 批量写入待保存的使用记录；有写入失败的记录时，到达重试时间前不访问数据库
+     */
+    @Scheduled(fixedDelayString = "${app.token.flush-interval-ms:1000}")
+    public void flush() {
+        synchronized (flushLock) {
+            if (failedBatch != null && (System.currentTimeMillis() < nextRetryTime || !retryFailedBatch())) {
+                return;
+            }
+            List<TokenUsage> batch = new ArrayList<>(flushBatchSize);
+            TokenUsage usage;
+            while ((usage = pendingUsages.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.add(usage);
+                if (batch.size() >= flushBatchSize) {
+                    if (!saveBatch(batch)) {
+                        return;
+                    }
+                    batch = new ArrayList<>(flushBatchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                saveBatch(batch);
+            }
+        }
+    }
+
+    /**
+     * 写入一批记录，失败时留作重试并返回false
+     */
+    private boolean saveBatch(List<TokenUsage> batch) {
+        try {
+            usageRollupService.saveUsageBatch(batch);
+            overflowLogged.set(false);
+            return true;
+        } catch (Exception e) {
+            System.err.println("批量写入Token使用记录失败，" + flushIntervalMs + "ms后重试: " + e.getMessage());
+            failedBatch = batch;
+            failedBatchSize = batch.size();
+            failedAttempts = 1;
+            retryDelayMs = flushIntervalMs;
+            nextRetryTime = System.currentTimeMillis() + retryDelayMs;
+            return false;
+        }
+    }
+
+    /**
+     * 重试写入失败的一批记录；达到次数上限后逐条写入，丢弃被数据库拒绝的记录，
+     * 遇到连接或临时性错误时保留剩余记录继续退避。全部处理完时返回true
+     */
+    private boolean retryFailedBatch() {
+        List<TokenUsage> remaining;
+        Exception failure;
+        try {
+            usageRollupService.saveUsageBatch(failedBatch);
+            remaining = Collections.emptyList();
+            failure = null;
+        } catch (Exception e) {
+            failure = e;
+            remaining = ++failedAttempts >= flushMaxAttempts ? saveIndividually(failedBatch) : failedBatch;
+        }
+
+        if (remaining.isEmpty()) {
+            failedBatch = null;
+            failedBatchSize = 0;
+            failedAttempts = 0;
+            overflowLogged.set(false);
+            return true;
+        }
+        failedBatch = remaining;
+        failedBatchSize = remaining.size();
+        retryDelayMs = Math.min(retryDelayMs * 2, flushRetryMaxMs);
+        nextRetryTime = System.currentTimeMillis() + retryDelayMs;
+        System.err.println("重试写入Token使用记录失败（第" + failedAttempts + "次），" + retryDelayMs + "ms后重试: "
+            + (failure != null ? failure.getMessage() : "数据库不可用"));
+        return false;
+    }
+
+    /**
+     * 逐条写入，返回因连接或临时性错误未能写入的记录
+     */
+    private List<TokenUsage> saveIndividually(List<TokenUsage> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            TokenUsage usage = batch.get(i);
+            try {
+                usageRollupService.saveUsageBatch(Collections.singletonList(usage));
+            } catch (Exception e) {
+                if (isRecoverable(e)) {
+                    return new ArrayList<>(batch.subList(i, batch.size()));
+                }
+                rejectedCounter.increment();
+                System.err.println("Token使用记录被数据库拒绝，已丢弃: 用户 " + usage.getUserId()
+                    + ", 对话 " + usage.getConversationId() + ", " + usage.getTokensCount() + " tokens, " + e.getMessage());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 连接失败、事务无法开始等错误稍后重试可能成功，其他错误视为记录本身无法写入
+     */
+    private static boolean isRecoverable(Exception e) {
+        return e instanceof DataAccessResourceFailureException
+            || e instanceof TransientDataAccessException
+            || e instanceof RecoverableDataAccessException
+            || e instanceof TransactionException;
+    }
+
+    /**
+     * 暂停批量写入执行action，期间提交的使用记录只在队列中等待，结束后由下一次定时写入处理
+     */
+    public <T> T pauseFlush(Supplier<T> action) {
+        synchronized (flushLock) {
+            return action.get();
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get() + failedBatchSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (flushLock) {
+            nextRetryTime = 0;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("关闭时写入Token使用记录失败: " + e.getMessage());
+        }
+        if (getPendingCount() > 0) {
+            System.err.println("关闭时仍有 " + getPendingCount() + " 条Token使用记录未写入");
+        }
+    }
+
+    private Counter droppedCounter(String reason) {
+        return Counter.builder("app.token.dropped-usages")
+            .description("未能写入数据库而丢弃的Token使用记录数")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    private void applyLimit(String userId, Integer tokenLimit) {
+        QuotaCell cell = cells.get(userId);
+        if (cell != null && tokenLimit != null) {
+            cell.tokenLimit = tokenLimit;
+        }
+    }
+
+    private void publishLimit(String userId, Long tokenLimit) {
+        ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_QUOTA_LIMIT);
+        message.setUserId(userId);
+        message.setTokens(tokenLimit);
+        clusterBus.broadcast(message);
+    }
+
+    /**
+     * 其他节点提交的用量累加到已加载的本月计数，未加载时由首次访问从数据库汇总
+     */
+    private void onClusterMessage(ClusterMessage message) {
+        String userId = message.getUserId();
+        if (ClusterMessage.TYPE_QUOTA_USED.equals(message.getType())) {
+            QuotaCell cell = cells.get(userId);
+            if (cell != null && cell.month.equals(currentMonth())) {
+                long tokens = message.getTokens();
+                cell.allocated.addAndGet(tokens);
+                cell.committed.add(tokens);
+            }
+        } else if (ClusterMessage.TYPE_QUOTA_LIMIT.equals(message.getType())) {
+            if (message.getTokens() != null) {
+                applyLimit(userId, message.getTokens().intValue());
+            } else {
+                cells.remove(userId);
+            }
+        }
+    }
+
+    private QuotaCell getCell(String userId) {
+        YearMonth month = currentMonth();
+        QuotaCell cell = cells.get(userId);
+        if (cell != null && cell.month.equals(month)) {
+            return cell;
+        }
+
+        // 首次访问或跨月时从数据库汇总，加上尚未写入的记录
+        User user = userRepository.findById(userId)
+            .orElseThrow(() -> new RuntimeException("用户不存在"));
+        return installCell(userId, seedCells(Collections.singletonList(user), month).get(userId));
+    }
+
+    /**
+     * 放入新汇总的计数；其他线程已放入本月计数时使用已有的
+     */
+    private QuotaCell installCell(String userId, QuotaCell seeded) {
+        QuotaCell cell = cells.get(userId);
+        if (cell == null) {
+            QuotaCell existing = cells.putIfAbsent(userId, seeded);
+            return existing != null ? existing : seeded;
+        }
+        if (cell.month.equals(seeded.month)) {
+            return cell;
+        }
+        return cells.replace(userId, cell, seeded) ? seeded : getCell(userId);
+    }
+
+    /**
+     * 汇总一批用户的本月用量，多个用户时用一次分组查询
+     */
+    private Map<String, QuotaCell> seedCells(List<User> users, YearMonth month) {
+        ZoneId zone = ZoneId.systemDefault();
+        long startTime = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long endTime = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+
+        Set<String> userIds = new HashSet<>();
+        for (User user : users) {
+            userIds.add(user.getId());
+        }
+
+        Map<String, Long> used = new HashMap<>();
+        synchronized (flushLock) {
+            if (userIds.size() == 1) {
+                String userId = users.get(0).getId();
+                Long persisted = tokenUsageRepository.sumTokensCountByUserIdAndTimeRange(userId, startTime, endTime);
+                used.put(userId, persisted != null ? persisted : 0L);
+            } else {
+                for (Object[] row : tokenUsageRepository.sumTokensCountByUserIdsAndTimeRange(userIds, startTime, endTime)) {
+                    used.put((String) row[0], row[1] != null ? ((Number) row[1]).longValue() : 0L);
+                }
+            }
+            List<TokenUsage> unsaved = new ArrayList<>(pendingUsages);
+            if (failedBatch != null) {
+                unsaved.addAll(failedBatch);
+            }
+            for (TokenUsage pending : unsaved) {
+                if (userIds.contains(pending.getUserId()) && pending.getUsageTime() >= startTime) {
+                    used.merge(pending.getUserId(), (long) pending.getTokensCount(), Long::sum);
+                }
+            }
+        }
+
+        Map<String, QuotaCell> seeded = new HashMap<>();
+        for (User user : users) {
+            long userUsed = used.getOrDefault(user.getId(), 0L);
+            QuotaCell cell = new QuotaCell(month, user.getTokenLimit());
+            cell.allocated.set(userUsed);
+            cell.committed.add(userUsed);
+            seeded.put(user.getId(), cell);
+        }
+        return seeded;
+    }
+
+    private YearMonth currentMonth() {
+        return YearMonth.now();
+    }
+
+    /**
+     * 一次预占，记录预占时所在的月度计数
+     */
+    public static class Reservation {
+        private final String userId;
+        private final long tokens;
+        private final QuotaCell cell;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Reservation(String userId, long tokens, QuotaCell cell) {
+            this.userId = userId;
+            this.tokens = tokens;
+            this.cell = cell;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public long getTokens() {
+            return tokens;
+        }
+
+        private boolean finish() {
+            return finished.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * 单个用户的本月额度计数
+     * allocated = 已提交 + 未完成的预占，用CAS保证检查和预占是原子的；committed只在提交时累加
+     */
+    private static class QuotaCell {
+        final YearMonth month;
+        final AtomicLong allocated = new AtomicLong();
+        final LongAdder committed = new LongAdder();
+        volatile long tokenLimit;
+
+        QuotaCell(YearMonth month, Integer tokenLimit) {
+            this.month = month;
+            this.tokenLimit = tokenLimit != null ? tokenLimit : 0;
+        }
+    }
+}
@@ -1,18 +1,23 @@
 package com.proshine.claudeplatformbackend.service;
 
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.entity.TokenUsage;
 import com.proshine.claudeplatformbackend.entity.User;
 import com.proshine.claudeplatformbackend.repository.TokenUsageRepository;
-import com.proshine.claudeplatformbackend.repository.UserRepository;
+import com.proshine.claudeplatformbackend.utils.CursorUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class TokenService {
@@ -21,42 +26,73 @@ public class TokenService {
     private TokenUsageRepository tokenUsageRepository;
     
     @Autowired
-    private UserRepository userRepository;
+    private TokenQuotaLedger tokenQuotaLedger;
     
-    @Transactional
+    /**
+     * 记录Token使用，超出本月额度时抛出异常
+     * 额度在内存账本中原子扣减，使用记录由后台批量写入
+     */
     public TokenUsage recordTokenUsage(String userId, String conversationId, 
                                      Integer tokensCount, String usageType) {
-        // 检查用户是否存在
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("用户不存在"));
-        
-        // 检查Token额度
-        Integer monthlyUsed = getMonthlyUsedTokens(userId);
-        if (monthlyUsed + tokensCount > user.getTokenLimit()) {
+        TokenQuotaLedger.Reservation reservation = tokenQuotaLedger.reserve(userId, tokensCount);
+        if (reservation == null) {
             throw new RuntimeException("Token额度不足");
         }
-        
-        TokenUsage tokenUsage = new TokenUsage();
-        tokenUsage.setUserId(userId);
-        tokenUsage.setConversationId(conversationId);
-        tokenUsage.setTokensCount(tokensCount);
-        tokenUsage.setUsageType(usageType);
-        tokenUsage.setUsageTime(System.currentTimeMillis());
-        
-        return tokenUsageRepository.save(tokenUsage);
+        return tokenQuotaLedger.commit(reservation, conversationId, tokensCount, usageType);
+    }
+    
+    /**
+     * 预占Token额度，额度不足时返回null；请求完成后须调用commitTokens或releaseTokens
+     */
+    public TokenQuotaLedger.Reservation reserveTokens(String userId, Integer tokens) {
+        return tokenQuotaLedger.reserve(userId, tokens);
+    }
+    
+    /**
+     * 按实际用量提交预占的额度并记录使用
+     */
+    public TokenUsage commitTokens(TokenQuotaLedger.Reservation reservation, String conversationId,
+                                   Integer actualTokens, String usageType) {
+        return tokenQuotaLedger.commit(reservation, conversationId, actualTokens, usageType);
+    }
+    
+    public void releaseTokens(TokenQuotaLedger.Reservation reservation) {
+        tokenQuotaLedger.release(reservation);
+    }
+    
+    /**
+     * 用户额度调整后同步到账本；在事务中调用时等事务提交后再同步，回滚时账本保持原额度
+     */
+    public void refreshTokenLimit(String userId, Integer tokenLimit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            tokenQuotaLedger.updateLimit(userId, tokenLimit);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                tokenQuotaLedger.updateLimit(userId, tokenLimit);
+            }
+        });
+    }
+    
+    public void evictUser(String userId) {
+        tokenQuotaLedger.evict(userId);
     }
     
     public Integer getMonthlyUsedTokens(String userId) {
-        // 获取本月开始和结束时间
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime monthStart = now.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime monthEnd = monthStart.plusMonths(1).minusNanos(1);
-        
-        long startTime = monthStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTime = monthEnd.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        
-        Long result = tokenUsageRepository.sumTokensCountByUserIdAndTimeRange(userId, startTime, endTime);
-        return result != null ? result.intValue() : 0;
+        return (int) tokenQuotaLedger.getMonthlyUsed(userId);
+    }
+    
+    /**
+     * 批量获取用户本月已用Token，用户ID -> 用量
+     */
+    public Map<String, Integer> getMonthlyUsedTokens(Collection<User> users) {
+        Map<String, Integer> result = new HashMap<>();
+        for (Map.Entry<String, Long> entry : tokenQuotaLedger.getMonthlyUsed(users).entrySet()) {
+            result.put(entry.getKey(), entry.getValue().intValue());
+        }
+        return result;
     }
     
     public Integer getTotalUsedTokens(String userId) {
@@ -68,6 +104,18 @@ public class TokenService {
         return tokenUsageRepository.findByUserIdOrderByUsageTimeDesc(userId, pageable);
     }
     
+    /**
+     * 游标分页读取使用记录，不执行总数查询
+     */
+    public CursorPage<TokenUsage> getUserTokenUsage(String userId, String cursor, int size) {
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<TokenUsage> usages = position == null
+            ? tokenUsageRepository.findByUserIdOrderByUsageTimeDescIdDesc(userId, pageable)
+            : tokenUsageRepository.findByUserIdAfterCursor(userId, position.getTime(), position.getId(), pageable);
+        return CursorPage.of(usages, u -> CursorUtil.encode(u.getUsageTime(), u.getId()));
+    }
+    
     public List<TokenUsage> getUserTokenUsageByTimeRange(String userId, Long startTime, Long endTime) {
         return tokenUsageRepository.findByUserIdAndTimeRange(userId, startTime, endTime);
     }
@@ -85,18 +133,10 @@ public class TokenService {
     }
     
     public boolean checkTokenAvailable(String userId, Integer requiredTokens) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("用户不存在"));
-        
-        Integer monthlyUsed = getMonthlyUsedTokens(userId);
-        return monthlyUsed + requiredTokens <= user.getTokenLimit();
+        return tokenQuotaLedger.getRemaining(userId) >= requiredTokens;
     }
     
     public Integer getRemainingTokens(String userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("用户不存在"));
-        
-        Integer monthlyUsed = getMonthlyUsedTokens(userId);
-        return user.getTokenLimit() - monthlyUsed;
+        return (int) tokenQuotaLedger.getRemaining(userId);
     }
 }
\ No newline at end of file
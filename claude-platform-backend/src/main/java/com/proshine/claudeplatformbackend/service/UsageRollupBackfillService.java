@@ -0,0 +1,49 @@
+package com.proshine.claudeplatformbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+/**
+ * 每日用量汇总回填服务
+ * 汇总表首次上线时为空，启动时从历史使用记录和对话一次性生成汇总行；
+ * 回填期间暂停本节点的Token使用记录写入，多节点之间由system_config中的回填标记保证只回填一次
+ */
+@Service
+@Order(50)
+public class UsageRollupBackfillService implements CommandLineRunner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UsageRollupBackfillService.class);
+    
+    @Autowired
+    private UsageRollupService usageRollupService;
+    
+    @Autowired
+    private TokenQuotaLedger tokenQuotaLedger;
+    
+    @Value("${app.statistics.rollup-backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+    
+    @Override
+    public void run(String... args) {
+        if (!backfillOnStartup) {
+            return;
+        }
+        
+        try {
+            int rows = tokenQuotaLedger.pauseFlush(usageRollupService::backfillIfEmpty);
+            if (rows > 0) {
+                logger.info("每日用量汇总回填完成，共生成 {} 条汇总记录", rows);
+            }
+        } catch (DataIntegrityViolationException e) {
+            logger.info("其他节点已完成每日用量汇总回填，跳过");
+        } catch (Exception e) {
+            logger.error("回填每日用量汇总失败: {}", e.getMessage(), e);
+        }
+    }
+}
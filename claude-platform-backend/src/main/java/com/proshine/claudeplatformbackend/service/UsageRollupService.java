@@ -0,0 +1,170 @@
+package com.proshine.claudeplatformbackend.service;
+
+import com.proshine.claudeplatformbackend.entity.DailyUsageStat;
+import com.proshine.claudeplatformbackend.entity.SystemConfig;
+import com.proshine.claudeplatformbackend.entity.TokenUsage;
+import com.proshine.claudeplatformbackend.repository.DailyUsageStatRepository;
+import com.proshine.claudeplatformbackend.repository.SystemConfigRepository;
+import com.proshine.claudeplatformbackend.repository.TokenUsageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 每日用量汇总服务
+ * 写入Token使用记录和创建对话时同步累加daily_usage_stats，统计接口只读取汇总行；
+ * 汇总表为空时由UsageRollupBackfillService在启动阶段回填
+ */
+@Service
+public class UsageRollupService {
+    
+    private static final String DEFAULT_USAGE_TYPE = "CHAT";
+    
+    // 回填标记，system_config中存在该行表示已经有节点执行过回填
+    private static final String BACKFILL_MARKER_KEY = "usage_rollup_backfilled";
+    
+    // 回填时数据库分组的时段长度，所有时区的整点偏移都是它的整数倍
+    private static final long QUARTER_HOUR_MILLIS = 15 * 60 * 1000L;
+    
+    @Autowired
+    private DailyUsageStatRepository dailyUsageStatRepository;
+    
+    @Autowired
+    private TokenUsageRepository tokenUsageRepository;
+    
+    @Autowired
+    private SystemConfigRepository systemConfigRepository;
+    
+    /**
+     * 保存一批Token使用记录，并在同一事务中累加到每日汇总
+     */
+    @Transactional
+    public void saveUsageBatch(List<TokenUsage> batch) {
+        tokenUsageRepository.saveAll(batch);
+        
+        // 同一天同一类型的记录先在内存中合并，减少汇总表的更新次数
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        Map<String, String[]> keys = new HashMap<>();
+        for (TokenUsage usage : batch) {
+            String statDate = toStatDate(usage.getUsageTime());
+            String usageType = usage.getUsageType() != null ? usage.getUsageType() : DEFAULT_USAGE_TYPE;
+            String key = usage.getUserId() + "|" + statDate + "|" + usageType;
+            
+            long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+            total[0] += usage.getTokensCount();
+            total[1]++;
+            keys.putIfAbsent(key, new String[]{usage.getUserId(), statDate, usageType});
+        }
+        
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            String[] key = keys.get(entry.getKey());
+            dailyUsageStatRepository.upsertUsage(key[0], key[1], key[2],
+                entry.getValue()[0], entry.getValue()[1], 0L, now);
+        }
+    }
+    
+    /**
+     * 新建对话时累加当天的对话数，计入CHAT类型
+     */
+    @Transactional
+    public void recordConversation(String userId, Long createdTime) {
+        long now = System.currentTimeMillis();
+        dailyUsageStatRepository.upsertUsage(userId, toStatDate(createdTime != null ? createdTime : now),
+            DEFAULT_USAGE_TYPE, 0L, 0L, 1L, now);
+    }
+    
+    /**
+     * 删除对话时扣减创建当天的对话数
+     */
+    @Transactional
+    public void recordConversationDeleted(String userId, Long createdTime) {
+        long now = System.currentTimeMillis();
+        dailyUsageStatRepository.upsertUsage(userId, toStatDate(createdTime != null ? createdTime : now),
+            DEFAULT_USAGE_TYPE, 0L, 0L, -1L, now);
+    }
+    
+    public List<DailyUsageStat> getDailyStats(String userId, LocalDate startDate, LocalDate endDate) {
+        return dailyUsageStatRepository.findByUserIdAndDateRange(userId, startDate.toString(), endDate.toString());
+    }
+    
+    public Map<String, Long> getTokensByUsageType(String userId) {
+        Map<String, Long> result = new HashMap<>();
+        for (Object[] row : dailyUsageStatRepository.sumTokensByUsageType(userId)) {
+            result.put(row[0].toString(), row[1] != null ? ((Number) row[1]).longValue() : 0L);
+        }
+        return result;
+    }
+    
+    public boolean isEmpty() {
+        return dailyUsageStatRepository.count() == 0;
+    }
+    
+    /**
+     * 尚未回填且汇总表为空时回填，返回写入的用量汇总行数，已回填过时返回-1。
+     * 标记行与回填在同一事务中提交：多个节点同时启动时，后插入标记的节点等待先插入的事务结束后
+     * 因唯一键冲突失败，不会重复回填；汇总表的检查和回填读取同一快照，期间提交的实时累加不会重复计入
+     */
+    @Transactional
+    public int backfillIfEmpty() {
+        if (systemConfigRepository.existsByConfigKey(BACKFILL_MARKER_KEY)) {
+            return -1;
+        }
+        SystemConfig marker = new SystemConfig();
+        marker.setConfigKey(BACKFILL_MARKER_KEY);
+        marker.setConfigValue(String.valueOf(System.currentTimeMillis()));
+        marker.setConfigDesc("每日用量汇总已回填，删除后汇总表为空时重新回填");
+        systemConfigRepository.saveAndFlush(marker);
+        
+        // 已有汇总行说明实时累加早于本次上线，只记录标记
+        if (!isEmpty()) {
+            return -1;
+        }
+        return backfill();
+    }
+    
+    /**
+     * 从token_usage和conversations重新汇总，返回写入的用量汇总行数
+     * 数据库按15分钟时段分组（与时区无关），日期由toStatDate换算，和实时累加的日期边界一致
+     */
+    @Transactional
+    public int backfill() {
+        // 用户|日期|类型 -> [tokens, usageCount, conversations]
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (Object[] row : dailyUsageStatRepository.sumTokenUsageByQuarterHour()) {
+            String statDate = toStatDate(((Number) row[1]).longValue() * QUARTER_HOUR_MILLIS);
+            long[] total = totals.computeIfAbsent(row[0] + "|" + statDate + "|" + row[2], k -> new long[3]);
+            total[0] += row[3] != null ? ((Number) row[3]).longValue() : 0L;
+            total[1] += ((Number) row[4]).longValue();
+        }
+        for (Object[] row : dailyUsageStatRepository.countConversationsByQuarterHour()) {
+            String statDate = toStatDate(((Number) row[1]).longValue() * QUARTER_HOUR_MILLIS);
+            long[] total = totals.computeIfAbsent(row[0] + "|" + statDate + "|" + DEFAULT_USAGE_TYPE, k -> new long[3]);
+            total[2] += ((Number) row[2]).longValue();
+        }
+        
+        long now = System.currentTimeMillis();
+        int usageRows = 0;
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            String[] key = entry.getKey().split("\\|", 3);
+            long[] total = entry.getValue();
+            dailyUsageStatRepository.upsertUsage(key[0], key[1], key[2], total[0], total[1], total[2], now);
+            if (total[1] > 0) {
+                usageRows++;
+            }
+        }
+        return usageRows;
+    }
+    
+    private String toStatDate(Long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalDate().toString();
+    }
+}
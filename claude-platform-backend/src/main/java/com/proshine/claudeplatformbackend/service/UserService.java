@@ -3,17 +3,23 @@ package com.proshine.claudeplatformbackend.service;
 import com.proshine.claudeplatformbackend.dto.request.ChangePasswordRequest;
 import com.proshine.claudeplatformbackend.dto.request.CreateUserRequest;
 import com.proshine.claudeplatformbackend.dto.request.UpdateUserRequest;
+import com.proshine.claudeplatformbackend.dto.response.CursorPage;
 import com.proshine.claudeplatformbackend.dto.response.UserInfo;
 import com.proshine.claudeplatformbackend.entity.User;
 import com.proshine.claudeplatformbackend.repository.UserRepository;
+import com.proshine.claudeplatformbackend.security.JwtAuthenticationCache;
 import com.proshine.claudeplatformbackend.security.SecurityUtils;
+import com.proshine.claudeplatformbackend.utils.CursorUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -28,6 +34,12 @@ public class UserService {
     @Autowired
     private TokenService tokenService;
     
+    @Autowired
+    private JwtAuthenticationCache jwtAuthenticationCache;
+    
+    @Autowired
+    private SearchService searchService;
+    
     @Transactional
     public UserInfo createUser(CreateUserRequest request) {
         // 检查用户名是否已存在
@@ -50,13 +62,32 @@ public class UserService {
         user.setUserStatus("ACTIVE");
         
         user = userRepository.save(user);
+        searchService.userChanged(user.getId());
         
         return buildUserInfo(user);
     }
     
     public Page<UserInfo> getUsers(String keyword, Pageable pageable) {
-        Page<User> users = userRepository.findByKeyword(keyword, pageable);
-        return users.map(this::buildUserInfo);
+        Page<User> users = keyword != null && !keyword.trim().isEmpty()
+            ? searchService.searchUsers(keyword.trim(), pageable)
+            : userRepository.findByKeyword(keyword, pageable);
+        // 整页用户的用量一次查询
+        Map<String, Integer> usedTokens = tokenService.getMonthlyUsedTokens(users.getContent());
+        return users.map(user -> buildUserInfo(user, usedTokens.get(user.getId())));
+    }
+    
+    /**
+     * 游标分页读取用户列表，不执行总数查询
+     */
+    public CursorPage<UserInfo> getUsers(String cursor, int size) {
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<User> users = position == null
+            ? userRepository.findAllByOrderByCreatedTimeDescIdDesc(pageable)
+            : userRepository.findAfterCursor(position.getTime(), position.getId(), pageable);
+        Map<String, Integer> usedTokens = tokenService.getMonthlyUsedTokens(users.getContent());
+        return CursorPage.of(users, u -> CursorUtil.encode(u.getCreatedTime(), u.getId()))
+            .map(user -> buildUserInfo(user, usedTokens.get(user.getId())));
     }
     
     public UserInfo getUserById(String id) {
@@ -99,6 +130,9 @@ public class UserService {
         }
         
         user = userRepository.save(user);
+        tokenService.refreshTokenLimit(user.getId(), user.getTokenLimit());
+        jwtAuthenticationCache.invalidateUser(user.getId());
+        searchService.userChanged(user.getId());
         return buildUserInfo(user);
     }
     
@@ -120,6 +154,7 @@ public class UserService {
         // 设置新密码
         user.setUserPassword(passwordEncoder.encode(request.getNewPassword()));
         userRepository.save(user);
+        jwtAuthenticationCache.invalidateUser(userId);
     }
     
     @Transactional
@@ -129,6 +164,7 @@ public class UserService {
         
         user.setUserPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        jwtAuthenticationCache.invalidateUser(id);
     }
     
     @Transactional
@@ -138,6 +174,7 @@ public class UserService {
         
         user.setUserStatus(status);
         userRepository.save(user);
+        jwtAuthenticationCache.invalidateUser(id);
     }
     
     @Transactional
@@ -147,6 +184,7 @@ public class UserService {
         
         user.setTokenLimit(tokenLimit);
         userRepository.save(user);
+        tokenService.refreshTokenLimit(id, user.getTokenLimit());
     }
     
     @Transactional
@@ -156,6 +194,7 @@ public class UserService {
         
         user.setTokenLimit(user.getTokenLimit() + extraTokens);
         userRepository.save(user);
+        tokenService.refreshTokenLimit(id, user.getTokenLimit());
     }
     
     @Transactional
@@ -164,6 +203,9 @@ public class UserService {
             throw new RuntimeException("用户不存在");
         }
         userRepository.deleteById(id);
+        tokenService.evictUser(id);
+        jwtAuthenticationCache.invalidateUser(id);
+        searchService.userChanged(id);
     }
     
     public boolean checkUsernameExists(String username) {
@@ -175,6 +217,10 @@ public class UserService {
     }
     
     private UserInfo buildUserInfo(User user) {
+        return buildUserInfo(user, tokenService.getMonthlyUsedTokens(user.getId()));
+    }
+    
+    private UserInfo buildUserInfo(User user, Integer usedTokens) {
         UserInfo userInfo = new UserInfo();
         userInfo.setId(user.getId());
         userInfo.setUsername(user.getUsername());
@@ -186,8 +232,7 @@ public class UserService {
         userInfo.setCreatedTime(user.getCreatedTime());
         userInfo.setLastLoginTime(user.getLastLoginTime());
         
-        // 获取Token使用情况
-        Integer usedTokens = tokenService.getMonthlyUsedTokens(user.getId());
+        // Token使用情况
         userInfo.setUsedTokens(usedTokens != null ? usedTokens : 0);
         userInfo.setRemainingTokens(user.getTokenLimit() - userInfo.getUsedTokens());
         
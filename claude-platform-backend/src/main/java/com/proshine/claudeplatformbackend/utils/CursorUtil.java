@@ -0,0 +1,52 @@
+package com.proshine.claudeplatformbackend.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class CursorUtil {
+    
+    /**
+     * 生成游标，由排序时间和记录ID组成，时间相同的记录按ID区分
+     */
+    public static String encode(Long time, String id) {
+        String raw = (time != null ? time : 0L) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解析游标，为空时返回null表示第一页
+     */
+    public static Cursor decode(String cursor) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new Cursor(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+    
+    /**
+     * 解析后的游标
+     */
+    public static class Cursor {
+        private final long time;
+        private final String id;
+        
+        public Cursor(long time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+        
+        public long getTime() {
+            return time;
+        }
+        
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.proshine.claudeplatformbackend.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public class FileDownloadUtil {
+    
+    /**
+     * 构建文件下载响应
+     * 响应体为文件资源，由Spring MVC直接从文件流式写出，不整体读入内存；
+     * 请求带Range头时按区间返回206，Content-Length由Spring按区间设置；带If-None-Match或If-Modified-Since且文件未变化时返回304。
+     * ifRange为请求的If-Range头，与当前ETag或修改时间不一致时说明客户端的部分内容已过期，忽略Range返回完整文件；
+     * 实际写出的字节数计入meterRegistry中的app.file.bytes
+     */
+    public static ResponseEntity<Resource> buildDownloadResponse(Path filePath, String attachmentName, String ifRange,
+                                                                 MeterRegistry meterRegistry) throws IOException {
+        Counter counter = meterRegistry.counter("app.file.bytes", "operation", "download");
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        String eTag = buildETag(attrs.size(), lastModified);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", attachmentName);
+        headers.setLastModified(lastModified);
+        headers.setETag(eTag);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        
+        if (ifRange != null && !ifRangeMatches(ifRange, eTag, lastModified)) {
+            // Spring MVC不对InputStreamResource处理Range，文件在写出响应体时才打开，304响应不会打开
+            headers.setContentLength(attrs.size());
+            return ResponseEntity.ok()
+                .headers(headers)
+                .body(new InputStreamResource(new CountingInputStream(new LazyFileInputStream(filePath), counter)));
+        }
+        
+        return ResponseEntity.ok()
+            .headers(headers)
+            .body(new CountingFileSystemResource(filePath, counter));
+    }
+    
+    /**
+     * 根据文件大小和修改时间生成ETag，文件被替换或修改后随之变化
+     */
+    public static String buildETag(long size, long lastModified) {
+        return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+    
+    /**
+     * If-Range为ETag时按强比较，为日期时与修改时间精确到秒比较
+     */
+    private static boolean ifRangeMatches(String ifRange, String eTag, long lastModified) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(eTag);
+        }
+        try {
+            HttpHeaders parsed = new HttpHeaders();
+            parsed.set(HttpHeaders.IF_RANGE, value);
+            return parsed.getFirstDate(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * 统计实际写出字节数的文件资源，Range请求只计入返回的区间，304响应不计入
+     */
+    private static class CountingFileSystemResource extends FileSystemResource {
+        
+        private final Counter counter;
+        
+        CountingFileSystemResource(Path filePath, Counter counter) {
+            super(filePath);
+            this.counter = counter;
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new CountingInputStream(super.getInputStream(), counter);
+        }
+    }
+    
+    /**
+     * 把读出的字节数计入下载流量
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        
+        private final Counter counter;
+        
+        CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counter.increment();
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                counter.increment(count);
+            }
+            return count;
+        }
+    }
+    
+    /**
+     * 第一次读取时才打开的文件流
+     */
+    private static class LazyFileInputStream extends InputStream {
+        
+        private final Path filePath;
+        private InputStream in;
+        
+        LazyFileInputStream(Path filePath) {
+            this.filePath = filePath;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return open().read(buffer, offset, length);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+        
+        private InputStream open() throws IOException {
+            if (in == null) {
+                in = Files.newInputStream(filePath);
+            }
+            return in;
+        }
+    }
+}
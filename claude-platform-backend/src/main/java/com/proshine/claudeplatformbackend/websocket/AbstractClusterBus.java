@@ -0,0 +1,89 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 集群总线的公共部分：节点ID、回调注册和消息编解码
+ * 消息在节点之间以JSON传递，进程内实现也经过一次编解码，保证两种实现下接收方拿到的都是独立的副本
+ */
+abstract class AbstractClusterBus implements ClusterBus {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectWriter WRITER = OBJECT_MAPPER.writerFor(ClusterMessage.class);
+    private static final ObjectReader READER = OBJECT_MAPPER.readerFor(ClusterMessage.class);
+
+    private final List<Consumer<ClusterMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<>();
+
+    // 为空时启动时随机生成
+    @Value("${app.cluster.node-id:}")
+    private String nodeId;
+
+    @Override
+    public String getNodeId() {
+        if (nodeId == null || nodeId.isEmpty()) {
+            synchronized (this) {
+                if (nodeId == null || nodeId.isEmpty()) {
+                    nodeId = UUID.randomUUID().toString();
+                }
+            }
+        }
+        return nodeId;
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void addMembershipListener(MembershipListener listener) {
+        membershipListeners.add(listener);
+    }
+
+    protected byte[] encode(ClusterMessage message) throws IOException {
+        message.setSourceNode(getNodeId());
+        return ChatMessageCodec.writeBytes(WRITER, message);
+    }
+
+    protected ClusterMessage decode(byte[] payload) throws IOException {
+        return READER.readValue(payload);
+    }
+
+    /**
+     * 把其他节点的消息交给回调，单个回调失败不影响其他回调
+     */
+    protected void deliver(ClusterMessage message) {
+        for (Consumer<ClusterMessage> listener : listeners) {
+            try {
+                listener.accept(message);
+            } catch (Exception e) {
+                System.err.println("处理集群消息失败: " + message.getType() + ", " + e.getMessage());
+            }
+        }
+    }
+
+    protected void fireMemberJoined(String memberId) {
+        System.out.println("集群节点加入: " + memberId);
+        for (MembershipListener listener : membershipListeners) {
+            listener.memberJoined(memberId);
+        }
+    }
+
+    protected void fireMemberLeft(String memberId) {
+        System.out.println("集群节点离开: " + memberId);
+        for (MembershipListener listener : membershipListeners) {
+            listener.memberLeft(memberId);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 聊天请求分发器
+ * 按ChatMessage的id登记等待中的请求，收到本地客户端的响应后完成对应的Future，
+ * 超时或取消时自动清理，避免占用调用方线程等待；每个流式片段把超时顺延一个周期，持续输出的长流不会被中途截断
+ */
+@Component
+public class ChatDispatcher {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 等待首个响应以及相邻两个片段之间的最长时间
+    @Value("${app.chat.dispatch-timeout-ms:120000}")
+    private long dispatchTimeoutMs;
+
+    // 等待响应的请求 messageId -> 请求状态
+    private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-dispatch-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void initMetrics() {
+        Gauge.builder("app.chat.pending", pendingRequests, Map::size)
+            .description("等待本地客户端响应的请求数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 登记一个等待响应的请求，超时后Future以TimeoutException结束
+     */
+    public CompletableFuture<ChatMessage> register(String messageId) {
+        return register(messageId, null, null);
+    }
+
+    /**
+     * 登记一个等待响应的请求，流式片段到达时回调chunkListener
+     */
+    public CompletableFuture<ChatMessage> register(String messageId, String userId, Consumer<ChatMessage> chunkListener) {
+        PendingRequest pending = new PendingRequest(userId, chunkListener);
+        CompletableFuture<ChatMessage> future = pending.future;
+        pending.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(dispatchTimeoutMs);
+        pendingRequests.put(messageId, pending);
+        scheduleTimeout(pending, TimeUnit.MILLISECONDS.toNanos(dispatchTimeoutMs));
+
+        future.whenComplete((response, error) -> {
+            pendingRequests.remove(messageId, pending);
+            ScheduledFuture<?> timeoutTask = pending.timeoutTask;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 超时任务到期时按截止时间重新判断，期间收到过片段时按剩余时间重新登记
+     */
+    private void scheduleTimeout(PendingRequest pending, long delayNanos) {
+        pending.timeoutTask = timeoutScheduler.schedule(() -> {
+            long remainingNanos = pending.deadlineNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                if (!pending.future.isDone()) {
+                    scheduleTimeout(pending, remainingNanos);
+                }
+            } else {
+                pending.future.completeExceptionally(new TimeoutException("本地客户端响应超时"));
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 处理流式响应片段，返回是否命中等待中的请求
+     */
+    public boolean appendChunk(ChatMessage chunk) {
+        PendingRequest pending = chunk.getId() != null ? pendingRequests.get(chunk.getId()) : null;
+        if (pending == null) {
+            return false;
+        }
+        pending.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(dispatchTimeoutMs);
+        if (chunk.getContent() != null) {
+            synchronized (pending) {
+                pending.content.append(chunk.getContent());
+            }
+        }
+        if (pending.chunkListener != null) {
+            try {
+                pending.chunkListener.accept(chunk);
+            } catch (Exception e) {
+                System.err.println("推送流式响应片段失败: " + chunk.getId() + ", " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 用本地客户端的响应完成对应请求，返回是否命中等待中的请求
+     * 流式结束消息不带内容时，使用已累积的片段作为完整响应
+     */
+    public boolean complete(ChatMessage response) {
+        PendingRequest pending = response.getId() != null ? pendingRequests.get(response.getId()) : null;
+        if (pending == null) {
+            return false;
+        }
+        if (ChatMessage.TYPE_CHAT_END.equals(response.getType()) && response.getContent() == null) {
+            synchronized (pending) {
+                response.setContent(pending.content.toString());
+            }
+        }
+        return pending.future.complete(response);
+    }
+
+    /**
+     * 以错误结束对应请求，返回是否命中等待中的请求
+     */
+    public boolean fail(String messageId, String error) {
+        PendingRequest pending = messageId != null ? pendingRequests.get(messageId) : null;
+        return pending != null && pending.future.completeExceptionally(new RuntimeException(error));
+    }
+
+    /**
+     * 取消等待中的请求
+     */
+    public boolean cancel(String messageId) {
+        PendingRequest pending = messageId != null ? pendingRequests.get(messageId) : null;
+        return pending != null && pending.future.cancel(false);
+    }
+
+    public boolean isPending(String messageId) {
+        return messageId != null && pendingRequests.containsKey(messageId);
+    }
+
+    /**
+     * 获取发起请求的用户ID，用于转发不带userId的响应
+     */
+    public String getUserId(String messageId) {
+        PendingRequest pending = messageId != null ? pendingRequests.get(messageId) : null;
+        return pending != null ? pending.userId : null;
+    }
+
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pendingRequests.values().forEach(pending -> pending.future.completeExceptionally(new RuntimeException("服务正在关闭")));
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * 等待中的请求状态
+     */
+    private static class PendingRequest {
+        final String userId;
+        final Consumer<ChatMessage> chunkListener;
+        final CompletableFuture<ChatMessage> future = new CompletableFuture<>();
+        final StringBuilder content = new StringBuilder();
+        // 收到片段时顺延
+        volatile long deadlineNanos;
+        volatile ScheduledFuture<?> timeoutTask;
+
+        PendingRequest(String userId, Consumer<ChatMessage> chunkListener) {
+            this.userId = userId;
+            this.chunkListener = chunkListener;
+        }
+    }
+}
@@ -24,6 +24,8 @@ public class ChatMessage {
     public static final String TYPE_HEARTBEAT = "heartbeat";
     public static final String TYPE_CHAT_REQUEST = "chat_request";
     public static final String TYPE_CHAT_RESPONSE = "chat_response";
+    public static final String TYPE_CHAT_CHUNK = "chat_chunk"; // 流式响应片段
+    public static final String TYPE_CHAT_END = "chat_end"; // 流式响应结束
     public static final String TYPE_ERROR = "error";
     public static final String TYPE_SUCCESS = "success";
     
@@ -50,6 +52,18 @@ public class ChatMessage {
         return message;
     }
     
+    /**
+     * 心跳回复，沿用请求的id，不再生成UUID
+     */
+    public static ChatMessage heartbeatReply(String id, String userId) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id != null ? id : java.util.UUID.randomUUID().toString());
+        message.setType(TYPE_HEARTBEAT);
+        message.setUserId(userId);
+        message.setTimestamp(System.currentTimeMillis());
+        return message;
+    }
+    
     public static ChatMessage chatRequest(String userId, String content, Map<String, Object> data) {
         ChatMessage message = new ChatMessage();
         message.setId(java.util.UUID.randomUUID().toString());
@@ -71,6 +85,26 @@ public class ChatMessage {
         return message;
     }
     
+    public static ChatMessage chatChunk(String id, String delta, Map<String, Object> data) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setType(TYPE_CHAT_CHUNK);
+        message.setContent(delta);
+        message.setData(data);
+        message.setTimestamp(System.currentTimeMillis());
+        return message;
+    }
+    
+    public static ChatMessage chatEnd(String id, String content, Map<String, Object> data) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setType(TYPE_CHAT_END);
+        message.setContent(content);
+        message.setData(data);
+        message.setTimestamp(System.currentTimeMillis());
+        return message;
+    }
+    
     public static ChatMessage error(String id, String error) {
         ChatMessage message = new ChatMessage();
         message.setId(id != null ? id : java.util.UUID.randomUUID().toString());
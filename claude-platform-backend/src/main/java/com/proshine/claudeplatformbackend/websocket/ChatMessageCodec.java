@@ -0,0 +1,97 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * ChatMessage的编解码
+ * 连接建立时通过子协议协商格式：chat.smile使用二进制帧传递Jackson Smile编码，
+ * chat.json或未指定子协议时使用文本帧传递JSON，与旧版客户端兼容。
+ * 所有实例共用同一组ObjectWriter和ObjectReader；二进制编码先写入线程复用的缓冲区，只为结果分配一次数组
+ */
+@Component
+public class ChatMessageCodec {
+
+    public static final String PROTOCOL_SMILE = "chat.smile";
+    public static final String PROTOCOL_JSON = "chat.json";
+
+    /**
+     * 连接使用的消息格式
+     */
+    public enum Format {
+        JSON,
+        SMILE
+    }
+
+    // 线程复用缓冲区的初始大小，以及用完后保留的最大大小，超出时丢弃以免长期占用内存
+    private static final int BUFFER_INITIAL_SIZE = 4096;
+    private static final int BUFFER_RETAIN_LIMIT = 1024 * 1024;
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    private static final ObjectWriter JSON_WRITER = JSON_MAPPER.writerFor(ChatMessage.class);
+    private static final ObjectReader JSON_READER = JSON_MAPPER.readerFor(ChatMessage.class);
+    private static final ObjectWriter SMILE_WRITER = SMILE_MAPPER.writerFor(ChatMessage.class);
+    private static final ObjectReader SMILE_READER = SMILE_MAPPER.readerFor(ChatMessage.class);
+
+    private static final ThreadLocal<EncodeBuffer> ENCODE_BUFFERS = ThreadLocal.withInitial(EncodeBuffer::new);
+
+    public static Format formatOf(WebSocketSession session) {
+        return PROTOCOL_SMILE.equals(session.getAcceptedProtocol()) ? Format.SMILE : Format.JSON;
+    }
+
+    public String toJson(ChatMessage message) throws IOException {
+        return JSON_WRITER.writeValueAsString(message);
+    }
+
+    public byte[] toSmile(ChatMessage message) throws IOException {
+        return writeBytes(SMILE_WRITER, message);
+    }
+
+    public ChatMessage fromJson(String json) throws IOException {
+        return JSON_READER.readValue(json);
+    }
+
+    public ChatMessage fromSmile(byte[] smile) throws IOException {
+        return SMILE_READER.readValue(smile);
+    }
+
+    /**
+     * 用当前线程的缓冲区编码，返回长度正好的数组
+     */
+    static byte[] writeBytes(ObjectWriter writer, Object value) throws IOException {
+        EncodeBuffer buffer = ENCODE_BUFFERS.get();
+        try {
+            writer.writeValue(buffer, value);
+            return buffer.toByteArray();
+        } finally {
+            if (buffer.capacity() > BUFFER_RETAIN_LIMIT) {
+                ENCODE_BUFFERS.remove();
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    /**
+     * 可复用的编码缓冲区
+     */
+    private static class EncodeBuffer extends ByteArrayOutputStream {
+
+        EncodeBuffer() {
+            super(BUFFER_INITIAL_SIZE);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
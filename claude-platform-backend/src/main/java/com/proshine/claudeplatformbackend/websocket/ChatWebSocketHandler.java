@@ -1,12 +1,15 @@
 package com.proshine.claudeplatformbackend.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.proshine.claudeplatformbackend.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -22,16 +25,32 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private ChatMessageCodec codec;
+    
+    @Autowired
+    private SessionReaper sessionReaper;
+    
+    // 分片消息拼接后的最大长度（文本按字符数，二进制按字节数），超出时断开连接
+    @Value("${app.websocket.max-message-size:16777216}")
+    private int maxMessageSize;
+    
+    // 认证前分片消息拼接后的最大长度，未认证的连接只需要发送认证消息
+    @Value("${app.websocket.max-unauthenticated-message-size:65536}")
+    private int maxUnauthenticatedMessageSize;
+    
+    private static final String PARTIAL_MESSAGE_ATTRIBUTE = "partialMessage";
     
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         System.out.println("WebSocket连接建立: " + session.getId());
+        sessionReaper.register(session);
         
         // 从URL参数获取token
         String token = getTokenFromSession(session);
-        if (token != null && jwtTokenProvider.validateToken(token)) {
-            String username = jwtTokenProvider.getUsernameFromToken(token);
+        Claims claims = token != null ? jwtTokenProvider.parseClaims(token) : null;
+        if (claims != null) {
+            String username = claims.getSubject();
             System.out.println("用户通过Token认证: " + username);
             
             // 暂时将用户添加到连接管理器，等待进一步的认证消息
@@ -45,38 +64,89 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     
     @Override
     public void handleMessage(WebSocketSession session, org.springframework.web.socket.WebSocketMessage<?> message) throws Exception {
-        if (message instanceof TextMessage) {
-            TextMessage textMessage = (TextMessage) message;
-            handleTextMessage(session, textMessage);
+        // 任何消息（包括pong）都说明连接仍然可用
+        sessionReaper.touch(session);
+        if (!(message instanceof TextMessage) && !(message instanceof BinaryMessage)) {
+            return;
+        }
+        
+        // 大消息按分片到达，拼接完整后再解码；未分片的消息直接解码
+        PartialMessage partial = (PartialMessage) session.getAttributes().get(PARTIAL_MESSAGE_ATTRIBUTE);
+        if (partial == null && message.isLast()) {
+            if (message instanceof TextMessage) {
+                handleTextPayload(session, ((TextMessage) message).getPayload());
+            } else {
+                handleBinaryPayload(session, toBytes(((BinaryMessage) message).getPayload()));
+            }
+            return;
+        }
+        
+        if (partial == null) {
+            // 因消息过大关闭连接后，同一消息剩余的分片可能仍在到达
+            if (!session.isOpen()) {
+                return;
+            }
+            partial = new PartialMessage();
+            session.getAttributes().put(PARTIAL_MESSAGE_ATTRIBUTE, partial);
+        }
+        int maxSize = connectionManager.getSessionType(session) != null ? maxMessageSize : maxUnauthenticatedMessageSize;
+        if (!partial.append(message, maxSize)) {
+            session.getAttributes().remove(PARTIAL_MESSAGE_ATTRIBUTE);
+            System.err.println("WebSocket消息过大，断开连接: " + session.getId());
+            session.close(CloseStatus.TOO_BIG_TO_PROCESS);
+            return;
+        }
+        if (message.isLast()) {
+            session.getAttributes().remove(PARTIAL_MESSAGE_ATTRIBUTE);
+            if (partial.text != null) {
+                handleTextPayload(session, partial.text.toString());
+            } else {
+                handleBinaryPayload(session, partial.binary.toByteArray());
+            }
+        }
+    }
+    
+    private void handleTextPayload(WebSocketSession session, String payload) {
+        try {
+            messageHandler.handleMessage(session, codec.fromJson(payload));
+        } catch (Exception e) {
+            rejectMalformed(session, e);
         }
     }
     
-    private void handleTextMessage(WebSocketSession session, TextMessage message) {
+    private void handleBinaryPayload(WebSocketSession session, byte[] payload) {
         try {
-            ChatMessage wsMessage = objectMapper.readValue(message.getPayload(), ChatMessage.class);
-            messageHandler.handleMessage(session, wsMessage);
+            messageHandler.handleMessage(session, codec.fromSmile(payload));
         } catch (Exception e) {
-            System.err.println("处理WebSocket消息失败: " + e.getMessage());
-            ChatMessage errorMessage = ChatMessage.error(null, "消息格式错误: " + e.getMessage());
-            connectionManager.sendMessageToSession(session, errorMessage);
+            rejectMalformed(session, e);
         }
     }
     
+    private void rejectMalformed(WebSocketSession session, Exception e) {
+        System.err.println("处理WebSocket消息失败: " + e.getMessage());
+        ChatMessage errorMessage = ChatMessage.error(null, "消息格式错误: " + e.getMessage());
+        connectionManager.sendMessageToSession(session, errorMessage);
+    }
+    
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         System.err.println("WebSocket传输错误: " + session.getId() + ", " + exception.getMessage());
+        sessionReaper.unregister(session);
+        messageHandler.handleSessionClosed(session);
         connectionManager.removeSession(session);
     }
     
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         System.out.println("WebSocket连接关闭: " + session.getId() + ", 状态: " + closeStatus.toString());
+        sessionReaper.unregister(session);
+        messageHandler.handleSessionClosed(session);
         connectionManager.removeSession(session);
     }
     
     @Override
     public boolean supportsPartialMessages() {
-        return false;
+        return true;
     }
     
     private String getTokenFromSession(WebSocketSession session) {
@@ -97,4 +167,49 @@ public class ChatWebSocketHandler implements WebSocketHandler {
         }
         return null;
     }
-}
\ No newline at end of file
+    
+    private static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * 尚未接收完的分片消息，同一连接的回调由容器串行调用
+     */
+    private static class PartialMessage {
+        StringBuilder text;
+        ByteArrayOutputStream binary;
+        
+        /**
+         * 追加一个分片，超出长度限制时返回false
+         */
+        boolean append(org.springframework.web.socket.WebSocketMessage<?> message, int maxSize) {
+            if (message instanceof TextMessage) {
+                if (text == null) {
+                    text = new StringBuilder();
+                }
+                String payload = ((TextMessage) message).getPayload();
+                if (text.length() + payload.length() > maxSize) {
+                    return false;
+                }
+                text.append(payload);
+            } else {
+                if (binary == null) {
+                    binary = new ByteArrayOutputStream();
+                }
+                ByteBuffer payload = ((BinaryMessage) message).getPayload();
+                if (binary.size() + payload.remaining() > maxSize) {
+                    return false;
+                }
+                byte[] bytes = toBytes(payload);
+                binary.write(bytes, 0, bytes.length);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地客户端调度器
+ * 每个聊天请求只发给一个本地客户端，按进行中的请求数和最近的响应耗时选择负载最低的客户端；
+ * 同一对话的后续请求优先发给上次处理它的客户端
+ */
+@Component
+public class ClientScheduler {
+
+    /**
+     * 选择客户端的策略
+     */
+    public enum Strategy {
+        // 遍历所有客户端，选择负载最低的
+        LEAST_OUTSTANDING,
+        // 随机取两个客户端，选择负载较低的
+        POWER_OF_TWO
+    }
+
+    // 响应耗时的指数加权平均系数
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.chat.scheduler.strategy:POWER_OF_TWO}")
+    private Strategy strategy;
+
+    // 对话与客户端的绑定在该时间内未使用则失效
+    @Value("${app.chat.scheduler.sticky-ttl-ms:1800000}")
+    private long stickyTtlMs;
+
+    // 超过该时间仍未收到响应的请求不再计入客户端负载
+    @Value("${app.chat.dispatch-timeout-ms:120000}")
+    private long assignmentTimeoutMs;
+
+    // sessionId -> 客户端负载
+    private final Map<String, ClientStats> clients = new ConcurrentHashMap<>();
+
+    // 请求ID -> 处理该请求的客户端
+    private final Map<String, Assignment> assignments = new ConcurrentHashMap<>();
+
+    // 对话ID -> 绑定的客户端
+    private final Map<String, StickyRoute> stickyRoutes = new ConcurrentHashMap<>();
+
+    private Timer successTimer;
+    private Timer failureTimer;
+
+    @PostConstruct
+    public void initMetrics() {
+        Gauge.builder("app.chat.client.in-flight", this, ClientScheduler::getTotalInFlight)
+            .description("已分发给本地客户端、尚未完成的请求数")
+            .register(meterRegistry);
+        successTimer = latencyTimer("success");
+        failureTimer = latencyTimer("failure");
+    }
+
+    /**
+     * 选择一个本地客户端发送请求，没有可用客户端时返回null
+     */
+    public WebSocketSession dispatch(ChatMessage message) {
+        List<WebSocketSession> candidates = new ArrayList<>();
+        for (WebSocketSession session : connectionManager.getClientSessions()) {
+            if (session.isOpen()) {
+                candidates.add(session);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        String conversationId = getConversationId(message);
+        WebSocketSession target = null;
+        if (conversationId != null) {
+            StickyRoute route = stickyRoutes.get(conversationId);
+            if (route != null) {
+                for (WebSocketSession candidate : candidates) {
+                    if (candidate.getId().equals(route.sessionId)) {
+                        target = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        if (target == null) {
+            target = choose(candidates);
+        }
+        if (conversationId != null) {
+            stickyRoutes.put(conversationId, new StickyRoute(target.getId()));
+        }
+
+        ClientStats stats = getStats(target);
+        stats.inFlight.incrementAndGet();
+        stats.dispatched.increment();
+        if (message.getId() != null) {
+            Assignment previous = assignments.put(message.getId(), new Assignment(target.getId(), System.nanoTime()));
+            if (previous != null) {
+                release(previous, false);
+            }
+        }
+
+        connectionManager.sendMessageToSession(target, message);
+        return target;
+    }
+
+    /**
+     * 请求完成（收到响应、出错或超时），更新客户端的负载和耗时；重复调用时忽略
+     */
+    public void complete(String messageId, boolean success) {
+        Assignment assignment = messageId != null ? assignments.remove(messageId) : null;
+        if (assignment != null) {
+            release(assignment, success);
+        }
+    }
+
+    /**
+     * 获取处理请求的客户端sessionId
+     */
+    public String getAssignedClient(String messageId) {
+        Assignment assignment = messageId != null ? assignments.get(messageId) : null;
+        return assignment != null ? assignment.sessionId : null;
+    }
+
+    /**
+     * 客户端断开，返回分配给它且尚未完成的请求ID
+     */
+    public List<String> removeClient(WebSocketSession session) {
+        String sessionId = session.getId();
+        clients.remove(sessionId);
+        stickyRoutes.values().removeIf(route -> route.sessionId.equals(sessionId));
+
+        List<String> orphaned = new ArrayList<>();
+        assignments.entrySet().removeIf(entry -> {
+            if (entry.getValue().sessionId.equals(sessionId)) {
+                orphaned.add(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+        return orphaned;
+    }
+
+    /**
+     * 清理超时的请求和过期的对话绑定
+     */
+    @Scheduled(fixedDelayString = "${app.chat.scheduler.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        long assignmentTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(assignmentTimeoutMs);
+        for (Map.Entry<String, Assignment> entry : assignments.entrySet()) {
+            if (now - entry.getValue().startNanos > assignmentTimeoutNanos) {
+                complete(entry.getKey(), false);
+            }
+        }
+
+        long stickyTtlNanos = TimeUnit.MILLISECONDS.toNanos(stickyTtlMs);
+        stickyRoutes.values().removeIf(route -> now - route.createdNanos > stickyTtlNanos);
+    }
+
+    /**
+     * 各客户端的负载统计
+     */
+    public List<Map<String, Object>> getClientStats() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, ClientStats> entry : clients.entrySet()) {
+            ClientStats stats = entry.getValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("sessionId", entry.getKey());
+            item.put("inFlight", stats.inFlight.get());
+            item.put("latencyMs", Math.round(stats.latencyMs));
+            item.put("dispatched", stats.dispatched.sum());
+            item.put("failed", stats.failed.sum());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private int getTotalInFlight() {
+        int total = 0;
+        for (ClientStats stats : clients.values()) {
+            total += stats.inFlight.get();
+        }
+        return total;
+    }
+
+    private WebSocketSession choose(List<WebSocketSession> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        if (strategy == Strategy.POWER_OF_TWO) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(candidates.size());
+            int second = random.nextInt(candidates.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            WebSocketSession a = candidates.get(first);
+            WebSocketSession b = candidates.get(second);
+            return score(a) <= score(b) ? a : b;
+        }
+
+        WebSocketSession best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (WebSocketSession candidate : candidates) {
+            double score = score(candidate);
+            if (score < bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 负载评分：加上本次请求后的进行中请求数乘以平均耗时，未处理过请求的客户端按1ms计
+     */
+    private double score(WebSocketSession session) {
+        ClientStats stats = getStats(session);
+        return (stats.inFlight.get() + 1) * Math.max(stats.latencyMs, 1.0);
+    }
+
+    private ClientStats getStats(WebSocketSession session) {
+        return clients.computeIfAbsent(session.getId(), id -> new ClientStats());
+    }
+
+    private void release(Assignment assignment, boolean success) {
+        ClientStats stats = clients.get(assignment.sessionId);
+        if (stats == null) {
+            return;
+        }
+        stats.inFlight.decrementAndGet();
+        long elapsedNanos = System.nanoTime() - assignment.startNanos;
+        stats.recordLatency(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        (success ? successTimer : failureTimer).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            stats.failed.increment();
+        }
+    }
+
+    private Timer latencyTimer(String outcome) {
+        return Timer.builder("app.chat.client.latency")
+            .description("本地客户端处理请求的耗时")
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    private String getConversationId(ChatMessage message) {
+        Object conversationId = message.getData() != null ? message.getData().get("conversationId") : null;
+        return conversationId != null ? conversationId.toString() : null;
+    }
+
+    /**
+     * 单个客户端的负载
+     */
+    private static class ClientStats {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder dispatched = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        volatile double latencyMs = 0;
+
+        synchronized void recordLatency(long elapsedMs) {
+            latencyMs = latencyMs == 0 ? elapsedMs : latencyMs + LATENCY_EWMA_ALPHA * (elapsedMs - latencyMs);
+        }
+    }
+
+    /**
+     * 已分配的请求
+     */
+    private static class Assignment {
+        final String sessionId;
+        final long startNanos;
+
+        Assignment(String sessionId, long startNanos) {
+            this.sessionId = sessionId;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * 对话与客户端的绑定
+     */
+    private static class StickyRoute {
+        final String sessionId;
+        final long createdNanos = System.nanoTime();
+
+        StickyRoute(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+}
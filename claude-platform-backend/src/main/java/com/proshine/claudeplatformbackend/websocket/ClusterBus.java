@@ -0,0 +1,52 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 集群总线
+ * 多个后端实例之间转发WebSocket消息和会话目录，连接在不同实例上的用户和本地客户端可以互相通信；
+ * 同一对节点之间的消息按发送顺序到达，节点不可达时消息直接丢弃，由调用方的超时处理
+ */
+public interface ClusterBus {
+
+    /**
+     * 当前节点ID
+     */
+    String getNodeId();
+
+    /**
+     * 当前可达的其他节点
+     */
+    Set<String> getMembers();
+
+    /**
+     * 发送给指定节点，节点不可达或发送队列已满时返回false
+     */
+    boolean send(String nodeId, ClusterMessage message);
+
+    /**
+     * 发送给所有其他节点
+     */
+    void broadcast(ClusterMessage message);
+
+    /**
+     * 注册收到其他节点消息时的回调，回调在总线的接收线程上执行，不应阻塞
+     */
+    void subscribe(Consumer<ClusterMessage> listener);
+
+    /**
+     * 注册节点加入和离开时的回调
+     */
+    void addMembershipListener(MembershipListener listener);
+
+    /**
+     * 节点加入和离开的回调
+     */
+    interface MembershipListener {
+
+        void memberJoined(String nodeId);
+
+        void memberLeft(String nodeId);
+    }
+}
@@ -0,0 +1,54 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 集群总线上节点之间传递的消息
+ */
+@Data
+@NoArgsConstructor
+public class ClusterMessage {
+
+    private String type;
+    private String sourceNode;
+    private String userId;
+    private List<String> userIds;
+    private Integer clientCount;
+    private String configKey;
+    private String searchIndex;
+    private String documentId;
+    private Long tokens;
+    private ChatMessage message;
+
+    // 消息类型常量
+    public static final String TYPE_USER_MESSAGE = "user_message"; // 发给目标节点上某个用户的所有连接
+    public static final String TYPE_BROADCAST = "broadcast"; // 发给目标节点上的所有用户
+    public static final String TYPE_CHAT_REQUEST = "chat_request"; // 转发给有本地客户端的节点处理
+    public static final String TYPE_CHAT_REPLY = "chat_reply"; // 本地客户端的响应、片段和错误，回传给发起请求的节点
+    public static final String TYPE_DIRECTORY_SNAPSHOT = "directory_snapshot"; // 节点上的全部用户和客户端数
+    public static final String TYPE_DIRECTORY_SNAPSHOT_REQUEST = "directory_snapshot_request"; // 请求对方回复完整快照
+    public static final String TYPE_USER_ONLINE = "user_online";
+    public static final String TYPE_USER_OFFLINE = "user_offline";
+    public static final String TYPE_CLIENTS = "clients"; // 节点上的本地客户端数变化
+    public static final String TYPE_CONFIG_CHANGED = "config_changed";
+    public static final String TYPE_USER_INVALIDATED = "user_invalidated"; // 用户信息变更，清除缓存的Token
+    public static final String TYPE_QUOTA_USED = "quota_used"; // 其他节点提交的Token用量
+    public static final String TYPE_QUOTA_LIMIT = "quota_limit"; // 用户额度变更，tokens为空时清除计数
+    public static final String TYPE_SEARCH_CHANGED = "search_changed"; // 搜索索引中的文档变更
+
+    public static ClusterMessage of(String type) {
+        ClusterMessage message = new ClusterMessage();
+        message.setType(type);
+        return message;
+    }
+
+    public static ClusterMessage chat(String type, String userId, ChatMessage chatMessage) {
+        ClusterMessage message = of(type);
+        message.setUserId(userId);
+        message.setMessage(chatMessage);
+        return message;
+    }
+}
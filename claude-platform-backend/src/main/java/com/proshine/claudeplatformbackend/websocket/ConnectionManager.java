@@ -1,19 +1,58 @@
 package com.proshine.claudeplatformbackend.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.PingMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class ConnectionManager {
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private ChatMessageCodec codec;
+    
+    @Autowired
+    @Qualifier("websocketSendExecutor")
+    private Executor websocketSendExecutor;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ClusterBus clusterBus;
+    
+    @Autowired
+    private SessionDirectory sessionDirectory;
+    
+    @Value("${app.websocket.outbound.queue-capacity:256}")
+    private int outboundQueueCapacity;
+    
+    @Value("${app.websocket.outbound.overflow-policy:DROP_OLDEST}")
+    private OutboundSession.OverflowPolicy overflowPolicy;
+    
+    // 单条消息发送超过该时间仍未完成时断开连接，0表示不限制
+    @Value("${app.websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
     
     // 用户连接映射 userId -> sessions
     private final Map<String, CopyOnWriteArraySet<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
@@ -27,10 +66,51 @@ public class ConnectionManager {
     // session类型映射
     private final Map<WebSocketSession, String> sessionTypes = new ConcurrentHashMap<>();
     
+    // 每个session的发送队列
+    private final Map<WebSocketSession, OutboundSession> outboundSessions = new ConcurrentHashMap<>();
+    
+    private OutboundSession.Counters outboundCounters;
+    
+    @PostConstruct
+    public void initMetrics() {
+        outboundCounters = new OutboundSession.Counters(
+            Timer.builder("app.websocket.queue.wait")
+                .description("WebSocket消息在发送队列中等待的时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry),
+            Timer.builder("app.websocket.send")
+                .description("WebSocket消息写入连接的时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        
+        Gauge.builder("app.websocket.sessions", sessionToUser, Map::size)
+            .description("当前WebSocket连接数")
+            .tag("type", ChatMessage.CLIENT_TYPE_USER)
+            .register(meterRegistry);
+        Gauge.builder("app.websocket.sessions", clientSessions, Set::size)
+            .description("当前WebSocket连接数")
+            .tag("type", ChatMessage.CLIENT_TYPE_CLIENT)
+            .register(meterRegistry);
+        Gauge.builder("app.websocket.outbound.queued", this, ConnectionManager::getQueuedCount)
+            .description("所有发送队列中等待发送的消息数")
+            .register(meterRegistry);
+        
+        registerOutboundCounter("enqueued", outboundCounters.enqueued);
+        registerOutboundCounter("sent", outboundCounters.sent);
+        registerOutboundCounter("dropped", outboundCounters.dropped);
+        registerOutboundCounter("coalesced", outboundCounters.coalesced);
+        FunctionCounter.builder("app.websocket.outbound.disconnects", outboundCounters.disconnected, LongAdder::sum)
+            .description("因接收过慢被断开的连接数")
+            .register(meterRegistry);
+        
+        clusterBus.subscribe(this::onClusterMessage);
+    }
+    
     public void addUserSession(String userId, WebSocketSession session) {
         userSessions.computeIfAbsent(userId, k -> new CopyOnWriteArraySet<>()).add(session);
         sessionToUser.put(session, userId);
         sessionTypes.put(session, ChatMessage.CLIENT_TYPE_USER);
+        sessionDirectory.userConnected(userId);
         
         System.out.println("用户连接: " + userId + ", 会话ID: " + session.getId());
     }
@@ -38,11 +118,17 @@ public class ConnectionManager {
     public void addClientSession(WebSocketSession session) {
         clientSessions.add(session);
         sessionTypes.put(session, ChatMessage.CLIENT_TYPE_CLIENT);
+        sessionDirectory.clientsChanged(clientSessions.size());
         
         System.out.println("本地客户端连接: " + session.getId());
     }
     
     public void removeSession(WebSocketSession session) {
+        OutboundSession outbound = outboundSessions.remove(session);
+        if (outbound != null) {
+            outbound.discard();
+        }
+        
         String userId = sessionToUser.remove(session);
         String sessionType = sessionTypes.remove(session);
         
@@ -52,67 +138,121 @@ public class ConnectionManager {
                 sessions.remove(session);
                 if (sessions.isEmpty()) {
                     userSessions.remove(userId);
+                    sessionDirectory.userDisconnected(userId);
                 }
             }
             System.out.println("用户断开连接: " + userId + ", 会话ID: " + session.getId());
         } else if (ChatMessage.CLIENT_TYPE_CLIENT.equals(sessionType)) {
             clientSessions.remove(session);
+            sessionDirectory.clientsChanged(clientSessions.size());
             System.out.println("本地客户端断开连接: " + session.getId());
         }
     }
     
+    /**
+     * 发给用户在所有节点上的连接
+     */
     public void sendMessageToUser(String userId, ChatMessage message) {
+        sendMessageToLocalUser(userId, message);
+        
+        Set<String> nodes = sessionDirectory.getUserNodes(userId);
+        if (!nodes.isEmpty()) {
+            ClusterMessage clusterMessage = ClusterMessage.chat(ClusterMessage.TYPE_USER_MESSAGE, userId, message);
+            for (String nodeId : nodes) {
+                clusterBus.send(nodeId, clusterMessage);
+            }
+        }
+    }
+    
+    private void sendMessageToLocalUser(String userId, ChatMessage message) {
         CopyOnWriteArraySet<WebSocketSession> sessions = userSessions.get(userId);
         if (sessions != null) {
-            String messageJson = convertToJson(message);
-            if (messageJson != null) {
-                sessions.forEach(session -> sendMessage(session, messageJson));
-            }
+            EncodedMessage encoded = new EncodedMessage(message);
+            sessions.forEach(session -> sendMessage(session, encoded));
         }
     }
     
     public void sendMessageToClients(ChatMessage message) {
-        String messageJson = convertToJson(message);
-        if (messageJson != null) {
-            clientSessions.forEach(session -> sendMessage(session, messageJson));
-        }
+        EncodedMessage encoded = new EncodedMessage(message);
+        clientSessions.forEach(session -> sendMessage(session, encoded));
     }
     
     public void sendMessageToSession(WebSocketSession session, ChatMessage message) {
-        String messageJson = convertToJson(message);
-        if (messageJson != null) {
-            sendMessage(session, messageJson);
-        }
+        sendMessage(session, new EncodedMessage(message));
     }
     
+    /**
+     * 发给所有节点上的所有用户
+     */
     public void broadcastToAllUsers(ChatMessage message) {
-        String messageJson = convertToJson(message);
-        if (messageJson != null) {
-            userSessions.values().forEach(sessions -> 
-                sessions.forEach(session -> sendMessage(session, messageJson))
-            );
+        broadcastToLocalUsers(message);
+        clusterBus.broadcast(ClusterMessage.chat(ClusterMessage.TYPE_BROADCAST, null, message));
+    }
+    
+    private void broadcastToLocalUsers(ChatMessage message) {
+        EncodedMessage encoded = new EncodedMessage(message);
+        userSessions.values().forEach(sessions -> 
+            sessions.forEach(session -> sendMessage(session, encoded))
+        );
+    }
+    
+    /**
+     * 其他节点转发来的消息只发给当前节点上的连接，不再继续转发
+     */
+    private void onClusterMessage(ClusterMessage clusterMessage) {
+        if (ClusterMessage.TYPE_USER_MESSAGE.equals(clusterMessage.getType())) {
+            sendMessageToLocalUser(clusterMessage.getUserId(), clusterMessage.getMessage());
+        } else if (ClusterMessage.TYPE_BROADCAST.equals(clusterMessage.getType())) {
+            broadcastToLocalUsers(clusterMessage.getMessage());
+        }
+    }
+    
+    /**
+     * 放入session的发送队列，由发送线程池异步发送
+     */
+    private void sendMessage(WebSocketSession session, EncodedMessage encoded) {
+        if (!session.isOpen()) {
+            return;
+        }
+        WebSocketMessage<?> payload = encoded.forSession(session);
+        if (payload != null) {
+            enqueue(session, payload, encoded.message.getType());
         }
     }
     
-    private void sendMessage(WebSocketSession session, String message) {
+    /**
+     * 发送WebSocket协议层的ping，对方回复的pong会交给ChatWebSocketHandler，用于检测空闲连接是否仍然可用
+     */
+    public void sendPing(WebSocketSession session) {
         if (session.isOpen()) {
-            try {
-                session.sendMessage(new TextMessage(message));
-            } catch (IOException e) {
-                System.err.println("发送WebSocket消息失败: " + e.getMessage());
-                // 如果发送失败，可能连接已断开，移除该session
-                removeSession(session);
-            }
+            enqueue(session, new PingMessage(), ChatMessage.TYPE_HEARTBEAT);
         }
     }
     
-    private String convertToJson(ChatMessage message) {
-        try {
-            return objectMapper.writeValueAsString(message);
-        } catch (Exception e) {
-            System.err.println("转换WebSocket消息为JSON失败: " + e.getMessage());
-            return null;
+    private void enqueue(WebSocketSession session, WebSocketMessage<?> payload, String type) {
+        // 先直接查找，已有发送队列时不分配computeIfAbsent的lambda
+        OutboundSession outbound = outboundSessions.get(session);
+        if (outbound == null) {
+            outbound = outboundSessions.computeIfAbsent(session, s -> new OutboundSession(
+                s, websocketSendExecutor, outboundQueueCapacity, overflowPolicy, sendTimeLimitMs,
+                outboundCounters, this::removeSession));
         }
+        outbound.enqueue(payload, type);
+    }
+    
+    private int getQueuedCount() {
+        int queued = 0;
+        for (OutboundSession outbound : outboundSessions.values()) {
+            queued += outbound.getQueueDepth();
+        }
+        return queued;
+    }
+    
+    private void registerOutboundCounter(String result, LongAdder counter) {
+        FunctionCounter.builder("app.websocket.outbound.messages", counter, LongAdder::sum)
+            .description("WebSocket发送队列的消息数")
+            .tag("result", result)
+            .register(meterRegistry);
     }
     
     public int getUserConnectionCount() {
@@ -132,6 +272,10 @@ public class ConnectionManager {
         return !clientSessions.isEmpty();
     }
     
+    public Set<WebSocketSession> getClientSessions() {
+        return Collections.unmodifiableSet(clientSessions);
+    }
+    
     public String getUserIdBySession(WebSocketSession session) {
         return sessionToUser.get(session);
     }
@@ -139,4 +283,67 @@ public class ConnectionManager {
     public String getSessionType(WebSocketSession session) {
         return sessionTypes.get(session);
     }
-}
\ No newline at end of file
+    
+    /**
+     * 发送队列统计
+     */
+    public Map<String, Object> getOutboundStats() {
+        int totalQueued = 0;
+        int maxQueueDepth = 0;
+        for (OutboundSession outbound : outboundSessions.values()) {
+            int depth = outbound.getQueueDepth();
+            totalQueued += depth;
+            maxQueueDepth = Math.max(maxQueueDepth, depth);
+        }
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", outboundSessions.size());
+        stats.put("queued", totalQueued);
+        stats.put("maxQueueDepth", maxQueueDepth);
+        stats.put("queueCapacity", outboundQueueCapacity);
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("enqueued", outboundCounters.enqueued.sum());
+        stats.put("sent", outboundCounters.sent.sum());
+        stats.put("dropped", outboundCounters.dropped.sum());
+        stats.put("coalesced", outboundCounters.coalesced.sum());
+        stats.put("disconnected", outboundCounters.disconnected.sum());
+        return stats;
+    }
+    
+    /**
+     * 按连接协商的格式编码，同一条消息每种格式只编码一次，编码后的帧由所有接收者共用；
+     * 只在发送方线程内使用，二进制帧由OutboundSession发送时复制读取位置，不会互相影响
+     */
+    private class EncodedMessage {
+        final ChatMessage message;
+        private TextMessage text;
+        private BinaryMessage binary;
+        private boolean failed = false;
+        
+        EncodedMessage(ChatMessage message) {
+            this.message = message;
+        }
+        
+        WebSocketMessage<?> forSession(WebSocketSession session) {
+            if (failed) {
+                return null;
+            }
+            try {
+                if (ChatMessageCodec.formatOf(session) == ChatMessageCodec.Format.SMILE) {
+                    if (binary == null) {
+                        binary = new BinaryMessage(codec.toSmile(message));
+                    }
+                    return binary;
+                }
+                if (text == null) {
+                    text = new TextMessage(codec.toJson(message));
+                }
+                return text;
+            } catch (IOException e) {
+                failed = true;
+                System.err.println("编码WebSocket消息失败: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 哈希时间轮
+ * 按到期刻度把任务放入环形数组的槽中，登记和取消都是O(1)；由单个线程定期调用advance，
+ * 每经过一个刻度处理一个槽，取出其中已到期的任务。到期时间超过一圈的任务记录剩余圈数，每经过一次减一
+ */
+class HashedTimingWheel<T> {
+
+    private final long tickNanos;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+
+    // 每个槽是一个双向链表，以下状态在this锁内访问
+    private final Timeout<T>[] heads;
+    // 下一个要处理的刻度
+    private long currentTick = 0;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    HashedTimingWheel(long tickNanos, int wheelSize) {
+        int slots = Integer.highestOneBit(Math.max(wheelSize, 1) - 1) << 1;
+        this.tickNanos = tickNanos;
+        this.heads = (Timeout<T>[]) new Timeout<?>[Math.max(slots, 1)];
+        this.mask = heads.length - 1;
+    }
+
+    /**
+     * 登记一个任务，delayNanos后由advance返回
+     */
+    synchronized Timeout<T> schedule(T value, long delayNanos) {
+        long deadline = System.nanoTime() - startNanos + Math.max(delayNanos, 0);
+        // 向上取整，保证不会早于到期时间返回
+        long tick = Math.max((deadline + tickNanos - 1) / tickNanos, currentTick);
+        Timeout<T> timeout = new Timeout<>(value);
+        timeout.remainingRounds = (tick - currentTick) / heads.length;
+        timeout.slot = (int) (tick & mask);
+        link(timeout);
+        return timeout;
+    }
+
+    /**
+     * 取消任务，已到期或已取消时忽略
+     */
+    synchronized void cancel(Timeout<T> timeout) {
+        if (timeout.slot >= 0) {
+            unlink(timeout);
+        }
+    }
+
+    /**
+     * 处理到当前时间为止的所有刻度，返回到期的任务
+     */
+    synchronized List<T> advance() {
+        long now = System.nanoTime() - startNanos;
+        List<T> expired = new ArrayList<>();
+        while (currentTick * tickNanos <= now) {
+            Timeout<T> timeout = heads[(int) (currentTick & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    unlink(timeout);
+                    expired.add(timeout.value);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void link(Timeout<T> timeout) {
+        Timeout<T> head = heads[timeout.slot];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        heads[timeout.slot] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+
+    /**
+     * 时间轮中的一个任务
+     */
+    static class Timeout<T> {
+        final T value;
+        long remainingRounds;
+        int slot = -1;
+        Timeout<T> prev;
+        Timeout<T> next;
+
+        Timeout(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 进程内集群总线
+ * 单实例部署时组内只有自己，所有消息都在本节点处理；同一JVM中启动多个应用上下文时，
+ * 同组的上下文互相作为集群节点，用于测试多节点路由。每个节点用一个线程按顺序处理收到的消息
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.bus", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackClusterBus extends AbstractClusterBus {
+
+    // 组名 -> 节点ID -> 节点
+    private static final Map<String, Map<String, LoopbackClusterBus>> GROUPS = new HashMap<>();
+
+    @Value("${app.cluster.loopback.group:default}")
+    private String group;
+
+    private final ExecutorService inbound = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-loopback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 应用启动完成、所有组件都已注册回调后再加入组
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        List<LoopbackClusterBus> others;
+        synchronized (GROUPS) {
+            Map<String, LoopbackClusterBus> members = GROUPS.computeIfAbsent(group, g -> new LinkedHashMap<>());
+            others = new ArrayList<>(members.values());
+            members.put(getNodeId(), this);
+        }
+        for (LoopbackClusterBus other : others) {
+            other.execute(() -> other.fireMemberJoined(getNodeId()));
+            execute(() -> fireMemberJoined(other.getNodeId()));
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        List<LoopbackClusterBus> others;
+        synchronized (GROUPS) {
+            Map<String, LoopbackClusterBus> members = GROUPS.get(group);
+            if (members == null || !members.remove(getNodeId(), this)) {
+                others = Collections.emptyList();
+            } else {
+                others = new ArrayList<>(members.values());
+                if (members.isEmpty()) {
+                    GROUPS.remove(group);
+                }
+            }
+        }
+        for (LoopbackClusterBus other : others) {
+            other.execute(() -> other.fireMemberLeft(getNodeId()));
+        }
+        inbound.shutdown();
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        synchronized (GROUPS) {
+            Map<String, LoopbackClusterBus> members = GROUPS.get(group);
+            if (members == null || members.get(getNodeId()) != this) {
+                return Collections.emptySet();
+            }
+            Set<String> result = new HashSet<>(members.keySet());
+            result.remove(getNodeId());
+            return result;
+        }
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        LoopbackClusterBus target;
+        synchronized (GROUPS) {
+            Map<String, LoopbackClusterBus> members = GROUPS.get(group);
+            target = members != null ? members.get(nodeId) : null;
+        }
+        if (target == null || target == this) {
+            return false;
+        }
+
+        byte[] payload;
+        try {
+            payload = encode(message);
+        } catch (IOException e) {
+            System.err.println("编码集群消息失败: " + e.getMessage());
+            return false;
+        }
+        return target.execute(() -> {
+            try {
+                target.deliver(target.decode(payload));
+            } catch (IOException e) {
+                System.err.println("解码集群消息失败: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void broadcast(ClusterMessage message) {
+        for (String member : getMembers()) {
+            send(member, message);
+        }
+    }
+
+    private boolean execute(Runnable task) {
+        try {
+            inbound.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -3,11 +3,21 @@ package com.proshine.claudeplatformbackend.websocket;
 import com.proshine.claudeplatformbackend.security.JwtTokenProvider;
 import com.proshine.claudeplatformbackend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
+import javax.annotation.PostConstruct;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Component
 public class MessageHandler {
@@ -21,6 +31,33 @@ public class MessageHandler {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private ChatDispatcher chatDispatcher;
+    
+    @Autowired
+    private ClientScheduler clientScheduler;
+    
+    @Autowired
+    private ClusterBus clusterBus;
+    
+    @Autowired
+    private SessionDirectory sessionDirectory;
+    
+    @Autowired
+    private RequestRegistry requestRegistry;
+    
+    // 其他节点转发来的请求超过该时间仍未完成时不再等待回传
+    @Value("${app.chat.dispatch-timeout-ms:120000}")
+    private long dispatchTimeoutMs;
+    
+    // 请求ID -> 转发该请求的节点，本地客户端的响应回传给该节点
+    private final Map<String, RemoteOrigin> remoteOrigins = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        clusterBus.subscribe(this::onClusterMessage);
+    }
+    
     public void handleMessage(WebSocketSession session, ChatMessage message) {
         try {
             switch (message.getType()) {
@@ -36,6 +73,15 @@ public class MessageHandler {
                 case ChatMessage.TYPE_CHAT_RESPONSE:
                     handleChatResponseMessage(session, message);
                     break;
+                case ChatMessage.TYPE_CHAT_CHUNK:
+                    handleChatChunkMessage(session, message);
+                    break;
+                case ChatMessage.TYPE_CHAT_END:
+                    handleChatEndMessage(session, message);
+                    break;
+                case ChatMessage.TYPE_ERROR:
+                    handleErrorMessage(session, message);
+                    break;
                 default:
                     ChatMessage errorMessage = ChatMessage.error(message.getId(), "未知的消息类型: " + message.getType());
                     connectionManager.sendMessageToSession(session, errorMessage);
@@ -81,12 +127,8 @@ public class MessageHandler {
     }
     
     private void handleHeartbeatMessage(WebSocketSession session, ChatMessage message) {
-        // 更新会话的最后活跃时间
-        session.getAttributes().put("lastHeartbeat", System.currentTimeMillis());
-        
-        // 回复心跳响应
-        ChatMessage response = ChatMessage.heartbeat(message.getUserId());
-        response.setId(message.getId());
+        // 最后活跃时间由SessionReaper在收到消息时更新，这里只回复心跳响应
+        ChatMessage response = ChatMessage.heartbeatReply(message.getId(), message.getUserId());
         connectionManager.sendMessageToSession(session, response);
     }
     
@@ -94,10 +136,19 @@ public class MessageHandler {
         String sessionType = connectionManager.getSessionType(session);
         
         if (ChatMessage.CLIENT_TYPE_USER.equals(sessionType)) {
-            // 用户发送的聊天请求，转发给本地客户端
-            if (connectionManager.hasClientConnections()) {
-                connectionManager.sendMessageToClients(message);
-            } else {
+            // 用户发送的聊天请求，转发给负载最低的一个本地客户端
+            // 登记发起请求的连接，响应和流式片段只回传给该连接
+            if (message.getId() == null) {
+                message.setId(UUID.randomUUID().toString());
+            }
+            message.setUserId(connectionManager.getUserIdBySession(session));
+            if (!requestRegistry.register(message, session)) {
+                ChatMessage response = ChatMessage.error(message.getId(), "请求ID重复");
+                connectionManager.sendMessageToSession(session, response);
+                return;
+            }
+            if (!dispatchToClient(message)) {
+                requestRegistry.cancel(message.getId());
                 ChatMessage response = ChatMessage.error(message.getId(), "暂无可用的本地客户端");
                 connectionManager.sendMessageToSession(session, response);
             }
@@ -111,29 +162,249 @@ public class MessageHandler {
         String sessionType = connectionManager.getSessionType(session);
         
         if (ChatMessage.CLIENT_TYPE_CLIENT.equals(sessionType)) {
-            // 本地客户端发送的响应，转发给相应的用户
-            String userId = message.getUserId();
-            if (userId != null) {
-                connectionManager.sendMessageToUser(userId, message);
-            } else {
-                // 如果没有指定用户ID，广播给所有用户（一般不应该发生）
-                connectionManager.broadcastToAllUsers(message);
-            }
+            processChatResponse(message);
         } else {
             ChatMessage response = ChatMessage.error(message.getId(), "只有本地客户端可以发送聊天响应");
             connectionManager.sendMessageToSession(session, response);
         }
     }
     
-    public void sendChatRequestToClient(String userId, String content, Map<String, Object> data) {
-        if (connectionManager.hasClientConnections()) {
-            ChatMessage message = ChatMessage.chatRequest(userId, content, data);
-            connectionManager.sendMessageToClients(message);
+    private void processChatResponse(ChatMessage message) {
+        clientScheduler.complete(message.getId(), true);
+        if (replyToOrigin(message, true)) {
+            return;
+        }
+        RequestRegistry.InFlightRequest request = requestRegistry.complete(message.getId());
+        
+        // 由ChatService发起的请求，直接完成等待中的Future
+        if (chatDispatcher.complete(message)) {
+            return;
+        }
+        
+        // 用户直接发起的请求，转发给发起请求的连接
+        relayToOrigin(request, message);
+    }
+    
+    private void handleChatChunkMessage(WebSocketSession session, ChatMessage message) {
+        String sessionType = connectionManager.getSessionType(session);
+        
+        if (ChatMessage.CLIENT_TYPE_CLIENT.equals(sessionType)) {
+            processChatChunk(message);
+        } else {
+            ChatMessage response = ChatMessage.error(message.getId(), "只有本地客户端可以发送流式响应");
+            connectionManager.sendMessageToSession(session, response);
+        }
+    }
+    
+    private void handleChatEndMessage(WebSocketSession session, ChatMessage message) {
+        String sessionType = connectionManager.getSessionType(session);
+        
+        if (ChatMessage.CLIENT_TYPE_CLIENT.equals(sessionType)) {
+            processChatEnd(message);
         } else {
+            ChatMessage response = ChatMessage.error(message.getId(), "只有本地客户端可以发送流式响应");
+            connectionManager.sendMessageToSession(session, response);
+        }
+    }
+    
+    private void processChatChunk(ChatMessage message) {
+        if (replyToOrigin(message, false)) {
+            return;
+        }
+        RequestRegistry.InFlightRequest request = requestRegistry.chunk(message.getId());
+        if (chatDispatcher.appendChunk(message)) {
+            return;
+        }
+        // 片段到达后立即转发给用户，不等待完整响应
+        relayToOrigin(request, message);
+    }
+    
+    private void processChatEnd(ChatMessage message) {
+        clientScheduler.complete(message.getId(), true);
+        if (replyToOrigin(message, true)) {
+            return;
+        }
+        RequestRegistry.InFlightRequest request = requestRegistry.complete(message.getId());
+        if (chatDispatcher.complete(message)) {
+            return;
+        }
+        relayToOrigin(request, message);
+    }
+    
+    /**
+     * 把本地客户端的消息转发给发起请求的用户连接，该连接已关闭时转发给同一用户的其他连接；
+     * 没有登记的请求不转发，避免把响应发给其他用户
+     */
+    private void relayToOrigin(RequestRegistry.InFlightRequest request, ChatMessage message) {
+        if (request == null) {
+            requestRegistry.reportUnmatched(message);
+            return;
+        }
+        if (request.origin == null) {
+            // ChatService发起、已经取消或超时的请求
+            return;
+        }
+        message.setUserId(request.userId);
+        if (request.origin.isOpen()) {
+            connectionManager.sendMessageToSession(request.origin, message);
+        } else if (request.userId != null) {
+            connectionManager.sendMessageToUser(request.userId, message);
+        }
+    }
+    
+    private void handleErrorMessage(WebSocketSession session, ChatMessage message) {
+        String sessionType = connectionManager.getSessionType(session);
+        
+        // 本地客户端处理请求失败时回复的错误消息
+        if (ChatMessage.CLIENT_TYPE_CLIENT.equals(sessionType)) {
+            processChatError(message);
+            return;
+        }
+        System.err.println("收到未匹配请求的错误消息: " + message.getId() + ", " + message.getContent());
+    }
+    
+    private void processChatError(ChatMessage message) {
+        clientScheduler.complete(message.getId(), false);
+        if (replyToOrigin(message, true)) {
+            return;
+        }
+        RequestRegistry.InFlightRequest request = requestRegistry.complete(message.getId());
+        if (chatDispatcher.fail(message.getId(), message.getContent())) {
+            return;
+        }
+        relayToOrigin(request, message);
+    }
+    
+    /**
+     * 交给本地客户端处理；当前节点没有本地客户端时转发给有客户端的其他节点
+     */
+    private boolean dispatchToClient(ChatMessage message) {
+        if (clientScheduler.dispatch(message) != null) {
+            return true;
+        }
+        String nodeId = sessionDirectory.chooseClientNode();
+        return nodeId != null && clusterBus.send(nodeId,
+            ClusterMessage.chat(ClusterMessage.TYPE_CHAT_REQUEST, message.getUserId(), message));
+    }
+    
+    /**
+     * 其他节点转发来的请求，把本地客户端的消息回传给该节点；terminal表示请求已结束
+     */
+    private boolean replyToOrigin(ChatMessage message, boolean terminal) {
+        String messageId = message.getId();
+        if (messageId == null) {
+            return false;
+        }
+        RemoteOrigin origin = terminal ? remoteOrigins.remove(messageId) : remoteOrigins.get(messageId);
+        if (origin == null) {
+            return false;
+        }
+        if (message.getUserId() == null) {
+            message.setUserId(origin.userId);
+        }
+        clusterBus.send(origin.nodeId, ClusterMessage.chat(ClusterMessage.TYPE_CHAT_REPLY, origin.userId, message));
+        return true;
+    }
+    
+    private void onClusterMessage(ClusterMessage clusterMessage) {
+        ChatMessage message = clusterMessage.getMessage();
+        if (ClusterMessage.TYPE_CHAT_REQUEST.equals(clusterMessage.getType())) {
+            // 只交给当前节点的本地客户端，不再继续转发
+            RemoteOrigin origin = new RemoteOrigin(clusterMessage.getSourceNode(), message.getUserId());
+            remoteOrigins.put(message.getId(), origin);
+            if (clientScheduler.dispatch(message) == null) {
+                remoteOrigins.remove(message.getId(), origin);
+                ChatMessage error = ChatMessage.error(message.getId(), "暂无可用的本地客户端");
+                error.setUserId(message.getUserId());
+                clusterBus.send(origin.nodeId,
+                    ClusterMessage.chat(ClusterMessage.TYPE_CHAT_REPLY, message.getUserId(), error));
+            }
+        } else if (ClusterMessage.TYPE_CHAT_REPLY.equals(clusterMessage.getType())) {
+            // 其他节点的本地客户端回传的消息，按当前节点的客户端消息处理
+            switch (message.getType()) {
+                case ChatMessage.TYPE_CHAT_RESPONSE:
+                    processChatResponse(message);
+                    break;
+                case ChatMessage.TYPE_CHAT_CHUNK:
+                    processChatChunk(message);
+                    break;
+                case ChatMessage.TYPE_CHAT_END:
+                    processChatEnd(message);
+                    break;
+                case ChatMessage.TYPE_ERROR:
+                    processChatError(message);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * 清理超时仍未完成的转发请求
+     */
+    @Scheduled(fixedDelayString = "${app.chat.scheduler.sweep-interval-ms:60000}")
+    public void sweepRemoteOrigins() {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(dispatchTimeoutMs);
+        long now = System.nanoTime();
+        remoteOrigins.values().removeIf(origin -> now - origin.createdNanos > timeoutNanos);
+    }
+    
+    /**
+     * 发送聊天请求给本地客户端，返回的Future在收到相同id的响应时完成
+     */
+    public CompletableFuture<ChatMessage> sendChatRequestToClient(String userId, String content, Map<String, Object> data) {
+        return sendChatRequestToClient(ChatMessage.chatRequest(userId, content, data), null);
+    }
+    
+    /**
+     * 发送聊天请求给本地客户端，流式片段到达时回调chunkListener
+     */
+    public CompletableFuture<ChatMessage> sendChatRequestToClient(ChatMessage message, Consumer<ChatMessage> chunkListener) {
+        if (!hasAvailableClients()) {
             System.err.println("无可用的本地客户端来处理聊天请求");
+            CompletableFuture<ChatMessage> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("暂无可用的本地客户端"));
+            return future;
+        }
+        
+        if (!requestRegistry.register(message, null)) {
+            CompletableFuture<ChatMessage> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("请求ID重复"));
+            return future;
+        }
+        CompletableFuture<ChatMessage> future = chatDispatcher.register(message.getId(), message.getUserId(), chunkListener);
+        // 超时或取消时也释放客户端负载，并移出请求登记表
+        future.whenComplete((response, error) -> {
+            clientScheduler.complete(message.getId(), error == null);
+            if (error != null) {
+                requestRegistry.abandon(message.getId(), error instanceof TimeoutException);
+            }
+        });
+        if (!dispatchToClient(message)) {
+            requestRegistry.cancel(message.getId());
+            chatDispatcher.fail(message.getId(), "暂无可用的本地客户端");
+        }
+        return future;
+    }
+    
+    /**
+     * 连接关闭时调用，本地客户端断开后让分配给它的请求立即失败，不再等待超时
+     */
+    public void handleSessionClosed(WebSocketSession session) {
+        if (!ChatMessage.CLIENT_TYPE_CLIENT.equals(connectionManager.getSessionType(session))) {
+            return;
+        }
+        List<String> orphaned = clientScheduler.removeClient(session);
+        for (String messageId : orphaned) {
+            processChatError(ChatMessage.error(messageId, "本地客户端已断开连接"));
         }
     }
     
+    public boolean cancelChatRequest(String messageId) {
+        return chatDispatcher.cancel(messageId);
+    }
+    
     public void sendChatResponseToUser(String userId, String messageId, String content, Map<String, Object> data) {
         ChatMessage message = ChatMessage.chatResponse(messageId, content, data);
         message.setUserId(userId);
@@ -141,14 +412,33 @@ public class MessageHandler {
     }
     
     public boolean hasAvailableClients() {
-        return connectionManager.hasClientConnections();
+        return connectionManager.hasClientConnections() || sessionDirectory.hasRemoteClients();
     }
     
     public Map<String, Object> getConnectionStatus() {
         Map<String, Object> status = new HashMap<>();
         status.put("userConnections", connectionManager.getUserConnectionCount());
         status.put("clientConnections", connectionManager.getClientConnectionCount());
-        status.put("hasClients", connectionManager.hasClientConnections());
+        status.put("hasClients", hasAvailableClients());
+        status.put("pendingRequests", chatDispatcher.getPendingCount());
+        status.put("inFlightRequests", requestRegistry.getInFlightCount());
+        status.put("outbound", connectionManager.getOutboundStats());
+        status.put("clients", clientScheduler.getClientStats());
+        status.put("cluster", sessionDirectory.getStats());
         return status;
     }
+    
+    /**
+     * 转发请求的节点
+     */
+    private static class RemoteOrigin {
+        final String nodeId;
+        final String userId;
+        final long createdNanos = System.nanoTime();
+        
+        RemoteOrigin(String nodeId, String userId) {
+            this.nodeId = nodeId;
+            this.userId = userId;
+        }
+    }
 }
\ No newline at end of file
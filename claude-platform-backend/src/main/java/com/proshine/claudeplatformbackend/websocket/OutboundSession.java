@@ -0,0 +1,281 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 单个WebSocket会话的发送队列
+ * 消息先进入有界队列，由共享线程池按会话串行发送，广播线程不会被慢连接阻塞，
+ * 同一会话也不会被多个线程同时发送；队列满时按OverflowPolicy处理。
+ * 只有心跳可以丢弃，聊天消息丢失会让响应不完整，队列满且没有可丢弃的心跳时断开连接
+ */
+class OutboundSession {
+
+    /**
+     * 队列满时的处理策略
+     */
+    enum OverflowPolicy {
+        // 丢弃最早的心跳，没有心跳可丢弃时断开连接
+        DROP_OLDEST,
+        // 同一时间只保留一条心跳，队列仍满时按DROP_OLDEST处理
+        COALESCE_HEARTBEAT,
+        // 断开连接
+        DISCONNECT
+    }
+
+    // 每次调度最多连续发送的消息数，避免单个会话长期占用发送线程
+    private static final int DRAIN_BATCH_SIZE = 64;
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long sendTimeLimitMs;
+    private final Counters counters;
+    private final Consumer<WebSocketSession> onSendFailure;
+
+    // 以下两个字段在this锁内访问
+    private final Deque<Outbound> queue = new ArrayDeque<>();
+    private boolean draining = false;
+
+    // 当前消息开始发送的时间，空闲时为0
+    private volatile long sendStartTime = 0;
+    private volatile boolean closing = false;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    OutboundSession(WebSocketSession session, Executor executor, int capacity, OverflowPolicy policy,
+                    long sendTimeLimitMs, Counters counters, Consumer<WebSocketSession> onSendFailure) {
+        this.session = session;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.counters = counters;
+        this.onSendFailure = onSendFailure;
+    }
+
+    /**
+     * 加入发送队列，返回是否已接收
+     */
+    boolean enqueue(WebSocketMessage<?> payload, String type) {
+        if (closing || !session.isOpen()) {
+            return false;
+        }
+
+        // 上一条消息发送超时说明客户端已经无法及时接收
+        long startTime = sendStartTime;
+        if (startTime > 0 && sendTimeLimitMs > 0 && System.currentTimeMillis() - startTime > sendTimeLimitMs) {
+            disconnect("发送超时");
+            return false;
+        }
+
+        boolean heartbeat = ChatMessage.TYPE_HEARTBEAT.equals(type);
+        boolean overflow = false;
+        boolean schedule = false;
+        synchronized (this) {
+            if (policy == OverflowPolicy.COALESCE_HEARTBEAT && heartbeat && removeQueuedHeartbeat()) {
+                counters.coalesced.increment();
+            }
+            if (queue.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    overflow = true;
+                } else if (removeQueuedHeartbeat()) {
+                    countDropped();
+                } else if (heartbeat) {
+                    // 队列里都是聊天消息时丢弃新的心跳
+                    countDropped();
+                    return false;
+                } else {
+                    overflow = true;
+                }
+            }
+            if (!overflow) {
+                queue.addLast(new Outbound(payload, type));
+                counters.enqueued.increment();
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        }
+
+        if (overflow) {
+            disconnect("发送队列已满");
+            return false;
+        }
+        if (schedule) {
+            scheduleDrain();
+        }
+        return true;
+    }
+
+    int getQueueDepth() {
+        synchronized (this) {
+            return queue.size();
+        }
+    }
+
+    long getSentCount() {
+        return sent.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 丢弃未发送的消息，连接关闭时调用
+     */
+    void discard() {
+        closing = true;
+        synchronized (this) {
+            queue.clear();
+        }
+    }
+
+    private void scheduleDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                draining = false;
+            }
+            System.err.println("WebSocket发送任务被拒绝: " + session.getId());
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+            Outbound next;
+            synchronized (this) {
+                next = queue.pollFirst();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+            }
+
+            if (!session.isOpen()) {
+                discard();
+                synchronized (this) {
+                    draining = false;
+                }
+                return;
+            }
+
+            sendStartTime = System.currentTimeMillis();
+            long sendStartNanos = System.nanoTime();
+            counters.queueWait.record(sendStartNanos - next.enqueuedNanos, TimeUnit.NANOSECONDS);
+            try {
+                session.sendMessage(frameFor(next.payload));
+                counters.sendTime.record(System.nanoTime() - sendStartNanos, TimeUnit.NANOSECONDS);
+                sent.incrementAndGet();
+                counters.sent.increment();
+            } catch (IOException | IllegalStateException e) {
+                System.err.println("发送WebSocket消息失败: " + e.getMessage());
+                discard();
+                synchronized (this) {
+                    draining = false;
+                }
+                // 发送失败说明连接已断开
+                onSendFailure.accept(session);
+                return;
+            } finally {
+                sendStartTime = 0;
+            }
+        }
+
+        // 本批次发送完仍有消息时重新排队，让其他会话也能得到发送线程
+        scheduleDrain();
+    }
+
+    /**
+     * 同一个帧会放入多个会话的队列；二进制帧发送时会移动ByteBuffer的读取位置，每次发送使用独立的读取位置
+     */
+    private static WebSocketMessage<?> frameFor(WebSocketMessage<?> payload) {
+        if (payload instanceof BinaryMessage) {
+            return new BinaryMessage(((BinaryMessage) payload).getPayload().duplicate(), payload.isLast());
+        }
+        return payload;
+    }
+
+    private void countDropped() {
+        dropped.incrementAndGet();
+        counters.dropped.increment();
+    }
+
+    private boolean removeQueuedHeartbeat() {
+        Iterator<Outbound> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (ChatMessage.TYPE_HEARTBEAT.equals(iterator.next().type)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void disconnect(String reason) {
+        if (closing) {
+            return;
+        }
+        discard();
+        counters.disconnected.increment();
+        System.err.println("WebSocket连接接收过慢，断开连接: " + session.getId() + ", " + reason);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+        } catch (IOException e) {
+            onSendFailure.accept(session);
+        }
+    }
+
+    /**
+     * 待发送的消息
+     */
+    private static class Outbound {
+        final WebSocketMessage<?> payload;
+        final String type;
+        final long enqueuedNanos = System.nanoTime();
+
+        Outbound(WebSocketMessage<?> payload, String type) {
+            this.payload = payload;
+            this.type = type;
+        }
+    }
+
+    /**
+     * 所有会话共享的发送统计
+     */
+    static class Counters {
+        final LongAdder enqueued = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder disconnected = new LongAdder();
+        // 消息在队列中等待的时间
+        final Timer queueWait;
+        // 单条消息写入连接的时间
+        final Timer sendTime;
+
+        Counters(Timer queueWait, Timer sendTime) {
+            this.queueWait = queueWait;
+            this.sendTime = sendTime;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进行中的请求登记表
+ * 当前节点发给本地客户端（或转发给其他节点）的每个聊天请求按ChatMessage的id登记发起方，
+ * 响应只交给发起方，不依赖客户端回传的userId；用户发起的请求超过截止时间后移出登记表，每个流式片段把截止时间顺延一个超时周期，
+ * 超时时间到达时按截止时间重新判断；ChatService发起的请求由ChatDispatcher负责超时，结束时调用abandon移出。
+ * 移出后到达的响应记为迟到，从未登记过的记为无主，两者都只统计不转发
+ */
+@Component
+public class RequestRegistry {
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private ClientScheduler clientScheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 等待首个响应以及相邻两个片段之间的最长时间
+    @Value("${app.chat.dispatch-timeout-ms:120000}")
+    private long dispatchTimeoutMs;
+
+    // 时间轮每个刻度的长度，与检查任务的执行间隔一致
+    @Value("${app.chat.correlation.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${app.chat.correlation.wheel-size:512}")
+    private int wheelSize;
+
+    // 超时的请求ID保留多久，用于区分迟到和无主的响应
+    @Value("${app.chat.correlation.late-retention-ms:600000}")
+    private long lateRetentionMs;
+
+    private HashedTimingWheel<InFlightRequest> wheel;
+
+    // 请求ID -> 进行中的请求
+    private final Map<String, InFlightRequest> inFlight = new ConcurrentHashMap<>();
+
+    // 已超时的请求ID -> 超时时间
+    private final Map<String, Long> expired = new ConcurrentHashMap<>();
+
+    // 时间轮使用独立线程推进，不受Spring默认单线程调度器上其他定时任务的影响
+    private final ScheduledExecutorService tickScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-correlation-tick");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Timer firstChunkTimer;
+    private Timer completeTimer;
+    private Counter expiredCounter;
+    private Counter lateCounter;
+    private Counter orphanedCounter;
+
+    @PostConstruct
+    public void init() {
+        wheel = new HashedTimingWheel<>(TimeUnit.MILLISECONDS.toNanos(tickMs), wheelSize);
+
+        firstChunkTimer = latencyTimer("first_chunk");
+        completeTimer = latencyTimer("complete");
+        expiredCounter = Counter.builder("app.chat.correlation.expired")
+            .description("超过截止时间仍未收到响应的请求数")
+            .register(meterRegistry);
+        lateCounter = unmatchedCounter("late");
+        orphanedCounter = unmatchedCounter("orphaned");
+        Gauge.builder("app.chat.correlation.in-flight", inFlight, Map::size)
+            .description("已发出、尚未收到最终响应的请求数")
+            .register(meterRegistry);
+        tickScheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tickScheduler.shutdownNow();
+    }
+
+    /**
+     * 登记一个请求，origin为发起请求的用户连接，由ChatService发起时为null；ID已被占用时返回false
+     */
+    boolean register(ChatMessage request, WebSocketSession origin) {
+        InFlightRequest entry = new InFlightRequest(request.getId(), request.getUserId(), origin);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(dispatchTimeoutMs);
+        entry.deadlineNanos = entry.startNanos + timeoutNanos;
+        if (inFlight.putIfAbsent(entry.id, entry) != null) {
+            return false;
+        }
+        if (origin != null) {
+            entry.timeout = wheel.schedule(entry, timeoutNanos);
+        }
+        return true;
+    }
+
+    /**
+     * 收到流式片段，顺延截止时间，第一个片段记录首包耗时；请求未登记时返回null
+     */
+    InFlightRequest chunk(String messageId) {
+        InFlightRequest entry = messageId != null ? inFlight.get(messageId) : null;
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        entry.deadlineNanos = now + TimeUnit.MILLISECONDS.toNanos(dispatchTimeoutMs);
+        if (!entry.firstChunk) {
+            entry.firstChunk = true;
+            firstChunkTimer.record(now - entry.startNanos, TimeUnit.NANOSECONDS);
+        }
+        return entry;
+    }
+
+    /**
+     * 收到最终响应（完整响应、流式结束或错误），移出登记表并记录总耗时；请求未登记时返回null
+     */
+    InFlightRequest complete(String messageId) {
+        InFlightRequest entry = remove(messageId);
+        if (entry != null) {
+            completeTimer.record(System.nanoTime() - entry.startNanos, TimeUnit.NANOSECONDS);
+        }
+        return entry;
+    }
+
+    /**
+     * 请求没有发出去，直接移出登记表，不记录耗时
+     */
+    void cancel(String messageId) {
+        remove(messageId);
+    }
+
+    /**
+     * ChatService发起的请求没有收到最终响应就已结束（超时或被取消），移出登记表，之后到达的响应记为迟到
+     */
+    void abandon(String messageId, boolean timedOut) {
+        InFlightRequest entry = remove(messageId);
+        if (entry != null) {
+            expired.put(entry.id, System.nanoTime());
+            if (timedOut) {
+                expiredCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * 统计并记录没有对应请求的响应
+     */
+    void reportUnmatched(ChatMessage message) {
+        String messageId = message.getId();
+        boolean late = messageId != null && expired.containsKey(messageId);
+        (late ? lateCounter : orphanedCounter).increment();
+        // 流式片段逐个统计，只在最终响应时输出日志
+        if (!ChatMessage.TYPE_CHAT_CHUNK.equals(message.getType())) {
+            System.err.println((late ? "收到超时请求的响应，已丢弃: " : "收到未匹配请求的响应，已丢弃: ")
+                + messageId + ", 类型: " + message.getType());
+        }
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 处理超过截止时间的请求，并清理过期的超时记录
+     */
+    private void tick() {
+        // 任务抛出异常后不会再被调度，这里兜底记录
+        try {
+            long now = System.nanoTime();
+            for (InFlightRequest entry : wheel.advance()) {
+                if (inFlight.get(entry.id) != entry) {
+                    continue;
+                }
+                // 期间收到过片段时按顺延后的截止时间重新登记
+                long remainingNanos = entry.deadlineNanos - now;
+                if (remainingNanos > 0) {
+                    entry.timeout = wheel.schedule(entry, remainingNanos);
+                } else if (inFlight.remove(entry.id, entry)) {
+                    expire(entry, now);
+                }
+            }
+            long retentionNanos = TimeUnit.MILLISECONDS.toNanos(lateRetentionMs);
+            expired.values().removeIf(expiredNanos -> now - expiredNanos > retentionNanos);
+        } catch (RuntimeException e) {
+            System.err.println("请求超时检查失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 用户发起的请求超时：释放分配给本地客户端的负载并通知用户连接。
+     * 协议中没有取消消息，本地客户端仍可能继续处理，之后的响应按迟到丢弃
+     */
+    private void expire(InFlightRequest entry, long now) {
+        expired.put(entry.id, now);
+        expiredCounter.increment();
+        clientScheduler.complete(entry.id, false);
+        if (entry.origin.isOpen()) {
+            ChatMessage error = ChatMessage.error(entry.id, "本地客户端响应超时");
+            error.setUserId(entry.userId);
+            connectionManager.sendMessageToSession(entry.origin, error);
+        }
+    }
+
+    private InFlightRequest remove(String messageId) {
+        InFlightRequest entry = messageId != null ? inFlight.remove(messageId) : null;
+        if (entry != null) {
+            HashedTimingWheel.Timeout<InFlightRequest> timeout = entry.timeout;
+            if (timeout != null) {
+                wheel.cancel(timeout);
+            }
+        }
+        return entry;
+    }
+
+    private Timer latencyTimer(String phase) {
+        return Timer.builder("app.chat.response.latency")
+            .description("从发出请求到收到本地客户端响应的耗时")
+            .tag("phase", phase)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    private Counter unmatchedCounter(String reason) {
+        return Counter.builder("app.chat.response.unmatched")
+            .description("没有对应请求、已丢弃的响应消息数")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 一个进行中的请求
+     */
+    static class InFlightRequest {
+        final String id;
+        // 发起请求的用户，由服务端在收到请求时确定
+        final String userId;
+        final WebSocketSession origin;
+        final long startNanos = System.nanoTime();
+        volatile boolean firstChunk;
+        // 收到片段时顺延
+        volatile long deadlineNanos;
+        volatile HashedTimingWheel.Timeout<InFlightRequest> timeout;
+
+        InFlightRequest(String id, String userId, WebSocketSession origin) {
+            this.id = id;
+            this.userId = userId;
+            this.origin = origin;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 分布式会话目录
+ * 记录每个用户连接在哪些节点上、每个节点有多少本地客户端。每个节点只维护自己的部分，
+ * 变化时通过集群总线通知其他节点；节点加入时互相发送完整快照，节点离开时清除它的全部记录。
+ * 两个方向的连接可能只断开一个，重新加入时还会请求对方回复快照，对方不必感知到断开
+ */
+@Component
+public class SessionDirectory implements ClusterBus.MembershipListener {
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    // 当前节点上有连接的用户，修改和发送通知在this锁内，保证快照和增量通知的顺序
+    private final Set<String> localUsers = new HashSet<>();
+    private int localClients = 0;
+
+    // 用户ID -> 有该用户连接的其他节点
+    private final Map<String, Set<String>> userNodes = new ConcurrentHashMap<>();
+
+    // 节点ID -> 该节点上有连接的用户
+    private final Map<String, Set<String>> nodeUsers = new ConcurrentHashMap<>();
+
+    // 节点ID -> 该节点的本地客户端数
+    private final Map<String, Integer> nodeClients = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterBus.addMembershipListener(this);
+        clusterBus.subscribe(this::onClusterMessage);
+    }
+
+    /**
+     * 用户在当前节点上有了第一个连接
+     */
+    public synchronized void userConnected(String userId) {
+        if (localUsers.add(userId)) {
+            ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_USER_ONLINE);
+            message.setUserId(userId);
+            clusterBus.broadcast(message);
+        }
+    }
+
+    /**
+     * 用户在当前节点上的连接全部断开
+     */
+    public synchronized void userDisconnected(String userId) {
+        if (localUsers.remove(userId)) {
+            ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_USER_OFFLINE);
+            message.setUserId(userId);
+            clusterBus.broadcast(message);
+        }
+    }
+
+    /**
+     * 当前节点的本地客户端数变化
+     */
+    public synchronized void clientsChanged(int count) {
+        if (localClients != count) {
+            localClients = count;
+            ClusterMessage message = ClusterMessage.of(ClusterMessage.TYPE_CLIENTS);
+            message.setClientCount(count);
+            clusterBus.broadcast(message);
+        }
+    }
+
+    /**
+     * 有该用户连接的其他节点
+     */
+    public Set<String> getUserNodes(String userId) {
+        Set<String> nodes = userNodes.get(userId);
+        return nodes != null ? nodes : Collections.emptySet();
+    }
+
+    /**
+     * 随机选择一个有本地客户端的其他节点，没有时返回null
+     */
+    public String chooseClientNode() {
+        List<String> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : nodeClients.entrySet()) {
+            if (entry.getValue() > 0) {
+                candidates.add(entry.getKey());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    /**
+     * 其他节点上的客户端总数
+     */
+    public int getRemoteClientCount() {
+        int total = 0;
+        for (Integer count : nodeClients.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    public boolean hasRemoteClients() {
+        for (Integer count : nodeClients.values()) {
+            if (count > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 各节点的连接统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> nodes = new HashMap<>();
+        for (String nodeId : clusterBus.getMembers()) {
+            Map<String, Object> item = new HashMap<>();
+            Set<String> users = nodeUsers.get(nodeId);
+            item.put("users", users != null ? users.size() : 0);
+            item.put("clients", nodeClients.getOrDefault(nodeId, 0));
+            nodes.put(nodeId, item);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", clusterBus.getNodeId());
+        stats.put("members", nodes);
+        return stats;
+    }
+
+    @Override
+    public void memberJoined(String nodeId) {
+        sendSnapshot(nodeId);
+        clusterBus.send(nodeId, ClusterMessage.of(ClusterMessage.TYPE_DIRECTORY_SNAPSHOT_REQUEST));
+    }
+
+    @Override
+    public void memberLeft(String nodeId) {
+        removeNode(nodeId);
+    }
+
+    private void onClusterMessage(ClusterMessage message) {
+        String nodeId = message.getSourceNode();
+        switch (message.getType()) {
+            case ClusterMessage.TYPE_DIRECTORY_SNAPSHOT:
+                removeNode(nodeId);
+                for (String userId : message.getUserIds()) {
+                    addUser(nodeId, userId);
+                }
+                nodeClients.put(nodeId, message.getClientCount());
+                break;
+            case ClusterMessage.TYPE_DIRECTORY_SNAPSHOT_REQUEST:
+                sendSnapshot(nodeId);
+                break;
+            case ClusterMessage.TYPE_USER_ONLINE:
+                addUser(nodeId, message.getUserId());
+                break;
+            case ClusterMessage.TYPE_USER_OFFLINE:
+                removeUser(nodeId, message.getUserId());
+                break;
+            case ClusterMessage.TYPE_CLIENTS:
+                nodeClients.put(nodeId, message.getClientCount());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void sendSnapshot(String nodeId) {
+        ClusterMessage snapshot = ClusterMessage.of(ClusterMessage.TYPE_DIRECTORY_SNAPSHOT);
+        synchronized (this) {
+            snapshot.setUserIds(new ArrayList<>(localUsers));
+            snapshot.setClientCount(localClients);
+            clusterBus.send(nodeId, snapshot);
+        }
+    }
+
+    private void addUser(String nodeId, String userId) {
+        nodeUsers.computeIfAbsent(nodeId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+        userNodes.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(nodeId);
+    }
+
+    private void removeUser(String nodeId, String userId) {
+        Set<String> users = nodeUsers.get(nodeId);
+        if (users != null) {
+            users.remove(userId);
+        }
+        userNodes.computeIfPresent(userId, (k, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    private void removeNode(String nodeId) {
+        nodeClients.remove(nodeId);
+        Set<String> users = nodeUsers.remove(nodeId);
+        if (users != null) {
+            for (String userId : users) {
+                removeUser(nodeId, userId);
+            }
+        }
+    }
+}
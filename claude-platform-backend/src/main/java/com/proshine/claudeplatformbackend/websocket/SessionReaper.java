@@ -0,0 +1,244 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空闲连接清理
+ * 每个连接在时间轮中登记一个检查时间，收到任何消息（包括pong）只更新最后活跃时间，不改动时间轮；
+ * 检查时间到达时再根据最后活跃时间判断：超过超时时间则关闭连接，超过一半时发送一次ping探测，否则按剩余时间重新登记。
+ * 未认证的连接从建立时开始计时，期间发送的消息不会延长认证期限
+ */
+@Component
+public class SessionReaper {
+
+    private static final String TYPE_UNAUTHENTICATED = "unauthenticated";
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private MessageHandler messageHandler;
+
+    @Autowired
+    private SessionDirectory sessionDirectory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 时间轮每个刻度的长度，与检查任务的执行间隔一致
+    @Value("${app.websocket.idle.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${app.websocket.idle.wheel-size:512}")
+    private int wheelSize;
+
+    // 连接建立后未完成认证的最长时间
+    @Value("${app.websocket.idle.auth-timeout-ms:30000}")
+    private long authTimeoutMs;
+
+    @Value("${app.websocket.idle.user-timeout-ms:90000}")
+    private long userTimeoutMs;
+
+    @Value("${app.websocket.idle.client-timeout-ms:120000}")
+    private long clientTimeoutMs;
+
+    private HashedTimingWheel<Entry> wheel;
+
+    // sessionId -> 连接状态
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> closedCounters = new ConcurrentHashMap<>();
+
+    // 时间轮使用独立线程推进，不受Spring默认单线程调度器上其他定时任务的影响
+    private final ScheduledExecutorService tickScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "websocket-idle-tick");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        wheel = new HashedTimingWheel<>(TimeUnit.MILLISECONDS.toNanos(tickMs), wheelSize);
+        Gauge.builder("app.websocket.idle.tracked", entries, Map::size)
+            .description("空闲检查中登记的WebSocket连接数")
+            .register(meterRegistry);
+        tickScheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tickScheduler.shutdownNow();
+    }
+
+    /**
+     * 连接建立时登记，首次检查按未认证的超时时间
+     */
+    public void register(WebSocketSession session) {
+        Entry entry = new Entry(session);
+        entries.put(session.getId(), entry);
+        entry.timeout = wheel.schedule(entry, TimeUnit.MILLISECONDS.toNanos(authTimeoutMs));
+    }
+
+    /**
+     * 收到消息时更新最后活跃时间
+     */
+    public void touch(WebSocketSession session) {
+        Entry entry = entries.get(session.getId());
+        if (entry != null) {
+            entry.lastActivityNanos = System.nanoTime();
+            entry.probed = false;
+        }
+    }
+
+    /**
+     * 连接关闭时取消登记
+     */
+    public void unregister(WebSocketSession session) {
+        Entry entry = entries.remove(session.getId());
+        if (entry != null) {
+            HashedTimingWheel.Timeout<Entry> timeout = entry.timeout;
+            if (timeout != null) {
+                wheel.cancel(timeout);
+            }
+        }
+    }
+
+    private void tick() {
+        // 任务抛出异常后不会再被调度，这里兜底记录
+        try {
+            for (Entry entry : wheel.advance()) {
+                // 已经取消登记的连接不再处理
+                if (entries.get(entry.session.getId()) == entry) {
+                    check(entry);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("空闲连接检查失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 本地客户端的连接状态，lastHeartbeat为本地客户端最近一次发来消息的时间
+     */
+    public Map<String, Object> getClientLiveness() {
+        Long lastActivityNanos = null;
+        for (WebSocketSession session : connectionManager.getClientSessions()) {
+            Entry entry = entries.get(session.getId());
+            if (entry != null && (lastActivityNanos == null || entry.lastActivityNanos - lastActivityNanos > 0)) {
+                lastActivityNanos = entry.lastActivityNanos;
+            }
+        }
+
+        int localClients = connectionManager.getClientConnectionCount();
+        int clientCount = localClients + sessionDirectory.getRemoteClientCount();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("connected", clientCount > 0);
+        result.put("clientCount", clientCount);
+        result.put("lastHeartbeat", lastActivityNanos != null
+            ? System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivityNanos)
+            : null);
+        if (localClients > 0) {
+            result.put("message", "本地客户端已连接");
+        } else if (clientCount > 0) {
+            result.put("message", "本地客户端已连接到其他节点");
+        } else {
+            result.put("message", "暂无客户端连接");
+        }
+        return result;
+    }
+
+    private void check(Entry entry) {
+        WebSocketSession session = entry.session;
+        if (!session.isOpen()) {
+            entries.remove(session.getId(), entry);
+            return;
+        }
+
+        String sessionType = connectionManager.getSessionType(session);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutFor(sessionType));
+        long idleNanos = System.nanoTime() - (sessionType != null ? entry.lastActivityNanos : entry.registeredNanos);
+
+        if (idleNanos >= timeoutNanos) {
+            close(entry, sessionType);
+            return;
+        }
+
+        long delayNanos = timeoutNanos - idleNanos;
+        // 已认证的连接空闲超过一半时间时发送ping，pong到达会更新活跃时间
+        if (sessionType != null && idleNanos >= timeoutNanos / 2) {
+            if (!entry.probed) {
+                entry.probed = true;
+                connectionManager.sendPing(session);
+            }
+        } else if (sessionType != null) {
+            delayNanos = timeoutNanos / 2 - idleNanos;
+        }
+        entry.timeout = wheel.schedule(entry, delayNanos);
+    }
+
+    private void close(Entry entry, String sessionType) {
+        WebSocketSession session = entry.session;
+        entries.remove(session.getId(), entry);
+        String type = sessionType != null ? sessionType : TYPE_UNAUTHENTICATED;
+        closedCounter(type).increment();
+        System.out.println("WebSocket连接空闲超时，断开连接: " + session.getId() + ", 类型: " + type);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("心跳超时"));
+        } catch (IOException e) {
+            // 关闭失败时容器不一定会回调afterConnectionClosed，这里直接清理
+            messageHandler.handleSessionClosed(session);
+            connectionManager.removeSession(session);
+        }
+    }
+
+    private long timeoutFor(String sessionType) {
+        if (ChatMessage.CLIENT_TYPE_CLIENT.equals(sessionType)) {
+            return clientTimeoutMs;
+        }
+        if (ChatMessage.CLIENT_TYPE_USER.equals(sessionType)) {
+            return userTimeoutMs;
+        }
+        return authTimeoutMs;
+    }
+
+    private Counter closedCounter(String type) {
+        return closedCounters.computeIfAbsent(type, t -> Counter.builder("app.websocket.idle.closed")
+            .description("因空闲超时被断开的WebSocket连接数")
+            .tag("type", t)
+            .register(meterRegistry));
+    }
+
+    /**
+     * 一个登记中的连接
+     */
+    private static class Entry {
+        final WebSocketSession session;
+        final long registeredNanos = System.nanoTime();
+        volatile long lastActivityNanos = registeredNanos;
+        // 本轮空闲是否已经发送过ping
+        volatile boolean probed;
+        volatile HashedTimingWheel.Timeout<Entry> timeout;
+
+        Entry(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package com.proshine.claudeplatformbackend.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于TCP的集群总线
+ * 每个节点监听一个端口，并按app.cluster.tcp.peers主动连接其他节点（列表中包含自己时自动跳过），
+ * 所有节点应配置相同的完整列表。主动建立的连接只用于发送，对方节点ID由握手得到；
+ * 消息以4字节长度加JSON的帧传递，空闲时发送心跳，发送失败或超过三个心跳周期没有数据时视为节点离开并定时重连。
+ * 只接受来自peers中主机的连接；连接建立后双方交换随机数，用共享密钥派生本连接的密钥，
+ * 之后每帧附带对序号和内容的HMAC-SHA256，校验失败即断开，没有密钥的节点无法加入或注入消息
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.bus", havingValue = "tcp")
+public class TcpClusterBus extends AbstractClusterBus {
+
+    // 握手和心跳只在总线内部使用，不交给回调
+    private static final String TYPE_HELLO = "hello";
+    private static final String TYPE_PING = "ping";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int NONCE_SIZE = 16;
+    private static final int MAC_SIZE = 32;
+
+    // 握手完成前对方未经验证，只接受很小的帧
+    private static final int HANDSHAKE_FRAME_SIZE = 4096;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    @Value("${app.cluster.tcp.port:10090}")
+    private int port;
+
+    // 监听地址，为空时监听所有网卡
+    @Value("${app.cluster.tcp.bind-address:}")
+    private String bindAddress;
+
+    // 所有节点相同的共享密钥，必须配置
+    @Value("${app.cluster.tcp.secret:}")
+    private String secret;
+
+    // 同时接受的入站连接数上限，每个连接占用一个接收线程
+    @Value("${app.cluster.tcp.max-connections:32}")
+    private int maxConnections;
+
+    // 单帧最大字节数，超出的消息不发送，收到时断开连接
+    @Value("${app.cluster.tcp.max-frame-bytes:16777216}")
+    private int maxFrameBytes;
+
+    // 逗号分隔的host:port列表
+    @Value("${app.cluster.tcp.peers:}")
+    private String peers;
+
+    // 心跳和重连间隔，接收方超过三个间隔没有收到数据时断开
+    @Value("${app.cluster.tcp.heartbeat-ms:5000}")
+    private int heartbeatMs;
+
+    // 每个节点的发送队列容量，队列满时丢弃新消息
+    @Value("${app.cluster.tcp.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 节点ID -> 已完成握手的发送连接
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+
+    private final List<PeerLink> peerLinks = new ArrayList<>();
+
+    private final Set<Socket> inboundSockets = ConcurrentHashMap.newKeySet();
+
+    // peers中配置的主机名或IP，入站连接的来源地址必须属于其中之一
+    private final Set<String> peerHosts = new HashSet<>();
+
+    private byte[] secretKey;
+
+    private Semaphore connectionPermits;
+
+    private volatile ServerSocket serverSocket;
+
+    private volatile boolean running = false;
+
+    /**
+     * 应用启动完成、所有组件都已注册回调后再开始监听和连接
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalStateException("使用TCP集群总线时必须配置app.cluster.tcp.secret");
+        }
+        secretKey = secret.getBytes(StandardCharsets.UTF_8);
+        connectionPermits = new Semaphore(maxConnections);
+
+        List<String[]> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            String address = peer.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                System.err.println("集群节点地址格式错误: " + address);
+                continue;
+            }
+            String host = address.substring(0, colon);
+            peerHosts.add(host);
+            addresses.add(new String[]{host, address.substring(colon + 1), address});
+        }
+
+        running = true;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(bindAddress.isEmpty()
+            ? new InetSocketAddress(port)
+            : new InetSocketAddress(InetAddress.getByName(bindAddress), port));
+        startThread("cluster-accept", this::acceptLoop);
+
+        for (String[] address : addresses) {
+            PeerLink link = new PeerLink(address[0], Integer.parseInt(address[1]));
+            peerLinks.add(link);
+            link.thread = startThread("cluster-peer-" + address[2], link::run);
+        }
+        System.out.println("集群总线已启动: " + getNodeId() + ", 地址: " + serverSocket.getLocalSocketAddress());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        for (PeerLink link : peerLinks) {
+            link.close();
+        }
+        for (Socket socket : inboundSockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        return new HashSet<>(links.keySet());
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        PeerLink link = links.get(nodeId);
+        if (link == null) {
+            return false;
+        }
+        byte[] payload = encodeFrame(message);
+        return payload != null && link.offer(payload);
+    }
+
+    @Override
+    public void broadcast(ClusterMessage message) {
+        if (links.isEmpty()) {
+            return;
+        }
+        byte[] payload = encodeFrame(message);
+        if (payload == null) {
+            return;
+        }
+        for (PeerLink link : links.values()) {
+            link.offer(payload);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                System.err.println("接受集群连接失败: " + e.getMessage());
+                continue;
+            }
+            if (!isPeerAddress(socket.getInetAddress())) {
+                System.err.println("拒绝非集群节点的连接: " + socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+                continue;
+            }
+            if (!connectionPermits.tryAcquire()) {
+                System.err.println("集群连接数已达上限，拒绝连接: " + socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+                continue;
+            }
+            startThread("cluster-inbound-" + THREAD_COUNTER.incrementAndGet(), () -> {
+                try {
+                    receive(socket);
+                } finally {
+                    connectionPermits.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * 来源地址是否属于peers中的某个主机，每次重新解析以跟随DNS变更
+     */
+    private boolean isPeerAddress(InetAddress address) {
+        for (String host : peerHosts) {
+            try {
+                for (InetAddress peerAddress : InetAddress.getAllByName(host)) {
+                    if (peerAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException ignored) {
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 编码要发送的消息，超出帧大小上限或编码失败时返回null
+     */
+    private byte[] encodeFrame(ClusterMessage message) {
+        byte[] payload;
+        try {
+            payload = encode(message);
+        } catch (IOException e) {
+            System.err.println("编码集群消息失败: " + e.getMessage());
+            return null;
+        }
+        if (payload.length > maxFrameBytes) {
+            System.err.println("集群消息过大，已丢弃: " + message.getType() + ", " + payload.length + "字节");
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * 处理其他节点主动建立的连接：回复握手后持续读取消息
+     */
+    private void receive(Socket socket) {
+        inboundSockets.add(socket);
+        String remote = null;
+        try {
+            socket.setSoTimeout(heartbeatMs * 3);
+            FrameChannel channel = new FrameChannel(socket, secretKey, false);
+
+            ClusterMessage hello = decode(channel.read(HANDSHAKE_FRAME_SIZE));
+            if (!TYPE_HELLO.equals(hello.getType())) {
+                return;
+            }
+            remote = hello.getSourceNode();
+            channel.write(encode(ClusterMessage.of(TYPE_HELLO)));
+            channel.flush();
+
+            while (running) {
+                ClusterMessage message = decode(channel.read(maxFrameBytes));
+                if (!TYPE_PING.equals(message.getType())) {
+                    deliver(message);
+                }
+            }
+        } catch (IOException e) {
+            if (running && remote != null && !getNodeId().equals(remote)) {
+                System.err.println("集群节点连接断开: " + remote + ", " + e.getMessage());
+            } else if (running && remote == null) {
+                System.err.println("集群连接握手失败: " + socket.getRemoteSocketAddress() + ", " + e.getMessage());
+            }
+        } finally {
+            inboundSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private Thread startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 到一个配置的节点地址的发送连接，断开后定时重连
+     */
+    private class PeerLink {
+        final String host;
+        final int port;
+        final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(queueCapacity);
+        volatile Thread thread;
+        volatile Socket socket;
+        FrameChannel channel;
+        volatile boolean connected = false;
+        // 连续连接失败时只记录第一次
+        boolean failureLogged = false;
+
+        PeerLink(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        boolean offer(byte[] payload) {
+            return connected && queue.offer(payload);
+        }
+
+        void run() {
+            while (running) {
+                String remote = null;
+                try {
+                    remote = connect();
+                    if (remote == null) {
+                        // 地址指向当前节点自己
+                        return;
+                    }
+                    failureLogged = false;
+                    transmit();
+                } catch (IOException e) {
+                    if (running && !failureLogged) {
+                        System.err.println("连接集群节点失败: " + host + ":" + port + ", " + e.getMessage());
+                        failureLogged = true;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    connected = false;
+                    closeQuietly(socket);
+                    if (remote != null) {
+                        links.remove(remote, this);
+                        queue.clear();
+                        if (running) {
+                            fireMemberLeft(remote);
+                        }
+                    }
+                }
+
+                try {
+                    Thread.sleep(heartbeatMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 建立连接并握手，返回对方节点ID；对方是当前节点自己时返回null
+         */
+        private String connect() throws IOException {
+            Socket s = new Socket();
+            socket = s;
+            s.connect(new InetSocketAddress(host, port), heartbeatMs);
+            s.setTcpNoDelay(true);
+            s.setKeepAlive(true);
+            s.setSoTimeout(heartbeatMs * 3);
+
+            channel = new FrameChannel(s, secretKey, true);
+            channel.write(encode(ClusterMessage.of(TYPE_HELLO)));
+            channel.flush();
+            ClusterMessage reply = decode(channel.read(HANDSHAKE_FRAME_SIZE));
+            String remote = reply.getSourceNode();
+            if (getNodeId().equals(remote)) {
+                return null;
+            }
+            PeerLink existing = links.putIfAbsent(remote, this);
+            if (existing != null && existing != this) {
+                throw new IOException("节点已通过其他地址连接: " + remote);
+            }
+
+            queue.clear();
+            connected = true;
+            fireMemberJoined(remote);
+            return remote;
+        }
+
+        /**
+         * 发送队列中的消息，一次取出所有排队的消息后再刷新；空闲一个心跳周期时发送心跳
+         */
+        private void transmit() throws IOException, InterruptedException {
+            byte[] ping = encode(ClusterMessage.of(TYPE_PING));
+            while (running) {
+                byte[] payload = queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                if (payload == null) {
+                    channel.write(ping);
+                } else {
+                    do {
+                        channel.write(payload);
+                    } while ((payload = queue.poll()) != null);
+                }
+                channel.flush();
+            }
+        }
+
+        void close() {
+            closeQuietly(socket);
+            Thread current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+    }
+
+    /**
+     * 带校验的帧读写
+     * 发起方和接收方各发送一个随机数，以共享密钥对两个随机数做HMAC派生两个方向的密钥；
+     * 每帧为4字节长度、内容和对序号加内容的HMAC，序号按方向递增，旧连接或其他方向的帧无法重放
+     */
+    private static class FrameChannel {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Mac sendMac;
+        private final Mac receiveMac;
+        private final ByteBuffer sequence = ByteBuffer.allocate(8);
+        private long sendSequence = 0;
+        private long receiveSequence = 0;
+
+        FrameChannel(Socket socket, byte[] secretKey, boolean initiator) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            byte[] localNonce = new byte[NONCE_SIZE];
+            RANDOM.nextBytes(localNonce);
+            out.write(localNonce);
+            out.flush();
+            byte[] remoteNonce = new byte[NONCE_SIZE];
+            in.readFully(remoteNonce);
+
+            byte[] initiatorNonce = initiator ? localNonce : remoteNonce;
+            byte[] acceptorNonce = initiator ? remoteNonce : localNonce;
+            Mac initiatorMac = mac(deriveKey(secretKey, "initiator", initiatorNonce, acceptorNonce));
+            Mac acceptorMac = mac(deriveKey(secretKey, "acceptor", initiatorNonce, acceptorNonce));
+            sendMac = initiator ? initiatorMac : acceptorMac;
+            receiveMac = initiator ? acceptorMac : initiatorMac;
+        }
+
+        void write(byte[] payload) throws IOException {
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.write(sign(sendMac, sendSequence++, payload));
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        byte[] read(int maxLength) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > maxLength) {
+                throw new IOException("集群消息长度错误: " + length);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            byte[] signature = new byte[MAC_SIZE];
+            in.readFully(signature);
+            if (!MessageDigest.isEqual(signature, sign(receiveMac, receiveSequence++, payload))) {
+                throw new IOException("集群消息校验失败");
+            }
+            return payload;
+        }
+
+        private byte[] sign(Mac mac, long number, byte[] payload) {
+            // 转为Buffer调用，在JDK 9以上编译时不绑定到Java 8不存在的ByteBuffer.clear()
+            ((Buffer) sequence).clear();
+            sequence.putLong(number);
+            mac.update(sequence.array());
+            mac.update(payload);
+            return mac.doFinal();
+        }
+
+        private static byte[] deriveKey(byte[] secretKey, String direction, byte[] initiatorNonce, byte[] acceptorNonce) {
+            Mac mac = mac(secretKey);
+            mac.update(direction.getBytes(StandardCharsets.UTF_8));
+            mac.update(initiatorNonce);
+            mac.update(acceptorNonce);
+            return mac.doFinal();
+        }
+
+        private static Mac mac(byte[] key) {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("初始化集群消息校验失败", e);
+            }
+        }
+    }
+}